@@ -0,0 +1,135 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessDialect;
+import net.ucanaccess.hibernate.dialect.test.Event;
+import net.ucanaccess.hibernate.dialect.test.Guest;
+import net.ucanaccess.hibernate.dialect.test.Ticket;
+
+/**
+ * A fresh Access database in a temporary directory, with a SessionFactory
+ * for the test entities (Event, Guest, Ticket) on top of it.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+    private final Path directory;
+    private final File databaseFile;
+    private final Class<?>[] annotatedClasses;
+    private SessionFactory sessionFactory;
+
+    private BenchmarkDatabase(Path directory, File databaseFile, Class<?>[] annotatedClasses,
+            SessionFactory sessionFactory) {
+        this.directory = directory;
+        this.databaseFile = databaseFile;
+        this.annotatedClasses = annotatedClasses;
+        this.sessionFactory = sessionFactory;
+    }
+
+    static BenchmarkDatabase create() throws IOException {
+        return create(Event.class, Guest.class, Ticket.class);
+    }
+
+    static BenchmarkDatabase create(Class<?>... annotatedClasses) throws IOException {
+        Logger.getLogger("org.hibernate").setLevel(Level.SEVERE);
+
+        Path directory = Files.createTempDirectory("ucanaccess-benchmark");
+        File dbFile = directory.resolve("benchmark.accdb").toFile();
+        try {
+            return new BenchmarkDatabase(directory, dbFile, annotatedClasses,
+                    buildSessionFactory(dbFile, "create", Collections.<String, String>emptyMap(), annotatedClasses));
+        } catch (RuntimeException e) {
+            deleteRecursively(directory);
+            throw e;
+        }
+    }
+
+    private static SessionFactory buildSessionFactory(File dbFile, String hbm2ddl, Map<String, String> settings,
+            Class<?>... annotatedClasses) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.dialect", UCanAccessDialect.class.getName())
+                // without immediatelyReleaseResources UCanAccess keeps the mirror after the
+                // SessionFactory is closed, so a reopened one would not see rows written meanwhile
+                .applySetting("hibernate.connection.url", "jdbc:ucanaccess://" + dbFile.getAbsolutePath()
+                        + ";newDatabaseVersion=V2010;immediatelyReleaseResources=true")
+                .applySetting("hibernate.connection.username", "")
+                .applySetting("hibernate.connection.password", "")
+                .applySetting("hibernate.connection.pool_size", "5")
+                .applySetting("hibernate.globally_quoted_identifiers", "true")
+                .applySetting("hibernate.hbm2ddl.auto", hbm2ddl)
+                .applySettings(settings)
+                .build();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            for (Class<?> annotatedClass : annotatedClasses) {
+                sources.addAnnotatedClass(annotatedClass);
+            }
+            return sources.buildMetadata().buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    File getDatabaseFile() {
+        return databaseFile;
+    }
+
+    /**
+     * Closes the SessionFactory, so that the database file can be changed
+     * without UCanAccess, and opens a new one (leaving the schema alone) with
+     * additional settings
+     */
+    void reopen(Runnable whileClosed, Map<String, String> settings) {
+        sessionFactory.close();
+        sessionFactory = null;
+        whileClosed.run();
+        sessionFactory = buildSessionFactory(databaseFile, "none", settings, annotatedClasses);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+        deleteRecursively(directory);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.ucanaccess.hibernate.dialect.test.Event;
+import net.ucanaccess.hibernate.dialect.test.Guest;
+import net.ucanaccess.hibernate.dialect.test.Ticket;
+
+/**
+ * End-to-end CRUD through Hibernate and UCanAccess against a fresh database
+ * in a temporary directory: single and batched inserts, paged reads and lazy
+ * loading of the Event.guests collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrudBenchmark {
+
+    /** number of events in the database before the benchmarks start */
+    @Param({ "1000" })
+    public int events;
+
+    /** rows per transaction for the batched inserts */
+    @Param({ "100" })
+    public int batchSize;
+
+    private static final int PAGE_SIZE = 25;
+    private static final int GUESTS_PER_EVENT = 5;
+
+    private BenchmarkDatabase database;
+    private final AtomicLong guestSequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.create();
+        Session session = database.getSessionFactory().openSession();
+        session.beginTransaction();
+        for (int i = 0; i < events; i++) {
+            Event event = new Event("event " + i, LocalDateTime.of(2017, 5, 21, 14, 15, 16).plusDays(i));
+            for (int g = 0; g < GUESTS_PER_EVENT; g++) {
+                event.getGuests().add(newGuest());
+            }
+            session.save(event);
+            if (i % 50 == 0) {
+                session.flush();
+                session.clear();
+            }
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    private Guest newGuest() {
+        long n = guestSequence.incrementAndGet();
+        return new Guest("guest" + n + "@example.com", "Guest " + n);
+    }
+
+    @Benchmark
+    public Object insertEvent() {
+        Session session = database.getSessionFactory().openSession();
+        session.beginTransaction();
+        Object id = session.save(new Event("single insert", LocalDateTime.now()));
+        session.getTransaction().commit();
+        session.close();
+        return id;
+    }
+
+    /** assigned ids, so the inserts are sent in JDBC batches */
+    @Benchmark
+    public void insertGuestBatch() {
+        Session session = database.getSessionFactory().openSession();
+        session.beginTransaction();
+        for (int i = 0; i < batchSize; i++) {
+            session.save(newGuest());
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    /** ids from UCanAccessDialectTableGenerator, so the inserts are sent in JDBC batches */
+    @Benchmark
+    public void insertTicketBatch() {
+        Session session = database.getSessionFactory().openSession();
+        session.beginTransaction();
+        for (int i = 0; i < batchSize; i++) {
+            session.save(new Ticket("holder " + i));
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    /** IDENTITY ids, so every insert is a separate round trip */
+    @Benchmark
+    public void insertEventBatch() {
+        Session session = database.getSessionFactory().openSession();
+        session.beginTransaction();
+        for (int i = 0; i < batchSize; i++) {
+            session.save(new Event("batched insert " + i, LocalDateTime.now()));
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @Benchmark
+    public List<?> pagedRead() {
+        int page = ThreadLocalRandom.current().nextInt(events / PAGE_SIZE);
+        Session session = database.getSessionFactory().openSession();
+        try {
+            return session.createQuery("from Event order by id", Event.class)
+                    .setFirstResult(page * PAGE_SIZE)
+                    .setMaxResults(PAGE_SIZE)
+                    .list();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public void lazyGuestsLoad(Blackhole blackhole) {
+        int eventId = 1 + ThreadLocalRandom.current().nextInt(events);
+        Session session = database.getSessionFactory().openSession();
+        try {
+            Event event = session.get(Event.class, eventId);
+            for (Guest guest : event.getGuests()) {
+                blackhole.consume(guest.getName());
+            }
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessMoney;
+
+/**
+ * Bulk reads of money columns: {@code BigDecimal} attributes on DECIMAL(19,4)
+ * columns against {@link UCanAccessMoney} attributes on CURRENCY columns.
+ * Each benchmark reads every price and adds them up, as a pricing loop would.
+ * Run with {@code -prof gc} to compare the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CurrencyBenchmark {
+
+    /** number of rows of each kind */
+    @Param({ "10000" })
+    public int rows;
+
+    private BenchmarkDatabase database;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.create(DecimalPrice.class, CurrencyPrice.class);
+        Session session = database.getSessionFactory().openSession();
+        session.beginTransaction();
+        for (int i = 0; i < rows; i++) {
+            long scaled = 1_000_000L + i * 12_345L;
+            session.save(new DecimalPrice(i, BigDecimal.valueOf(scaled, 4)));
+            session.save(new CurrencyPrice(i, UCanAccessMoney.ofScaled(scaled)));
+            if (i % 50 == 0) {
+                session.flush();
+                session.clear();
+            }
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public BigDecimal sumDecimalEntities() {
+        Session session = database.getSessionFactory().openSession();
+        try {
+            BigDecimal total = BigDecimal.ZERO;
+            for (DecimalPrice price : session.createQuery("from DecimalPrice", DecimalPrice.class).list()) {
+                total = total.add(price.amount);
+            }
+            return total;
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public long sumCurrencyEntities() {
+        Session session = database.getSessionFactory().openSession();
+        try {
+            long total = 0;
+            for (CurrencyPrice price : session.createQuery("from CurrencyPrice", CurrencyPrice.class).list()) {
+                total += price.amount.getScaled();
+            }
+            return total;
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public BigDecimal sumDecimalColumn() {
+        Session session = database.getSessionFactory().openSession();
+        try {
+            List<BigDecimal> amounts = session
+                    .createQuery("select p.amount from DecimalPrice p", BigDecimal.class).list();
+            BigDecimal total = BigDecimal.ZERO;
+            for (BigDecimal amount : amounts) {
+                total = total.add(amount);
+            }
+            return total;
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public long sumCurrencyColumn() {
+        Session session = database.getSessionFactory().openSession();
+        try {
+            List<UCanAccessMoney> amounts = session
+                    .createQuery("select p.amount from CurrencyPrice p", UCanAccessMoney.class).list();
+            long total = 0;
+            for (UCanAccessMoney amount : amounts) {
+                total += amount.getScaled();
+            }
+            return total;
+        } finally {
+            session.close();
+        }
+    }
+
+    @Entity(name = "DecimalPrice")
+    public static class DecimalPrice {
+        @Id
+        Integer id;
+
+        @Column(precision = 19, scale = 4)
+        BigDecimal amount;
+
+        DecimalPrice() {
+        }
+
+        DecimalPrice(Integer id, BigDecimal amount) {
+            this.id = id;
+            this.amount = amount;
+        }
+    }
+
+    @Entity(name = "CurrencyPrice")
+    public static class CurrencyPrice {
+        @Id
+        Integer id;
+
+        UCanAccessMoney amount;
+
+        CurrencyPrice() {
+        }
+
+        CurrencyPrice(Integer id, UCanAccessMoney amount) {
+            this.id = id;
+            this.amount = amount;
+        }
+    }
+}
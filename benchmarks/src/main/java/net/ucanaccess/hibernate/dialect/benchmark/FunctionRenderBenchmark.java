@@ -0,0 +1,70 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.type.StandardBasicTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessDialect;
+
+/**
+ * Cost of rendering the HQL functions registered by the dialect (via
+ * registerFunction) into Access SQL.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionRenderBenchmark {
+
+    @Param({ "current_date", "current_timestamp", "hour", "minute", "second" })
+    public String function;
+
+    private SQLFunction sqlFunction;
+    private List<String> arguments;
+
+    @Setup
+    public void setUp() {
+        sqlFunction = new UCanAccessDialect().getFunctions().get(function);
+        if (sqlFunction == null) {
+            throw new IllegalStateException("function not registered: " + function);
+        }
+        arguments = sqlFunction.hasArguments() ? Collections.singletonList("event0_.[EVENT DATE]")
+                : Collections.<String>emptyList();
+    }
+
+    @Benchmark
+    public String render() {
+        return sqlFunction.render(StandardBasicTypes.TIMESTAMP, arguments, null);
+    }
+}
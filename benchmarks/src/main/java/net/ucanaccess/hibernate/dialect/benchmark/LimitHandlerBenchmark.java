@@ -0,0 +1,153 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.dialect.pagination.LimitHandler;
+import org.hibernate.engine.spi.RowSelection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessDialect;
+
+/**
+ * Pages through a table one page per invocation, with the literal
+ * "limit %d offset %d" SQL that the limit handler used to render ("literal")
+ * and with the SQL the dialect's limit handler renders now, with its bound
+ * parameters ("parameterized"). The score is the latency per page; at the
+ * end of each run the number of distinct SQL strings sent is printed, each of
+ * which UCanAccess has to translate (and HSQLDB to compile) again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LimitHandlerBenchmark {
+    private static final String BASE_SQL = "select EVENT_ID, title from EVENTS order by EVENT_ID";
+
+    @Param({ "literal", "parameterized" })
+    public String rendering;
+
+    @Param({ "5000" })
+    public int rows;
+
+    @Param({ "25" })
+    public int pageSize;
+
+    private File directory;
+    private Connection connection;
+    private LimitHandler limitHandler;
+    private RowSelection selection;
+    private int offset;
+    private long pages;
+    private final Set<String> distinctSql = new HashSet<>();
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("ucanaccess-benchmark").toFile();
+        connection = DriverManager.getConnection("jdbc:ucanaccess://" + directory.getAbsolutePath()
+                + "/paging.accdb;newDatabaseVersion=V2010;immediatelyReleaseResources=true", "", "");
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE EVENTS (EVENT_ID LONG PRIMARY KEY, title TEXT(100))");
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO EVENTS (EVENT_ID, title) VALUES (?, ?)")) {
+            for (int i = 1; i <= rows; i++) {
+                ps.setInt(1, i);
+                ps.setString(2, "event " + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        limitHandler = new UCanAccessDialect().getLimitHandler();
+        selection = new RowSelection();
+        selection.setMaxRows(pageSize);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        System.out.printf("%n%s: %d distinct SQL strings for %d pages%n", rendering, distinctSql.size(), pages);
+        connection.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public int page() throws SQLException {
+        int read;
+        if (rendering.equals("literal")) {
+            String sql = String.format("%s limit %d offset %d", BASE_SQL, pageSize, offset);
+            distinctSql.add(sql);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                read = drain(ps);
+            }
+        } else {
+            selection.setFirstRow(offset);
+            String sql = limitHandler.processSql(BASE_SQL, selection);
+            distinctSql.add(sql);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                int bound = limitHandler.bindLimitParametersAtStartOfQuery(selection, ps, 1);
+                limitHandler.bindLimitParametersAtEndOfQuery(selection, ps, 1 + bound);
+                read = drain(ps);
+            }
+        }
+        pages++;
+        offset += pageSize;
+        if (offset >= rows) {
+            offset = 0;
+        }
+        return read;
+    }
+
+    private static int drain(PreparedStatement ps) throws SQLException {
+        int read = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                read += rs.getInt(1) + rs.getString(2).length();
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,584 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Table;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessKeysetPager;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+import net.ucanaccess.hibernate.dialect.test.Event;
+import net.ucanaccess.hibernate.dialect.test.Guest;
+
+/**
+ * Concurrent end-to-end load test: for each dataset size, fills a fresh
+ * database in a temporary directory with events (one guest per ten events,
+ * every event linked to a guest), then runs a mix of reads (an event and its
+ * guests), keyset-paged reads and inserts through Hibernate at each thread
+ * count. It prints the throughput, the p50/p99 latencies and the heap, how
+ * they scale with the data size and the number of threads, and writes them
+ * to a CSV file.
+ *
+ * The results are compared with a baseline file recorded earlier on the same
+ * machine ("record=true", or "record=missing" to record one only if there is
+ * none yet); the run fails (exit code 1) if the throughput or the heap is more
+ * than "tolerance", or the p99 latency more than "latency_tolerance", worse
+ * than the baseline, or if any operation fails.
+ *
+ * Not a JMH benchmark; run it from the build with "mvn -P load-test verify",
+ * or with
+ *
+ * <pre>
+ * java -Xmx4g -cp target/benchmarks.jar net.ucanaccess.hibernate.dialect.benchmark.LoadTest \
+ *     rows=10000,100000 threads=1,2,4 seconds=10 mix=read:60,page:30,write:10 \
+ *     baseline=load-test-baseline.properties [record=true|missing]
+ * </pre>
+ */
+public class LoadTest {
+
+    private static final int GUESTS_PER_EVENT_RATIO = 10;
+    private static final int PAGE_SIZE = 25;
+    private static final int POPULATE_CHUNK = 10000;
+    private static final LocalDateTime FIRST_DATE = LocalDateTime.of(2017, 5, 21, 14, 15, 16);
+
+    private enum Operation {
+        READ, PAGE, WRITE
+    }
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final Map<Operation, Integer> mix = new LinkedHashMap<>();
+    private final List<Result> results = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest(args);
+        List<String> regressions = loadTest.run();
+        if (!regressions.isEmpty()) {
+            System.out.println();
+            System.out.println("FAILED:");
+            for (String regression : regressions) {
+                System.out.println("  " + regression);
+            }
+            System.exit(1);
+        }
+    }
+
+    LoadTest(String[] args) {
+        options.put("rows", "10000");
+        options.put("threads", "1,2,4");
+        options.put("seconds", "10");
+        options.put("warmup", "3");
+        options.put("mix", "read:60,page:30,write:10");
+        options.put("memory", "true");
+        options.put("baseline", "load-test-baseline.properties");
+        options.put("results", "target/load-test-results.csv");
+        options.put("tolerance", "0.25");
+        options.put("latency_tolerance", "0.5");
+        options.put("record", "false");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + "; options (and defaults): " + options);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        for (String part : options.get("mix").split(",")) {
+            String[] nameAndWeight = part.split(":");
+            mix.put(Operation.valueOf(nameAndWeight[0].trim().toUpperCase(Locale.ROOT)),
+                    Integer.parseInt(nameAndWeight[1].trim()));
+        }
+    }
+
+    private int[] intList(String name) {
+        return Arrays.stream(options.get(name).split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+
+    List<String> run() throws Exception {
+        int[] rowCounts = intList("rows");
+        int[] threadCounts = intList("threads");
+        Arrays.sort(rowCounts);
+        Arrays.sort(threadCounts);
+        int maxThreads = threadCounts[threadCounts.length - 1];
+        System.out.printf("%d processors, max heap %d MB, mix %s%n", Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().maxMemory() >> 20, mix);
+
+        for (int rows : rowCounts) {
+            try (BenchmarkDatabase database = BenchmarkDatabase.create(Event.class, Guest.class)) {
+                long start = System.nanoTime();
+                Map<String, String> settings = new HashMap<>();
+                settings.put("hibernate.connection.provider_class", UCanAccessConnectionProvider.class.getName());
+                settings.put("hibernate.connection.pool_size", Integer.toString(maxThreads));
+                settings.put(UCanAccessSettings.OPTION_PREFIX + "memory", options.get("memory"));
+                database.reopen(() -> populate(database.getDatabaseFile(), rows), settings);
+                System.out.printf("%n%,d events: populated and loaded in %.1f s (database file %,d KB)%n", rows,
+                        (System.nanoTime() - start) / 1e9, database.getDatabaseFile().length() >> 10);
+
+                Workload workload = new Workload(database.getSessionFactory(), rows);
+                workload.run(maxThreads, Integer.parseInt(options.get("warmup")));
+                for (int threads : threadCounts) {
+                    Result result = workload.measure(threads, Integer.parseInt(options.get("seconds")));
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+        }
+        printScaling(rowCounts, threadCounts);
+        writeResults(new File(options.get("results")));
+
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            if (result.failures > 0) {
+                regressions.add(String.format("%s: %d operations failed, e.g., %s", result.key(), result.failures,
+                        result.firstFailure));
+            }
+        }
+        File baselineFile = new File(options.get("baseline"));
+        String record = options.get("record");
+        if (Boolean.parseBoolean(record) || (record.equals("missing") && !baselineFile.exists())) {
+            recordBaseline(baselineFile);
+            System.out.println("Baseline recorded in " + baselineFile);
+        } else if (baselineFile.exists()) {
+            regressions.addAll(compareWithBaseline(baselineFile));
+        } else {
+            System.out.println("No baseline (" + baselineFile + "); run with record=true to record one");
+        }
+        return regressions;
+    }
+
+    // ----------
+    // population
+    // ----------
+
+    private static String email(int guest) {
+        return "guest" + guest + "@example.com";
+    }
+
+    /**
+     * Writes the rows straight into the database file (much faster than
+     * inserting them through UCanAccess, which would update the mirror too)
+     */
+    private static void populate(File databaseFile, int events) {
+        int guests = Math.max(1, events / GUESTS_PER_EVENT_RATIO);
+        try (Database db = new DatabaseBuilder(databaseFile).setAutoSync(false).open()) {
+            Table guestTable = db.getTable("Guest");
+            addRows(guestTable, guests, (row, i) -> {
+                row[guestTable.getColumn("email").getColumnIndex()] = email(i);
+                row[guestTable.getColumn("name").getColumnIndex()] = "Guest " + i;
+                row[guestTable.getColumn("vip").getColumnIndex()] = i % 100 == 0;
+            });
+            Table eventTable = db.getTable("EVENTS");
+            addRows(eventTable, events, (row, i) -> {
+                row[eventTable.getColumn("title").getColumnIndex()] = "event " + i;
+                row[eventTable.getColumn("description").getColumnIndex()] = "description " + i;
+                row[eventTable.getColumn("EVENT DATE").getColumnIndex()] = Date.from(
+                        FIRST_DATE.plusMinutes(i).atZone(ZoneId.systemDefault()).toInstant());
+            });
+            Table joinTable = db.getTable("EVENTS_Guest");
+            addRows(joinTable, events, (row, i) -> {
+                // (AutoNumber ids start at 1)
+                row[joinTable.getColumn("EVENT_ID").getColumnIndex()] = i + 1;
+                row[joinTable.getColumn("email").getColumnIndex()] = email(i % guests);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface RowFiller {
+        void fill(Object[] row, int i);
+    }
+
+    private static void addRows(Table table, int count, RowFiller filler) throws IOException {
+        List<Object[]> chunk = new ArrayList<>(POPULATE_CHUNK);
+        for (int i = 0; i < count; i++) {
+            Object[] row = new Object[table.getColumnCount()];
+            filler.fill(row, i);
+            chunk.add(row);
+            if (chunk.size() == POPULATE_CHUNK || i == count - 1) {
+                table.addRows(chunk);
+                chunk.clear();
+            }
+        }
+    }
+
+    // --------
+    // workload
+    // --------
+
+    private final class Workload {
+        private final SessionFactory sessionFactory;
+        private final int events;
+        private final int guests;
+        private final int totalWeight;
+        private final AtomicLong writeSequence = new AtomicLong();
+
+        Workload(SessionFactory sessionFactory, int events) {
+            this.sessionFactory = sessionFactory;
+            this.events = events;
+            this.guests = Math.max(1, events / GUESTS_PER_EVENT_RATIO);
+            this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        Result measure(int threads, int seconds) throws Exception {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            Result result = run(threads, seconds);
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    result.peakHeapBytes += pool.getPeakUsage().getUsed();
+                }
+            }
+            System.gc();
+            result.heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            return result;
+        }
+
+        Result run(int threads, int seconds) throws Exception {
+            Result result = new Result(events, threads);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                long end = System.nanoTime() + seconds * 1000000000L;
+                List<Future<Recorder>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> runUntil(end)));
+                }
+                for (Future<Recorder> future : futures) {
+                    result.add(future.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            result.seconds = seconds;
+            return result;
+        }
+
+        private Recorder runUntil(long end) {
+            Recorder recorder = new Recorder();
+            UCanAccessKeysetPager<Event> pager = new UCanAccessKeysetPager<>(Event.class, "date", PAGE_SIZE);
+            AtomicReference<String> pageToken = new AtomicReference<>();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < end) {
+                Operation operation = pick(random.nextInt(totalWeight));
+                long start = System.nanoTime();
+                try (Session session = sessionFactory.openSession()) {
+                    switch (operation) {
+                    case READ:
+                        Event event = session.get(Event.class, 1 + random.nextInt(events));
+                        event.getGuests().size();
+                        break;
+                    case PAGE:
+                        UCanAccessKeysetPager.Page<Event> page = pager.fetch(session, pageToken.get());
+                        pageToken.set(page.hasNext() ? page.getNextToken() : null);
+                        break;
+                    case WRITE:
+                        session.beginTransaction();
+                        Event newEvent = new Event("load test", LocalDateTime.now());
+                        newEvent.setDescription("load test " + writeSequence.incrementAndGet());
+                        newEvent.getGuests().add(session.load(Guest.class, email(random.nextInt(guests))));
+                        session.persist(newEvent);
+                        session.getTransaction().commit();
+                        break;
+                    default:
+                        throw new IllegalStateException();
+                    }
+                    recorder.record(operation, System.nanoTime() - start);
+                } catch (RuntimeException e) {
+                    recorder.failed(e);
+                }
+            }
+            return recorder;
+        }
+
+        private Operation pick(int n) {
+            for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+                n -= entry.getValue();
+                if (n < 0) {
+                    return entry.getKey();
+                }
+            }
+            throw new IllegalStateException();
+        }
+    }
+
+    /** latencies recorded by one thread */
+    private static final class Recorder {
+        final Map<Operation, long[]> latencies = new HashMap<>();
+        final Map<Operation, Integer> counts = new HashMap<>();
+        int failures;
+        RuntimeException firstFailure;
+
+        void record(Operation operation, long nanos) {
+            long[] values = latencies.computeIfAbsent(operation, k -> new long[1024]);
+            int count = counts.getOrDefault(operation, 0);
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                latencies.put(operation, values);
+            }
+            values[count] = nanos;
+            counts.put(operation, count + 1);
+        }
+
+        void failed(RuntimeException e) {
+            if (failures++ == 0) {
+                firstFailure = e;
+            }
+        }
+    }
+
+    // -------
+    // results
+    // -------
+
+    private static final class Result {
+        final int rows;
+        final int threads;
+        final Map<Operation, long[]> latencies = new TreeMap<>();
+        int failures;
+        RuntimeException firstFailure;
+        int seconds;
+        long heapBytes;
+        long peakHeapBytes;
+
+        Result(int rows, int threads) {
+            this.rows = rows;
+            this.threads = threads;
+        }
+
+        void add(Recorder recorder) {
+            for (Map.Entry<Operation, long[]> entry : recorder.latencies.entrySet()) {
+                long[] values = Arrays.copyOf(entry.getValue(), recorder.counts.get(entry.getKey()));
+                long[] existing = latencies.get(entry.getKey());
+                if (existing != null) {
+                    long[] merged = Arrays.copyOf(existing, existing.length + values.length);
+                    System.arraycopy(values, 0, merged, existing.length, values.length);
+                    values = merged;
+                }
+                latencies.put(entry.getKey(), values);
+            }
+            if (recorder.failures > 0 && firstFailure == null) {
+                firstFailure = recorder.firstFailure;
+            }
+            failures += recorder.failures;
+        }
+
+        String key() {
+            return rows + "." + threads;
+        }
+
+        long[] all() {
+            long[] all = latencies.values().stream().flatMapToLong(Arrays::stream).toArray();
+            Arrays.sort(all);
+            return all;
+        }
+
+        long operations() {
+            return latencies.values().stream().mapToLong(values -> values.length).sum();
+        }
+
+        double throughput() {
+            return (double) operations() / seconds;
+        }
+
+        static double percentileMillis(long[] values, double percentile) {
+            if (values.length == 0) {
+                return 0;
+            }
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            long[] all = all();
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "%2d threads: %,9.1f ops/s, p50 %7.2f ms, p99 %8.2f ms, heap %,5d MB (peak %,5d MB)", threads,
+                    throughput(), percentileMillis(all, 0.5), percentileMillis(all, 0.99), heapBytes >> 20,
+                    peakHeapBytes >> 20));
+            for (Map.Entry<Operation, long[]> entry : latencies.entrySet()) {
+                sb.append(String.format(Locale.ROOT, "%n            %-5s %,9d ops, p50 %7.2f ms, p99 %8.2f ms",
+                        entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue().length,
+                        percentileMillis(entry.getValue(), 0.5), percentileMillis(entry.getValue(), 0.99)));
+            }
+            if (failures > 0) {
+                sb.append(String.format("%n            %d failed", failures));
+            }
+            return sb.toString();
+        }
+    }
+
+    private Result result(int rows, int threads) {
+        for (Result result : results) {
+            if (result.rows == rows && result.threads == threads) {
+                return result;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void printScaling(int[] rowCounts, int[] threadCounts) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%nThroughput relative to %d thread(s), by dataset size (%d processors):%n",
+                threadCounts[0], processors);
+        for (int rows : rowCounts) {
+            StringBuilder sb = new StringBuilder(String.format("%,12d events:", rows));
+            for (int threads : threadCounts) {
+                sb.append(String.format(Locale.ROOT, "  %d%s: %.2f", threads, threads > processors ? "*" : "",
+                        result(rows, threads).throughput() / result(rows, threadCounts[0]).throughput()));
+            }
+            System.out.println(sb);
+        }
+        if (threadCounts[threadCounts.length - 1] > processors) {
+            System.out.println("(* more threads than processors)");
+        }
+        System.out.printf("%nThroughput relative to %,d events, by thread count:%n", rowCounts[0]);
+        for (int threads : threadCounts) {
+            StringBuilder sb = new StringBuilder(String.format("%12d threads:", threads));
+            for (int rows : rowCounts) {
+                sb.append(String.format(Locale.ROOT, "  %,d: %.2f", rows,
+                        result(rows, threads).throughput() / result(rowCounts[0], threads).throughput()));
+            }
+            System.out.println(sb);
+        }
+    }
+
+    private void writeResults(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println("rows,threads,processors,operations,failures,throughput,p50_ms,p99_ms,"
+                    + "read_p99_ms,page_p99_ms,write_p99_ms,heap_mb,peak_heap_mb");
+            for (Result result : results) {
+                long[] all = result.all();
+                out.printf(Locale.ROOT, "%d,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d%n", result.rows,
+                        result.threads, Runtime.getRuntime().availableProcessors(), result.operations(),
+                        result.failures, result.throughput(), Result.percentileMillis(all, 0.5),
+                        Result.percentileMillis(all, 0.99), percentileMillis(result, Operation.READ),
+                        percentileMillis(result, Operation.PAGE), percentileMillis(result, Operation.WRITE),
+                        result.heapBytes >> 20, result.peakHeapBytes >> 20);
+            }
+        }
+        System.out.println("\nResults written to " + file);
+    }
+
+    private static double percentileMillis(Result result, Operation operation) {
+        long[] values = result.latencies.get(operation);
+        return values == null ? 0 : Result.percentileMillis(values, 0.99);
+    }
+
+    // ---------
+    // baselines
+    // ---------
+
+    private void recordBaseline(File file) throws IOException {
+        Properties baseline = new Properties();
+        baseline.setProperty("processors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        baseline.setProperty("mix", options.get("mix"));
+        for (Result result : results) {
+            baseline.setProperty(result.key() + ".throughput", String.format(Locale.ROOT, "%.1f", result.throughput()));
+            baseline.setProperty(result.key() + ".p99_ms",
+                    String.format(Locale.ROOT, "%.3f", Result.percentileMillis(result.all(), 0.99)));
+            baseline.setProperty(result.key() + ".heap_mb", Long.toString(result.heapBytes >> 20));
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            baseline.store(out, "LoadTest baseline (rows.threads.metric)");
+        }
+    }
+
+    private List<String> compareWithBaseline(File file) throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            baseline.load(in);
+        }
+        List<String> regressions = new ArrayList<>();
+        String processors = Integer.toString(Runtime.getRuntime().availableProcessors());
+        if (!processors.equals(baseline.getProperty("processors")) || !options.get("mix").equals(baseline.getProperty("mix"))) {
+            System.out.printf("Baseline %s was recorded with %s processors and mix %s; not comparing%n", file,
+                    baseline.getProperty("processors"), baseline.getProperty("mix"));
+            return regressions;
+        }
+        double tolerance = Double.parseDouble(options.get("tolerance"));
+        double latencyTolerance = Double.parseDouble(options.get("latency_tolerance"));
+        int compared = 0;
+        for (Result result : results) {
+            String throughput = baseline.getProperty(result.key() + ".throughput");
+            if (throughput == null) {
+                continue;
+            }
+            compared++;
+            check(regressions, result.key() + " throughput (ops/s)", result.throughput(),
+                    Double.parseDouble(throughput), -tolerance);
+            check(regressions, result.key() + " p99 (ms)", Result.percentileMillis(result.all(), 0.99),
+                    Double.parseDouble(baseline.getProperty(result.key() + ".p99_ms")), latencyTolerance);
+            check(regressions, result.key() + " heap (MB)", result.heapBytes >> 20,
+                    Double.parseDouble(baseline.getProperty(result.key() + ".heap_mb")), tolerance);
+        }
+        System.out.printf("Compared %d of %d results with baseline %s: %d regression(s)%n", compared, results.size(),
+                file, regressions.size());
+        return regressions;
+    }
+
+    /**
+     * @param tolerance
+     *            largest allowed relative change; negative if the value must
+     *            not drop, positive if it must not rise
+     */
+    private static void check(List<String> regressions, String name, double actual, double expected,
+            double tolerance) {
+        double limit = expected * (1 + tolerance);
+        if (tolerance < 0 ? actual < limit : actual > limit) {
+            regressions.add(String.format(Locale.ROOT, "%s: %.2f, baseline %.2f (limit %.2f)", name, actual,
+                    expected, limit));
+        }
+    }
+
+}
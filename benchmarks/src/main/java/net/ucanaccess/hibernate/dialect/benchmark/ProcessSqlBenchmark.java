@@ -0,0 +1,70 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.dialect.pagination.LimitHandler;
+import org.hibernate.engine.spi.RowSelection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessDialect;
+
+/**
+ * Cost of the limit handler's SQL rewriting for a typical entity query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessSqlBenchmark {
+    private static final String SQL = "select event0_.[EVENT_ID] as EVENT_ID1_0_, event0_.[comments] as comments2_0_, "
+            + "event0_.[EVENT DATE] as EVENT3_0_, event0_.[description] as descript4_0_, event0_.[fee] as fee5_0_, "
+            + "event0_.[logo] as logo6_0_, event0_.[title] as title7_0_ from [EVENTS] event0_ "
+            + "order by event0_.[EVENT_ID]";
+
+    /** first row of the page; 0 is a "first page" (max rows only) selection */
+    @Param({ "0", "100" })
+    public int firstRow;
+
+    private LimitHandler limitHandler;
+    private RowSelection selection;
+
+    @Setup
+    public void setUp() {
+        limitHandler = new UCanAccessDialect().getLimitHandler();
+        selection = new RowSelection();
+        selection.setFirstRow(firstRow);
+        selection.setMaxRows(25);
+    }
+
+    @Benchmark
+    public String processSql() {
+        return limitHandler.processSql(SQL, selection);
+    }
+}
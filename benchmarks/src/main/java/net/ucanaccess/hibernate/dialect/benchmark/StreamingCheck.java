@@ -0,0 +1,200 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.hibernate.Session;
+
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Table;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+import net.ucanaccess.hibernate.dialect.test.Event;
+import net.ucanaccess.hibernate.dialect.test.Guest;
+
+/**
+ * Checks that a forward-only query over a large result keeps the heap
+ * bounded when the mirror is on disk: fills a database with events that
+ * each have a MEMO value, then reads them all through Hibernate with
+ * stream() ("mode=stream", detaching each event), or with list()
+ * ("mode=list") for comparison, and prints the largest heap in use after a
+ * garbage collection, sampled every 1000 rows. Run it with a heap much
+ * smaller than the result; it fails (exit code 1) if it runs out of memory.
+ *
+ * Not a JMH benchmark; run it from the build with
+ * "mvn -P streaming-check verify", or with
+ *
+ * <pre>
+ * java -Xmx64m -cp target/benchmarks.jar net.ucanaccess.hibernate.dialect.benchmark.StreamingCheck \
+ *     rows=20000 memo_kb=4 mode=stream|list [result_memory_rows=0]
+ * </pre>
+ *
+ * "result_memory_rows=0" turns off the spooling of large results to the
+ * mirror's disk files, which {@link UCanAccessConnectionProvider} turns on
+ * when the mirror is on disk.
+ */
+public class StreamingCheck {
+
+    private static final int POPULATE_CHUNK = 500;
+    private static final int SAMPLE_ROWS = 1000;
+    private static final LocalDateTime FIRST_DATE = LocalDateTime.of(2017, 5, 21, 14, 15, 16);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rows", "20000");
+        options.put("memo_kb", "4");
+        options.put("mode", "stream");
+        options.put("result_memory_rows", "");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + "; options (and defaults): " + options);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int rows = Integer.parseInt(options.get("rows"));
+        String memo = memo(Integer.parseInt(options.get("memo_kb")) * 1024);
+        boolean stream = options.get("mode").equals("stream");
+
+        Map<String, String> settings = new HashMap<>();
+        settings.put("hibernate.connection.provider_class", UCanAccessConnectionProvider.class.getName());
+        settings.put(UCanAccessSettings.OPTION_PREFIX + "memory", "false");
+        if (!options.get("result_memory_rows").isEmpty()) {
+            settings.put(UCanAccessSettings.RESULT_MEMORY_ROWS, options.get("result_memory_rows"));
+        }
+        System.out.printf("%,d events with %,d characters of MEMO text each, max heap %d MB, %s%n", rows,
+                memo.length(), Runtime.getRuntime().maxMemory() >> 20, options);
+
+        try (BenchmarkDatabase database = BenchmarkDatabase.create(Event.class, Guest.class)) {
+            database.reopen(() -> populate(database, rows, memo), settings);
+            long start = System.nanoTime();
+            long count = 0;
+            long characters = 0;
+            try (Session session = database.getSessionFactory().openSession()) {
+                if (stream) {
+                    try (Stream<Event> events = session.createQuery("from Event", Event.class).stream()) {
+                        for (Event event : (Iterable<Event>) events::iterator) {
+                            count++;
+                            characters += event.getComments().length();
+                            session.detach(event);
+                            if (count % SAMPLE_ROWS == 0) {
+                                sampleLiveHeap();
+                            }
+                        }
+                    }
+                } else {
+                    for (Event event : session.createQuery("from Event", Event.class).list()) {
+                        count++;
+                        characters += event.getComments().length();
+                    }
+                    sampleLiveHeap();
+                }
+            } catch (OutOfMemoryError | RuntimeException e) {
+                System.out.printf("FAILED after %,d rows: %s%n", count, outOfMemory(e) ? "out of memory" : e);
+                System.exit(1);
+            }
+            System.out.printf("%s: %,d rows, %,d KB of MEMO text in %.1f s, live heap after GC at most %d MB%n",
+                    options.get("mode"), count, characters >> 10, (System.nanoTime() - start) / 1e9,
+                    maxLiveHeapBytes >> 20);
+            if (count != rows) {
+                System.out.printf("FAILED: expected %,d rows%n", rows);
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Whether the failure was caused by an OutOfMemoryError, which UCanAccess
+     * and HSQLDB wrap in other exceptions (or add as suppressed ones)
+     */
+    private static boolean outOfMemory(Throwable e) {
+        if (e == null) {
+            return false;
+        }
+        if (e instanceof OutOfMemoryError || outOfMemory(e.getCause())) {
+            return true;
+        }
+        for (Throwable suppressed : e.getSuppressed()) {
+            if (outOfMemory(suppressed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long maxLiveHeapBytes;
+
+    private static void sampleLiveHeap() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        maxLiveHeapBytes = Math.max(maxLiveHeapBytes, used);
+    }
+
+    private static String memo(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + i % 26);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Writes the rows straight into the database file, in small chunks, so
+     * that the heap is not used up before the check starts
+     */
+    private static void populate(BenchmarkDatabase database, int events, String memo) {
+        try (Database db = new DatabaseBuilder(database.getDatabaseFile()).setAutoSync(false).open()) {
+            Table table = db.getTable("EVENTS");
+            List<Object[]> chunk = new ArrayList<>(POPULATE_CHUNK);
+            for (int i = 0; i < events; i++) {
+                Object[] row = new Object[table.getColumnCount()];
+                row[table.getColumn("title").getColumnIndex()] = "event " + i;
+                row[table.getColumn("description").getColumnIndex()] = "description " + i;
+                row[table.getColumn("comments").getColumnIndex()] = memo;
+                row[table.getColumn("EVENT DATE").getColumnIndex()] = Date.from(
+                        FIRST_DATE.plusMinutes(i).atZone(ZoneId.systemDefault()).toInstant());
+                chunk.add(row);
+                if (chunk.size() == POPULATE_CHUNK || i == events - 1) {
+                    table.addRows(chunk);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
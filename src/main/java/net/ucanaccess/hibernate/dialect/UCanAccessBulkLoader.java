@@ -0,0 +1,175 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+/**
+ *
+ * Bulk import and export of entities through a {@link StatelessSession}
+ *
+ * Nothing is kept in a persistence context, so heap use does not grow with the
+ * number of rows. Imported rows are sent in JDBC batches of {@code batchSize}
+ * and committed every {@code commitInterval} rows; rows committed before a
+ * failure stay in the database.
+ *
+ * Entities whose ids come from a table-based generator (e.g.,
+ * {@link UCanAccessDialectTableGenerator}) or are assigned by the application
+ * are inserted in batches. Entities with IDENTITY (COUNTER) ids are supported,
+ * but each of their rows is a separate INSERT because the database has to
+ * assign the id.
+ *
+ */
+public class UCanAccessBulkLoader {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_COMMIT_INTERVAL = 10000;
+
+    private final SessionFactory sessionFactory;
+    private final int batchSize;
+    private final int commitInterval;
+
+    public UCanAccessBulkLoader(SessionFactory sessionFactory) {
+        this(sessionFactory, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    public UCanAccessBulkLoader(SessionFactory sessionFactory, int batchSize, int commitInterval) {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("batchSize and commitInterval must be positive");
+        }
+        this.sessionFactory = sessionFactory;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Inserts the entities from a stream, e.g., one built from the lines of a
+     * CSV file with {@code Files.lines(path).map(...)}.
+     */
+    public Result load(Stream<?> entities) {
+        return load(entities.iterator());
+    }
+
+    public Result load(Iterable<?> entities) {
+        return load(entities.iterator());
+    }
+
+    public Result load(Iterator<?> entities) {
+        long start = System.nanoTime();
+        long rows = 0;
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            session.setJdbcBatchSize(batchSize);
+            Transaction transaction = session.beginTransaction();
+            try {
+                while (entities.hasNext()) {
+                    session.insert(entities.next());
+                    if (++rows % commitInterval == 0) {
+                        transaction.commit();
+                        transaction = session.beginTransaction();
+                    }
+                }
+                transaction.commit();
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        } finally {
+            session.close();
+        }
+        return new Result(rows, System.nanoTime() - start);
+    }
+
+    /**
+     * Passes every instance of an entity to {@code consumer}, reading them with
+     * a forward-only cursor instead of loading the whole table.
+     */
+    public <T> Result export(Class<T> entityClass, Consumer<? super T> consumer) {
+        return export("from " + entityClass.getName(), entityClass, consumer);
+    }
+
+    /**
+     * Passes every result of an HQL query to {@code consumer}, reading them
+     * with a forward-only cursor instead of loading the whole result.
+     */
+    public <T> Result export(String hql, Class<T> resultClass, Consumer<? super T> consumer) {
+        long start = System.nanoTime();
+        long rows = 0;
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            try (ScrollableResults results = session.createQuery(hql, resultClass)
+                    .setFetchSize(batchSize)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    consumer.accept(resultClass.cast(results.get(0)));
+                    rows++;
+                }
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+            transaction.commit();
+        } finally {
+            session.close();
+        }
+        return new Result(rows, System.nanoTime() - start);
+    }
+
+    /**
+     * Number of rows imported or exported, and how long it took
+     */
+    public static final class Result {
+        private final long rows;
+        private final long elapsedNanos;
+
+        Result(long rows, long elapsedNanos) {
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000L;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows in %d ms (%.0f rows/s)", rows, getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+
+}
@@ -0,0 +1,414 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.ConnectionProviderInitiator;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import net.ucanaccess.jdbc.UcanaccessConnection;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - connection pool
+ * 
+ * UCanAccess loads the whole Access database into an in-memory HSQLDB
+ * "mirror" when the first connection to it is opened, and all connections to
+ * the same database in the JVM share that mirror until the last one is closed.
+ * This provider opens the mirror once, when the SessionFactory starts, and
+ * keeps one connection open for as long as the SessionFactory is open, so
+ * that neither the first request nor a pool that has shrunk and grown again
+ * has to pay for loading the database.
+ * 
+ * To use it, in hibernate.cfg.xml
+ * 
+ * <pre>
+ * &lt;property name="connection.provider_class"&gt;net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider&lt;/property&gt;
+ * &lt;property name="connection.pool_size"&gt;10&lt;/property&gt;
+ * </pre>
+ * 
+ * Connection options can be set with "hibernate.ucanaccess.option.*" properties,
+ * and the mirror can be kept on disk between runs (see
+ * {@link UCanAccessMirrorCache}). See {@link UCanAccessSettings} for the other
+ * settings.
+ * 
+ */
+public class UCanAccessConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final int DEFAULT_MIN_SIZE = 1;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_IDLE_VALIDATION_MILLIS = 30000;
+    public static final int DEFAULT_RESULT_MEMORY_ROWS = 10000;
+
+    private String url;
+    private Properties connectionProperties;
+    private Boolean autoCommit;
+    private Integer isolation;
+    private int maxSize;
+    private long timeoutMillis;
+    private long idleValidationMillis;
+    private Integer resultMemoryRows;
+    private UCanAccessSqlTranslationCache sqlCache;
+    private UCanAccessSqlTranslationCache sharedSqlCache;
+    private boolean countRows;
+
+    /** holds the mirror in memory for as long as the pool is open (never handed out) */
+    private Connection mirrorConnection;
+    private long mirrorLoadNanos;
+    private UCanAccessMirrorCache mirrorCache;
+
+    /** most recently used first */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private Semaphore permits;
+    private volatile boolean stopped;
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @Override
+    public void configure(@SuppressWarnings("rawtypes") Map configurationValues) {
+        url = (String) configurationValues.get(AvailableSettings.URL);
+        if (url == null) {
+            throw new HibernateException("UCanAccessConnectionProvider requires " + AvailableSettings.URL);
+        }
+        url = url.trim();
+        for (Object key : configurationValues.keySet()) {
+            if (key instanceof String && ((String) key).startsWith(UCanAccessSettings.OPTION_PREFIX)) {
+                url = UCanAccessUrl.withOption(url, ((String) key).substring(UCanAccessSettings.OPTION_PREFIX.length()),
+                        String.valueOf(configurationValues.get(key)).trim());
+            }
+        }
+        mirrorCache = UCanAccessMirrorCache.configure(url, configurationValues);
+        if (mirrorCache != null) {
+            url = mirrorCache.applyTo(url);
+        }
+        connectionProperties = ConnectionProviderInitiator.getConnectionProperties(configurationValues);
+        autoCommit = ConfigurationHelper.getBoolean(AvailableSettings.AUTOCOMMIT, configurationValues, false);
+        isolation = ConnectionProviderInitiator.extractIsolation(configurationValues);
+        maxSize = ConfigurationHelper.getInt(AvailableSettings.POOL_SIZE, configurationValues, DEFAULT_MAX_SIZE);
+        int minSize = Math.min(maxSize,
+                ConfigurationHelper.getInt(UCanAccessSettings.POOL_MIN_SIZE, configurationValues, DEFAULT_MIN_SIZE));
+        timeoutMillis = ConfigurationHelper.getLong(UCanAccessSettings.POOL_TIMEOUT, configurationValues,
+                DEFAULT_TIMEOUT_MILLIS);
+        idleValidationMillis = ConfigurationHelper.getLong(UCanAccessSettings.POOL_IDLE_VALIDATION,
+                configurationValues, DEFAULT_IDLE_VALIDATION_MILLIS);
+        resultMemoryRows = ConfigurationHelper.getInteger(UCanAccessSettings.RESULT_MEMORY_ROWS, configurationValues);
+        if (resultMemoryRows == null && "false".equalsIgnoreCase(UCanAccessUrl.option(url, "memory"))) {
+            resultMemoryRows = DEFAULT_RESULT_MEMORY_ROWS;
+        }
+        int sqlCacheSize = ConfigurationHelper.getInt(UCanAccessSettings.SQL_CACHE_SIZE, configurationValues, 0);
+        if (sharedSqlCache != null) {
+            sqlCache = sharedSqlCache;
+        } else {
+            sqlCache = sqlCacheSize > 0 ? new UCanAccessSqlTranslationCache(sqlCacheSize) : null;
+        }
+        countRows = UCanAccessStatementInspector.isConfigured(configurationValues);
+        permits = new Semaphore(maxSize, true);
+
+        try {
+            long start = System.nanoTime();
+            mirrorConnection = openConnection();
+            mirrorLoadNanos = System.nanoTime() - start;
+            UCanAccessMetrics.getInstance().mirrorLoaded(mirrorLoadNanos);
+            for (int i = 0; i < minSize; i++) {
+                idle.offerLast(new PooledConnection(openConnection()));
+            }
+        } catch (SQLException e) {
+            stop();
+            throw new HibernateException("Unable to open UCanAccess connection to " + url, e);
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, connectionProperties);
+        if (isolation != null) {
+            conn.setTransactionIsolation(isolation);
+        }
+        if (resultMemoryRows != null && resultMemoryRows > 0) {
+            // larger results are spooled to the mirror's disk files instead of the heap
+            try (Statement st = conn.createStatement()) {
+                st.execute("SET SESSION RESULT MEMORY ROWS " + resultMemoryRows);
+            }
+        }
+        if (conn.getAutoCommit() != autoCommit) {
+            conn.setAutoCommit(autoCommit);
+        }
+        createdCount.incrementAndGet();
+        if (sqlCache != null) {
+            conn = sqlCache.wrap(conn);
+        }
+        return countRows ? UCanAccessRowCounter.wrap(conn) : conn;
+    }
+
+    /**
+     * Makes this pool use the SQL translation cache of another pool for the
+     * same database (call before {@link #configure(Map)})
+     */
+    void shareSqlCache(UCanAccessSqlTranslationCache cache) {
+        sharedSqlCache = cache;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (stopped) {
+            throw new SQLException("The UCanAccess connection pool has been stopped");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a UCanAccess connection", e);
+        }
+        long waitNanos = System.nanoTime() - start;
+        if (!acquired) {
+            throw new SQLException(String.format(
+                    "No UCanAccess connection became available within %d ms (pool size %d)", timeoutMillis, maxSize));
+        }
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            // retry
+        }
+        acquiredCount.incrementAndGet();
+        UCanAccessMetrics.getInstance().connectionAcquired(waitNanos);
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.connection;
+                }
+                discard(pooled.connection);
+            }
+            return openConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Connections that were returned recently are trusted; the others get a
+     * (cheap) validity check.
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.connection.isClosed()) {
+                return false;
+            }
+            if (System.nanoTime() - pooled.returnedNanos < TimeUnit.MILLISECONDS.toNanos(idleValidationMillis)) {
+                return true;
+            }
+            return pooled.connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        try {
+            if (stopped || conn.isClosed()) {
+                discard(conn);
+                return;
+            }
+            try {
+                // leave the connection as we found it
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+                if (conn.getAutoCommit() != autoCommit) {
+                    conn.setAutoCommit(autoCommit);
+                }
+                if (isReadOnlySession(conn)) {
+                    conn.setReadOnly(false);
+                }
+                conn.clearWarnings();
+            } catch (SQLException e) {
+                discard(conn);
+                return;
+            }
+            idle.offerFirst(new PooledConnection(conn));
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * UcanaccessConnection.isReadOnly() tells whether the database file is
+     * read-only; setReadOnly() sets the flag of the HSQLDB session, so that is
+     * the one to check.
+     */
+    private static boolean isReadOnlySession(Connection conn) throws SQLException {
+        if (conn instanceof UcanaccessConnection) {
+            return ((UcanaccessConnection) conn).getHSQLDBConnection().isReadOnly();
+        }
+        if (conn.isWrapperFor(UcanaccessConnection.class)) {
+            return conn.unwrap(UcanaccessConnection.class).getHSQLDBConnection().isReadOnly();
+        }
+        return conn.isReadOnly();
+    }
+
+    private void discard(Connection conn) {
+        discardedCount.incrementAndGet();
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // (ignore)
+        }
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled.connection);
+        }
+        if (mirrorConnection != null) {
+            discard(mirrorConnection);
+            mirrorConnection = null;
+            if (mirrorCache != null) {
+                mirrorCache.storeFingerprint();
+            }
+        }
+        if (mirrorCache != null) {
+            mirrorCache.release();
+        }
+        if (sqlCache != null) {
+            sqlCache.clear();
+        }
+    }
+
+    @Override
+    public boolean isUnwrappableAs(@SuppressWarnings("rawtypes") Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || UCanAccessConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    // ----------
+    // statistics
+    // ----------
+
+    /** time it took to open the first connection, i.e., to load the database into the mirror */
+    public long getMirrorLoadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mirrorLoadNanos);
+    }
+
+    /** true if the mirror was loaded from the persistent mirror cache */
+    public boolean isMirrorReused() {
+        return mirrorCache != null && mirrorCache.isReused();
+    }
+
+    /**
+     * @return the cache of SQL translations shared by the pooled connections,
+     *         or null if it has been turned off
+     */
+    public UCanAccessSqlTranslationCache getSqlCache() {
+        return sqlCache;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** connections currently handed out */
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /** number of connections handed out since the pool was started */
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /** number of physical connections opened (including the one that holds the mirror) */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /** number of physical connections closed because they were broken or the pool was stopped */
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UCanAccessConnectionProvider[url=%s, active=%d, idle=%d, max=%d, acquired=%d, "
+                + "created=%d, totalWait=%d ms, maxWait=%d ms, mirrorLoad=%d ms, mirrorReused=%s, sqlCacheHits=%.1f%%]",
+                url, getActiveCount(), getIdleCount(), maxSize, getAcquiredCount(), getCreatedCount(),
+                getTotalWaitMillis(), getMaxWaitMillis(), getMirrorLoadMillis(), isMirrorReused(),
+                sqlCache == null ? 0 : sqlCache.getHitRatio() * 100);
+    }
+
+    private static final class PooledConnection {
+        final Connection connection;
+        final long returnedNanos = System.nanoTime();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.java.LongTypeDescriptor;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - maps a {@code long} (or {@code Long})
+ * attribute holding an amount in ten-thousandths (e.g., 123400 for 12.34)
+ * to a CURRENCY column
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * &#64;Type(type = "ucanaccess_currency")
+ * private long price;
+ * </pre>
+ * 
+ * (Attributes of type {@link UCanAccessMoney} need no annotation.)
+ * 
+ */
+public class UCanAccessCurrencyType extends AbstractSingleColumnStandardBasicType<Long> {
+
+    public static final String NAME = "ucanaccess_currency";
+
+    public static final UCanAccessCurrencyType INSTANCE = new UCanAccessCurrencyType();
+
+    public UCanAccessCurrencyType() {
+        super(UCanAccessDialectCurrencyTypeDescriptor.INSTANCE, LongTypeDescriptor.INSTANCE);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+}
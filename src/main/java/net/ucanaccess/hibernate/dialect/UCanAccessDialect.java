@@ -16,14 +16,29 @@
 package net.ucanaccess.hibernate.dialect;
 
 import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
+import org.hibernate.LockOptions;
+import org.hibernate.boot.model.TypeContributions;
+import org.hibernate.ScrollMode;
+import org.hibernate.cfg.Environment;
 import org.hibernate.dialect.SQLServerDialect;
+import org.hibernate.dialect.function.SQLFunction;
 import org.hibernate.dialect.function.SQLFunctionTemplate;
 import org.hibernate.dialect.function.StandardSQLFunction;
+import org.hibernate.dialect.function.VarArgsSQLFunction;
 import org.hibernate.dialect.identity.IdentityColumnSupport;
 import org.hibernate.dialect.pagination.LimitHandler;
 import org.hibernate.dialect.unique.UniqueDelegate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hql.spi.id.MultiTableBulkIdStrategy;
+import org.hibernate.service.ServiceRegistry;
 import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
 
 /**
  * 
@@ -31,6 +46,13 @@ import org.hibernate.type.StandardBasicTypes;
  * 
  */
 public class UCanAccessDialect extends SQLServerDialect {
+
+    /**
+     * the largest number of values in an IN list (see {@link UCanAccessInList}
+     * for lists that are longer than that)
+     */
+    public static final int IN_EXPRESSION_COUNT_LIMIT = 2048;
+
     public UCanAccessDialect() {
         super();
         
@@ -41,13 +63,118 @@ public class UCanAccessDialect extends SQLServerDialect {
         registerColumnType(Types.BOOLEAN, "YESNO");
         registerColumnType(Types.CLOB, "MEMO");
         registerColumnType(Types.BLOB, "OLE");
+        registerColumnType(UCanAccessDialectCurrencyTypeDescriptor.CURRENCY, "CURRENCY");
+
+        // inserts into entities with table-generated ids (see UCanAccessDialectTableGenerator)
+        // can be batched
+        getDefaultProperties().setProperty(Environment.STATEMENT_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        getDefaultProperties().setProperty(Environment.ORDER_INSERTS, "true");
+
+        // "id in (?, ?, ?)" is padded to "id in (?, ?, ?, ?)" so that lists of
+        // similar sizes share the same SQL (and UCanAccess translation)
+        getDefaultProperties().setProperty(Environment.IN_CLAUSE_PARAMETER_PADDING, "true");
+
+        // lazy collections and proxies are loaded up to 16 at a time, with the
+        // key list padded to one of a few fixed sizes, so that iterating over
+        // lazy associations costs one statement (and translation) per batch
+        // instead of one per owner (see also UCanAccessFetchMonitor)
+        getDefaultProperties().setProperty(Environment.DEFAULT_BATCH_FETCH_SIZE, "16");
+        getDefaultProperties().setProperty(Environment.BATCH_FETCH_STYLE, "PADDED");
+
+        registerAccessFunctions();
+    }
 
-        registerFunction("current_date", new StandardSQLFunction("Date", StandardBasicTypes.DATE));
-        registerFunction("current_time", new StandardSQLFunction("Time", StandardBasicTypes.TIME));
-        registerFunction("current_timestamp", new StandardSQLFunction("Now", StandardBasicTypes.TIMESTAMP));
-        registerFunction("second", new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "Second(?1)"));
-        registerFunction("minute", new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "Minute(?1)"));
-        registerFunction("hour", new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "Hour(?1)"));
+    /**
+     * Registers the Access (or UCanAccess) translations of the HQL functions,
+     * replacing the SQL Server ones that UCanAccess does not understand (see
+     * FunctionMatrixTest for the functions that have been checked)
+     */
+    protected void registerAccessFunctions() {
+        // dates and times
+        registerAccessFunction("current_date", new StandardSQLFunction("Date", StandardBasicTypes.DATE));
+        registerAccessFunction("current_time", new StandardSQLFunction("Time", StandardBasicTypes.TIME));
+        registerAccessFunction("current_timestamp", new StandardSQLFunction("Now", StandardBasicTypes.TIMESTAMP));
+        registerAccessFunction("getdate", new StandardSQLFunction("Now", StandardBasicTypes.TIMESTAMP));
+        registerAccessFunction("second", new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "Second(?1)"));
+        registerAccessFunction("minute", new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "Minute(?1)"));
+        registerAccessFunction("hour", new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "Hour(?1)"));
+        registerAccessFunction("day", new StandardSQLFunction("Day", StandardBasicTypes.INTEGER));
+        registerAccessFunction("month", new StandardSQLFunction("Month", StandardBasicTypes.INTEGER));
+        registerAccessFunction("year", new StandardSQLFunction("Year", StandardBasicTypes.INTEGER));
+        registerAccessFunction("weekday", new StandardSQLFunction("WeekDay", StandardBasicTypes.INTEGER));
+        registerAccessFunction("extract", new UCanAccessDialectIntervalFunction("DatePart", StandardBasicTypes.INTEGER));
+        registerAccessFunction("datepart", new UCanAccessDialectIntervalFunction("DatePart", StandardBasicTypes.INTEGER));
+        registerAccessFunction("dateadd", new UCanAccessDialectIntervalFunction("DateAdd", StandardBasicTypes.TIMESTAMP));
+        registerAccessFunction("datediff", new UCanAccessDialectIntervalFunction("DateDiff", StandardBasicTypes.INTEGER));
+        registerAccessFunction("dateserial", new StandardSQLFunction("DateSerial", StandardBasicTypes.DATE));
+        registerAccessFunction("datevalue", new StandardSQLFunction("DateValue", StandardBasicTypes.DATE));
+        registerAccessFunction("format", new StandardSQLFunction("Format", StandardBasicTypes.STRING));
+
+        // strings
+        // (UCanAccess's InStr() does not find strings with capital letters, so
+        // locate() is left to HSQLDB)
+        registerAccessFunction("locate", new StandardSQLFunction("locate", StandardBasicTypes.INTEGER));
+        registerAccessFunction("substring", new StandardSQLFunction("Mid", StandardBasicTypes.STRING));
+        registerAccessFunction("mid", new StandardSQLFunction("Mid", StandardBasicTypes.STRING));
+        registerAccessFunction("length", new StandardSQLFunction("Len", StandardBasicTypes.INTEGER));
+        registerAccessFunction("len", new StandardSQLFunction("Len", StandardBasicTypes.INTEGER));
+        registerAccessFunction("bit_length", new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "(Len(?1) * 16)"));
+        registerAccessFunction("trim", new SQLFunctionTemplate(StandardBasicTypes.STRING, "trim(?1 ?2 ?3 ?4)"));
+        registerAccessFunction("ltrim", new StandardSQLFunction("LTrim", StandardBasicTypes.STRING));
+        registerAccessFunction("rtrim", new StandardSQLFunction("RTrim", StandardBasicTypes.STRING));
+        registerAccessFunction("upper", new StandardSQLFunction("UCase", StandardBasicTypes.STRING));
+        registerAccessFunction("lower", new StandardSQLFunction("LCase", StandardBasicTypes.STRING));
+        registerAccessFunction("replace", new StandardSQLFunction("Replace", StandardBasicTypes.STRING));
+        registerAccessFunction("reverse", new StandardSQLFunction("StrReverse", StandardBasicTypes.STRING));
+        registerAccessFunction("space", new StandardSQLFunction("Space", StandardBasicTypes.STRING));
+        registerAccessFunction("ascii", new StandardSQLFunction("Asc", StandardBasicTypes.INTEGER));
+        registerAccessFunction("char", new StandardSQLFunction("Chr", StandardBasicTypes.STRING));
+        registerAccessFunction("concat", new VarArgsSQLFunction(StandardBasicTypes.STRING, "(", " & ", ")"));
+
+        // numbers
+        // (abs() of a DECIMAL value is typed with a scale of zero, so it never
+        // equals a parameter with decimal places; x * sign(x) keeps the scale,
+        // but cannot be used when x holds a parameter)
+        registerAccessFunction("abs", new StandardSQLFunction("abs") {
+            @Override
+            public String render(Type firstArgumentType, @SuppressWarnings("rawtypes") List arguments,
+                    SessionFactoryImplementor sessionFactory) {
+                if (arguments.size() == 1 && arguments.get(0).toString().indexOf('?') < 0) {
+                    return "(" + arguments.get(0) + " * sign(" + arguments.get(0) + "))";
+                }
+                return super.render(firstArgumentType, arguments, sessionFactory);
+            }
+        });
+        registerAccessFunction("mod", new StandardSQLFunction("mod", StandardBasicTypes.INTEGER));
+        registerAccessFunction("sqrt", new StandardSQLFunction("Sqr", StandardBasicTypes.DOUBLE));
+        registerAccessFunction("atan", new StandardSQLFunction("Atn", StandardBasicTypes.DOUBLE));
+        registerAccessFunction("rand", new StandardSQLFunction("Rnd", StandardBasicTypes.DOUBLE));
+        registerAccessFunction("square", new SQLFunctionTemplate(StandardBasicTypes.DOUBLE, "(?1 * ?1)"));
+        registerAccessFunction("cot", new SQLFunctionTemplate(StandardBasicTypes.DOUBLE, "(1 / Tan(?1))"));
+        registerAccessFunction("power", new StandardSQLFunction("power", StandardBasicTypes.DOUBLE));
+        registerAccessFunction("int", new StandardSQLFunction("Int", StandardBasicTypes.INTEGER));
+        registerAccessFunction("fix", new StandardSQLFunction("Fix", StandardBasicTypes.DOUBLE));
+
+        // conversions and nulls
+        registerAccessFunction("str", new StandardSQLFunction("CStr", StandardBasicTypes.STRING));
+        registerAccessFunction("cstr", new StandardSQLFunction("CStr", StandardBasicTypes.STRING));
+        registerAccessFunction("clng", new StandardSQLFunction("CLng", StandardBasicTypes.INTEGER));
+        registerAccessFunction("cint", new StandardSQLFunction("CInt", StandardBasicTypes.INTEGER));
+        registerAccessFunction("cdbl", new StandardSQLFunction("CDbl", StandardBasicTypes.DOUBLE));
+        registerAccessFunction("ccur", new StandardSQLFunction("CCur", StandardBasicTypes.BIG_DECIMAL));
+        registerAccessFunction("cdate", new StandardSQLFunction("CDate", StandardBasicTypes.TIMESTAMP));
+        registerAccessFunction("cbool", new StandardSQLFunction("CBool", StandardBasicTypes.BOOLEAN));
+        registerAccessFunction("val", new StandardSQLFunction("Val", StandardBasicTypes.DOUBLE));
+        registerAccessFunction("nz", new StandardSQLFunction("Nz"));
+        registerAccessFunction("isnull", new StandardSQLFunction("Nz"));
+    }
+
+    /**
+     * Registers the Access translation of an HQL function (counted in
+     * {@link UCanAccessMetrics#getFunctionTranslationCounts()})
+     */
+    protected void registerAccessFunction(String name, SQLFunction function) {
+        registerFunction(name, new UCanAccessDialectCountingFunction(name, function));
     }
 
     // -----------------------
@@ -83,19 +210,194 @@ public class UCanAccessDialect extends SQLServerDialect {
         // System.out.println("-> Hibernate is checking support for Sequences.");
         return false;
     }
+
+    // -------------
+    // locking hints
+    // -------------
+    //
+    // Access SQL has no equivalent of the SQL Server "with (updlock, rowlock)"
+    // table hints, so we must not append them (e.g., to the SELECT statements
+    // issued by the table-based id generators).
+
+    @Override
+    public String appendLockHint(LockOptions lockOptions, String tableName) {
+        return tableName;
+    }
+
+    @Override
+    public String applyLocksToSql(String sql, LockOptions aliasedLockOptions, Map<String, String[]> keyColumnNames) {
+        return sql;
+    }
+
+    // ------------------
+    // scrollable results
+    // ------------------
+    //
+    // A scroll-insensitive cursor makes the driver keep every row it has read
+    // so that it can go back to them. Only forward-only results can be read
+    // in constant memory, so Query.scroll() uses FORWARD_ONLY as well (as
+    // Query.stream() already does).
+
+    @Override
+    public ScrollMode defaultScrollMode() {
+        return ScrollMode.FORWARD_ONLY;
+    }
+
+    // -----
+    // casts
+    // -----
+    //
+    // The column types registered above (LONG, YESNO, MEMO) are Access DDL,
+    // which UCanAccess does not accept in cast(... as ...).
+
+    @Override
+    public String getCastTypeName(int code) {
+        switch (code) {
+        case Types.INTEGER:
+            return "integer";
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return "boolean";
+        case Types.CLOB:
+            return "longvarchar";
+        case Types.BLOB:
+            return "longvarbinary";
+        default:
+            return super.getCastTypeName(code);
+        }
+    }
+
+    @Override
+    public int getInExpressionCountLimit() {
+        return IN_EXPRESSION_COUNT_LIMIT;
+    }
+
+    // --------------------------------
+    // multi-table bulk updates/deletes
+    // --------------------------------
+    //
+    // UCanAccess has no "#temp" tables, so the ids are inlined instead (see
+    // UCanAccessDialectBulkIdStrategy).
+
+    @Override
+    public MultiTableBulkIdStrategy getDefaultMultiTableBulkIdStrategy() {
+        return UCanAccessDialectBulkIdStrategy.INSTANCE;
+    }
+
+    // -------
+    // upserts
+    // -------
+    //
+    // UCanAccess passes MERGE through to HSQLDB, and the mirror's triggers write
+    // the inserted or updated row to the Access file, so an upsert takes one
+    // statement and no SELECT (see UCanAccessUpserter). Names with spaces must
+    // be in [brackets]: UCanAccess reads "double quotes" as string literals.
+
+    private static final Pattern PLAIN_NAME = Pattern.compile("\\w+");
+
+    /**
+     * Returns a MERGE statement that updates the row of {@code tableName}
+     * whose {@code keyColumns} match, or inserts a new row if there is none.
+     * Its parameters are the values of the {@code keyColumns} followed by
+     * those of the {@code insertColumns}; an existing row only gets the values
+     * of the {@code updateColumns}, which must be among the
+     * {@code insertColumns}.
+     */
+    public String getUpsertString(String tableName, String[] keyColumns, String[] insertColumns,
+            String[] updateColumns) {
+        String table = accessName(tableName);
+        int count = keyColumns.length + insertColumns.length;
+        StringBuilder sb = new StringBuilder(64 + count * 40).append("merge into ").append(table)
+                .append(" using (values (");
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        sb.append(")) as v (");
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "c" : ", c").append(i);
+        }
+        sb.append(") on ");
+        for (int i = 0; i < keyColumns.length; i++) {
+            sb.append(i == 0 ? "" : " and ").append(table).append('.').append(accessName(keyColumns[i]))
+                    .append(" = v.c").append(i);
+        }
+        List<String> inserted = Arrays.asList(insertColumns);
+        for (int i = 0; i < updateColumns.length; i++) {
+            int index = inserted.indexOf(updateColumns[i]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Column " + updateColumns[i] + " is updated but not inserted");
+            }
+            sb.append(i == 0 ? " when matched then update set " : ", ").append(accessName(updateColumns[i]))
+                    .append(" = v.c").append(keyColumns.length + index);
+        }
+        sb.append(" when not matched then insert (");
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "" : ", ")
+                    .append(accessName(i < keyColumns.length ? keyColumns[i] : insertColumns[i - keyColumns.length]));
+        }
+        sb.append(") values (");
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "v.c" : ", v.c").append(i);
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String accessName(String name) {
+        if (name.length() > 1 && (name.charAt(0) == '"' || name.charAt(0) == '`')
+                && name.charAt(name.length() - 1) == name.charAt(0)) {
+            name = name.substring(1, name.length() - 1);
+        } else if (name.startsWith("[")) {
+            return name;
+        }
+        return PLAIN_NAME.matcher(name).matches() ? name : '[' + name + ']';
+    }
     
-    private static final UCanAccessDialectUniqueDelegate UNIQUE_DELEGATE =
-            new UCanAccessDialectUniqueDelegate();
+    // ---------------
+    // CURRENCY values
+    // ---------------
+    //
+    // BigDecimal attributes are still mapped to DECIMAL columns; attributes of
+    // type UCanAccessMoney, or annotated with @Type(type = "ucanaccess_currency"),
+    // are mapped to CURRENCY columns and read and written as scaled longs.
+
+    @Override
+    public void contributeTypes(TypeContributions typeContributions, ServiceRegistry serviceRegistry) {
+        super.contributeTypes(typeContributions, serviceRegistry);
+        typeContributions.contributeType(UCanAccessCurrencyType.INSTANCE);
+        typeContributions.contributeType(UCanAccessMoneyType.INSTANCE);
+    }
+
+    // ------------------
+    // OLE and MEMO values
+    // ------------------
+    //
+    // see UCanAccessDialectBlobTypeDescriptor and UCanAccessDialectClobTypeDescriptor
+
+    @Override
+    protected SqlTypeDescriptor getSqlTypeDescriptorOverride(int sqlCode) {
+        switch (sqlCode) {
+        case Types.BLOB:
+            return UCanAccessDialectBlobTypeDescriptor.INSTANCE;
+        case Types.CLOB:
+            return UCanAccessDialectClobTypeDescriptor.INSTANCE;
+        default:
+            return super.getSqlTypeDescriptorOverride(sqlCode);
+        }
+    }
+
+    // (it remembers the tables created by the schema tool, so it is not shared)
+    private final UCanAccessDialectUniqueDelegate uniqueDelegate = new UCanAccessDialectUniqueDelegate();
 
     public UniqueDelegate getUniqueDelegate() {
-        return (UniqueDelegate) UNIQUE_DELEGATE;
+        return uniqueDelegate;
     }
     
     private static final UCanAccessDialectLimitHandler LIMIT_HANDLER =
             new UCanAccessDialectLimitHandler();
 
     public LimitHandler getLimitHandler() {
-        return LIMIT_HANDLER;
+        // (one that renders TOP n keeps state between processSql and binding)
+        return LIMIT_HANDLER.usesTopForFirstPage() ? new UCanAccessDialectLimitHandler(true) : LIMIT_HANDLER;
     }
     
 }
@@ -0,0 +1,200 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.hibernate.type.descriptor.ValueBinder;
+import org.hibernate.type.descriptor.ValueExtractor;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BasicExtractor;
+import org.hibernate.type.descriptor.sql.BlobTypeDescriptor;
+import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
+
+import net.ucanaccess.jdbc.UcanaccessBlob;
+import net.ucanaccess.jdbc.UcanaccessConnection;
+import net.ucanaccess.jdbc.UcanaccessResultSet;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - OLE (BLOB) columns
+ * 
+ * UCanAccess reads the whole OLE value from the database file as soon as
+ * {@link ResultSet#getBlob} is called, i.e., for every row of a query even if
+ * the value is never looked at. This descriptor keeps only the mirror's LOB
+ * locator and reads the value when the {@link Blob} is first used, so that
+ * entities with {@code java.sql.Blob} attributes can be listed without
+ * loading their attachments. (Attributes of type {@code byte[]} are still
+ * read in full when the entity is loaded.)
+ * 
+ * Values are bound in the same way as by {@link BlobTypeDescriptor#DEFAULT}.
+ * 
+ */
+public class UCanAccessDialectBlobTypeDescriptor implements SqlTypeDescriptor {
+
+    public static final UCanAccessDialectBlobTypeDescriptor INSTANCE = new UCanAccessDialectBlobTypeDescriptor();
+
+    @Override
+    public int getSqlType() {
+        return Types.BLOB;
+    }
+
+    @Override
+    public boolean canBeRemapped() {
+        return true;
+    }
+
+    @Override
+    public <X> ValueBinder<X> getBinder(JavaTypeDescriptor<X> javaTypeDescriptor) {
+        return BlobTypeDescriptor.DEFAULT.getBinder(javaTypeDescriptor);
+    }
+
+    @Override
+    public <X> ValueExtractor<X> getExtractor(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+        return new BasicExtractor<X>(javaTypeDescriptor, this) {
+            @Override
+            protected X doExtract(ResultSet rs, String name, WrapperOptions options) throws SQLException {
+                return javaTypeDescriptor.wrap(getBlob(rs, name), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, int index, WrapperOptions options)
+                    throws SQLException {
+                return javaTypeDescriptor.wrap(statement.getBlob(index), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, String name, WrapperOptions options)
+                    throws SQLException {
+                return javaTypeDescriptor.wrap(statement.getBlob(name), options);
+            }
+        };
+    }
+
+    private static Blob getBlob(ResultSet rs, String name) throws SQLException {
+        UcanaccessResultSet ucaRs;
+        if (rs instanceof UcanaccessResultSet) {
+            ucaRs = (UcanaccessResultSet) rs;
+        } else if (rs.isWrapperFor(UcanaccessResultSet.class)) {
+            ucaRs = rs.unwrap(UcanaccessResultSet.class);
+        } else {
+            return rs.getBlob(name);
+        }
+        Connection connection = ucaRs.getWrappedStatement().getConnection();
+        if (!(connection instanceof UcanaccessConnection)) {
+            return rs.getBlob(name);
+        }
+        // the HSQLDB locator, which stays valid for the rest of the session
+        Blob locator = ucaRs.getWrapped().getBlob(ucaRs.findColumn(name));
+        return locator == null ? null : new LazyBlob(locator, (UcanaccessConnection) connection);
+    }
+
+    /**
+     * A read-only {@link Blob} that is turned into a {@link UcanaccessBlob}
+     * (which holds the value read from the database file) on first use
+     */
+    private static class LazyBlob implements Blob {
+
+        private final UcanaccessConnection connection;
+        private Blob locator;
+        private Blob blob;
+
+        LazyBlob(Blob locator, UcanaccessConnection connection) {
+            this.locator = locator;
+            this.connection = connection;
+        }
+
+        private synchronized Blob blob() throws SQLException {
+            if (blob == null) {
+                if (locator == null) {
+                    throw new SQLException("Blob has been freed");
+                }
+                blob = new UcanaccessBlob(locator, connection);
+                locator = null;
+            }
+            return blob;
+        }
+
+        @Override
+        public long length() throws SQLException {
+            return blob().length();
+        }
+
+        @Override
+        public byte[] getBytes(long pos, int length) throws SQLException {
+            return blob().getBytes(pos, length);
+        }
+
+        @Override
+        public InputStream getBinaryStream() throws SQLException {
+            return blob().getBinaryStream();
+        }
+
+        @Override
+        public InputStream getBinaryStream(long pos, long length) throws SQLException {
+            return blob().getBinaryStream(pos, length);
+        }
+
+        @Override
+        public long position(byte[] pattern, long start) throws SQLException {
+            return blob().position(pattern, start);
+        }
+
+        @Override
+        public long position(Blob pattern, long start) throws SQLException {
+            return blob().position(pattern, start);
+        }
+
+        @Override
+        public int setBytes(long pos, byte[] bytes) throws SQLException {
+            throw new SQLException("Blob is read-only");
+        }
+
+        @Override
+        public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+            throw new SQLException("Blob is read-only");
+        }
+
+        @Override
+        public OutputStream setBinaryStream(long pos) throws SQLException {
+            throw new SQLException("Blob is read-only");
+        }
+
+        @Override
+        public void truncate(long len) throws SQLException {
+            throw new SQLException("Blob is read-only");
+        }
+
+        @Override
+        public synchronized void free() throws SQLException {
+            if (blob != null) {
+                blob.free();
+                blob = null;
+            }
+            locator = null;
+        }
+
+    }
+
+}
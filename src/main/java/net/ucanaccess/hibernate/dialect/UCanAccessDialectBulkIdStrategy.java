@@ -0,0 +1,315 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.boot.spi.MetadataImplementor;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.connections.spi.JdbcConnectionAccess;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.QueryParameters;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.hql.internal.ast.HqlSqlWalker;
+import org.hibernate.hql.internal.ast.tree.AssignmentSpecification;
+import org.hibernate.hql.spi.id.MultiTableBulkIdStrategy;
+import org.hibernate.hql.spi.id.inline.AbstractInlineIdsBulkIdHandler;
+import org.hibernate.hql.spi.id.inline.IdsClauseBuilder;
+import org.hibernate.param.ParameterSpecification;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.sql.Delete;
+import org.hibernate.sql.Update;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - strategy for HQL bulk updates and deletes
+ * that span several tables (e.g., JOINED inheritance)
+ * 
+ * The strategy inherited from SQLServerDialect copies the ids into a "#temp"
+ * table, which UCanAccess does not support. Instead, this strategy selects
+ * the matching ids first and then updates or deletes the rows of each table
+ * with a single statement of the form
+ * {@code ... where id in (1, 2, ...) or id in (1001, 1002, ...)}, so nothing
+ * is ever created in the Access database. Composite ids fall back to
+ * {@code (a = 1 and b = 2) or ...}.
+ * 
+ * The ids are inlined in chunks of {@link Dialect#getInExpressionCountLimit()}
+ * (or {@link #DEFAULT_CHUNK_SIZE} if the dialect has no limit).
+ * 
+ */
+public class UCanAccessDialectBulkIdStrategy implements MultiTableBulkIdStrategy {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    public static final UCanAccessDialectBulkIdStrategy INSTANCE = new UCanAccessDialectBulkIdStrategy();
+
+    @Override
+    public void prepare(JdbcServices jdbcServices, JdbcConnectionAccess connectionAccess,
+            MetadataImplementor metadata, SessionFactoryOptions sessionFactoryOptions) {
+        // nothing to do
+    }
+
+    @Override
+    public void release(JdbcServices jdbcServices, JdbcConnectionAccess connectionAccess) {
+        // nothing to do
+    }
+
+    @Override
+    public UpdateHandler buildUpdateHandler(SessionFactoryImplementor factory, HqlSqlWalker walker) {
+        return new UCanAccessUpdateHandler(factory, walker);
+    }
+
+    @Override
+    public DeleteHandler buildDeleteHandler(SessionFactoryImplementor factory, HqlSqlWalker walker) {
+        return new UCanAccessDeleteHandler(factory, walker);
+    }
+
+    private static int chunkSize(Dialect dialect) {
+        int limit = dialect.getInExpressionCountLimit();
+        return limit > 0 ? limit : DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Renders the selected ids as a WHERE clause. Unlike the builders in
+     * Hibernate, it renders that clause for the key columns of each table
+     * (and many-to-many join table) that is updated, which need not have the
+     * same names as the id columns of the root table.
+     */
+    static class IdsInClauseBuilder extends IdsClauseBuilder {
+
+        private final int chunkSize;
+
+        @SuppressWarnings("deprecation")
+        IdsInClauseBuilder(Dialect dialect, Type identifierType, SessionFactoryImplementor factory,
+                String[] columns, List<Object[]> ids) {
+            super(dialect, identifierType, factory.getTypeResolver(), columns, ids);
+            this.chunkSize = chunkSize(dialect);
+        }
+
+        @Override
+        public String toStatement() {
+            return toStatement(getColumns());
+        }
+
+        String toStatement(String[] columns) {
+            List<Object[]> ids = getIds();
+            StringBuilder sb = new StringBuilder(ids.size() * 8 * columns.length);
+            if (columns.length == 1) {
+                for (int i = 0; i < ids.size(); i++) {
+                    if (i % chunkSize == 0) {
+                        if (i > 0) {
+                            sb.append(") or ");
+                        }
+                        sb.append(columns[0]).append(" in (");
+                    } else {
+                        sb.append(", ");
+                    }
+                    sb.append(quoteIdentifier(ids.get(i)[0]));
+                }
+                return sb.append(')').toString();
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (i > 0) {
+                    sb.append(" or ");
+                }
+                sb.append('(');
+                for (int j = 0; j < columns.length; j++) {
+                    if (j > 0) {
+                        sb.append(" and ");
+                    }
+                    sb.append(columns[j]).append(" = ").append(quoteIdentifier(ids.get(i)[j]));
+                }
+                sb.append(')');
+            }
+            return sb.toString();
+        }
+
+    }
+
+    /**
+     * Renders the WHERE clause of the statements for one table, or a
+     * placeholder (e.g., for {@code getSqlStatements()}) if {@code ids} is
+     * null
+     */
+    private static String where(IdsInClauseBuilder ids, String[] columns) {
+        return ids == null ? "(" + String.join(", ", columns) + ") in (...)" : ids.toStatement(columns);
+    }
+
+    /*
+     * Hibernate keeps one handler per query plan and shares it between
+     * sessions and threads, so the handlers below build their statements in
+     * execute() from the ids selected by that call (unlike Hibernate's inline
+     * handlers, which keep them in fields).
+     */
+
+    static class UCanAccessDeleteHandler extends AbstractInlineIdsBulkIdHandler implements DeleteHandler {
+
+        UCanAccessDeleteHandler(SessionFactoryImplementor factory, HqlSqlWalker walker) {
+            super(factory, walker);
+        }
+
+        @Override
+        protected IdsInClauseBuilder newIdsClauseBuilder(List<Object[]> selectedIds) {
+            return new IdsInClauseBuilder(dialect(), getTargetedQueryable().getIdentifierType(), factory(),
+                    getTargetedQueryable().getIdentifierColumnNames(), selectedIds);
+        }
+
+        @Override
+        public String[] getSqlStatements() {
+            return deletes(null).toArray(new String[0]);
+        }
+
+        @Override
+        public int execute(SharedSessionContractImplementor session, QueryParameters queryParameters) {
+            IdsInClauseBuilder ids = (IdsInClauseBuilder) prepareInlineStatement(session, queryParameters);
+            if (ids.getIds().isEmpty()) {
+                return 0;
+            }
+            for (String delete : deletes(ids)) {
+                try (PreparedStatement ps = session.getJdbcCoordinator().getStatementPreparer()
+                        .prepareStatement(delete, false)) {
+                    session.getJdbcCoordinator().getResultSetReturn().executeUpdate(ps);
+                } catch (SQLException e) {
+                    throw convert(e, "error performing bulk delete", delete);
+                }
+            }
+            return ids.getIds().size();
+        }
+
+        /**
+         * The DELETE statements for the many-to-many join tables and then for
+         * the tables of the entity (in constraint order)
+         */
+        private List<String> deletes(IdsInClauseBuilder ids) {
+            List<String> deletes = new ArrayList<>();
+            for (Type type : getTargetedQueryable().getPropertyTypes()) {
+                if (type.isCollectionType()) {
+                    AbstractCollectionPersister collectionPersister = (AbstractCollectionPersister) factory()
+                            .getMetamodel().collectionPersister(((CollectionType) type).getRole());
+                    if (collectionPersister.isManyToMany()) {
+                        deletes.add(delete(collectionPersister.getTableName(),
+                                collectionPersister.getKeyColumnNames(), ids, "bulk delete - m2m join table cleanup"));
+                    }
+                }
+            }
+            String[] tableNames = getTargetedQueryable().getConstraintOrderedTableNameClosure();
+            String[][] columnNames = getTargetedQueryable().getContraintOrderedTableKeyColumnClosure();
+            for (int i = 0; i < tableNames.length; i++) {
+                deletes.add(delete(tableNames[i], columnNames[i], ids, "bulk delete"));
+            }
+            return deletes;
+        }
+
+        private String delete(String tableName, String[] columnNames, IdsInClauseBuilder ids, String comment) {
+            Delete delete = new Delete().setTableName(tableName).setWhere(where(ids, columnNames));
+            if (factory().getSessionFactoryOptions().isCommentsEnabled()) {
+                delete.setComment(comment);
+            }
+            return delete.toStatementString();
+        }
+
+    }
+
+    static class UCanAccessUpdateHandler extends AbstractInlineIdsBulkIdHandler implements UpdateHandler {
+
+        UCanAccessUpdateHandler(SessionFactoryImplementor factory, HqlSqlWalker walker) {
+            super(factory, walker);
+        }
+
+        @Override
+        protected IdsInClauseBuilder newIdsClauseBuilder(List<Object[]> selectedIds) {
+            return new IdsInClauseBuilder(dialect(), getTargetedQueryable().getIdentifierType(), factory(),
+                    getTargetedQueryable().getIdentifierColumnNames(), selectedIds);
+        }
+
+        @Override
+        public String[] getSqlStatements() {
+            List<String> updates = new ArrayList<>();
+            String[] tableNames = getTargetedQueryable().getConstraintOrderedTableNameClosure();
+            for (int i = 0; i < tableNames.length; i++) {
+                Update update = update(i, null, null);
+                if (update != null) {
+                    updates.add(update.toStatementString());
+                }
+            }
+            return updates.toArray(new String[0]);
+        }
+
+        @Override
+        public int execute(SharedSessionContractImplementor session, QueryParameters queryParameters) {
+            IdsInClauseBuilder ids = (IdsInClauseBuilder) prepareInlineStatement(session, queryParameters);
+            if (ids.getIds().isEmpty()) {
+                return 0;
+            }
+            String[] tableNames = getTargetedQueryable().getConstraintOrderedTableNameClosure();
+            for (int i = 0; i < tableNames.length; i++) {
+                List<ParameterSpecification> parameters = new ArrayList<>();
+                Update update = update(i, ids, parameters);
+                if (update == null) {
+                    continue;
+                }
+                String sql = update.toStatementString();
+                try (PreparedStatement ps = session.getJdbcCoordinator().getStatementPreparer()
+                        .prepareStatement(sql, false)) {
+                    int position = 1; // (JDBC parameters are 1-based)
+                    for (ParameterSpecification parameter : parameters) {
+                        position += parameter.bind(ps, queryParameters, session, position);
+                    }
+                    session.getJdbcCoordinator().getResultSetReturn().executeUpdate(ps);
+                } catch (SQLException e) {
+                    throw convert(e, "error performing bulk update", sql);
+                }
+            }
+            return ids.getIds().size();
+        }
+
+        /**
+         * Returns the UPDATE statement for a table (adding the parameters of
+         * its assignments to {@code parameters}), or null if the HQL statement
+         * does not assign any of its columns
+         */
+        private Update update(int tableIndex, IdsInClauseBuilder ids, List<ParameterSpecification> parameters) {
+            String tableName = getTargetedQueryable().getConstraintOrderedTableNameClosure()[tableIndex];
+            String[] columnNames = getTargetedQueryable().getContraintOrderedTableKeyColumnClosure()[tableIndex];
+            Update update = new Update(dialect()).setTableName(tableName).setWhere(where(ids, columnNames));
+            if (factory().getSessionFactoryOptions().isCommentsEnabled()) {
+                update.setComment("bulk update");
+            }
+            boolean affected = false;
+            for (Object specification : walker().getAssignmentSpecifications()) {
+                AssignmentSpecification assignment = (AssignmentSpecification) specification;
+                if (assignment.affectsTable(tableName)) {
+                    affected = true;
+                    update.appendAssignmentFragment(assignment.getSqlAssignmentFragment());
+                    if (parameters != null && assignment.getParameters() != null) {
+                        Collections.addAll(parameters, assignment.getParameters());
+                    }
+                }
+            }
+            return affected ? update : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,390 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.engine.jdbc.ClobProxy;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.type.descriptor.ValueBinder;
+import org.hibernate.type.descriptor.ValueExtractor;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BasicExtractor;
+import org.hibernate.type.descriptor.sql.ClobTypeDescriptor;
+import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - MEMO (CLOB) columns
+ * 
+ * For {@code java.sql.Clob} attributes the value is read as a character
+ * stream; values longer than the spill threshold (by default 1M characters)
+ * are copied to a temporary file instead of the heap, which is deleted when
+ * the {@link Clob} is freed or the session is closed. {@code String} attributes
+ * are read with {@link ResultSet#getString}, which avoids the extra copy that
+ * UCanAccess makes for {@link ResultSet#getClob}.
+ * 
+ * Values are bound in the same way as by {@link ClobTypeDescriptor#STREAM_BINDING}.
+ * 
+ */
+public class UCanAccessDialectClobTypeDescriptor implements SqlTypeDescriptor {
+
+    public static final int DEFAULT_SPILL_THRESHOLD = 1 << 20;
+
+    public static final UCanAccessDialectClobTypeDescriptor INSTANCE =
+            new UCanAccessDialectClobTypeDescriptor(DEFAULT_SPILL_THRESHOLD);
+
+    private final int spillThreshold;
+
+    public UCanAccessDialectClobTypeDescriptor(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public int getSqlType() {
+        return Types.CLOB;
+    }
+
+    @Override
+    public boolean canBeRemapped() {
+        return true;
+    }
+
+    @Override
+    public <X> ValueBinder<X> getBinder(JavaTypeDescriptor<X> javaTypeDescriptor) {
+        return ClobTypeDescriptor.STREAM_BINDING.getBinder(javaTypeDescriptor);
+    }
+
+    @Override
+    public <X> ValueExtractor<X> getExtractor(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+        final Class<X> javaType = javaTypeDescriptor.getJavaType();
+        return new BasicExtractor<X>(javaTypeDescriptor, this) {
+            @Override
+            protected X doExtract(ResultSet rs, String name, WrapperOptions options) throws SQLException {
+                if (javaType == String.class) {
+                    return javaTypeDescriptor.wrap(rs.getString(name), options);
+                }
+                if (Clob.class.isAssignableFrom(javaType) && !NClob.class.isAssignableFrom(javaType)) {
+                    return javaTypeDescriptor.wrap(readClob(rs.getCharacterStream(name), options), options);
+                }
+                return javaTypeDescriptor.wrap(rs.getClob(name), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, int index, WrapperOptions options)
+                    throws SQLException {
+                return javaTypeDescriptor.wrap(statement.getClob(index), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, String name, WrapperOptions options)
+                    throws SQLException {
+                return javaTypeDescriptor.wrap(statement.getClob(name), options);
+            }
+        };
+    }
+
+    private Clob readClob(Reader reader, WrapperOptions options) throws SQLException {
+        if (reader == null) {
+            return null;
+        }
+        try {
+            try {
+                char[] buffer = new char[8192];
+                StringBuilder sb = new StringBuilder();
+                int n;
+                while ((n = reader.read(buffer)) >= 0) {
+                    sb.append(buffer, 0, n);
+                    if (sb.length() > spillThreshold) {
+                        return freeOnClose(spill(sb, reader, buffer), options);
+                    }
+                }
+                return ClobProxy.generateProxy(sb.toString());
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to read MEMO value", e);
+        }
+    }
+
+    /**
+     * Frees a spilled value (i.e., deletes its file) when the session that
+     * read it is closed, if the application has not freed it before
+     */
+    private static Clob freeOnClose(final FileClob clob, WrapperOptions options) {
+        if (options instanceof SharedSessionContractImplementor) {
+            ((SharedSessionContractImplementor) options).getEventListenerManager()
+                    .addListener(new BaseSessionEventListener() {
+                        @Override
+                        public void end() {
+                            clob.free();
+                        }
+                    });
+        }
+        return clob;
+    }
+
+    private static FileClob spill(CharSequence head, Reader rest, char[] buffer) throws IOException {
+        File file = File.createTempFile("ucanaccess-memo", ".tmp");
+        long length = head.length();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_16BE)) {
+            writer.append(head);
+            int n;
+            while ((n = rest.read(buffer)) >= 0) {
+                writer.write(buffer, 0, n);
+                length += n;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        return new FileClob(file, length);
+    }
+
+    /**
+     * A read-only {@link Clob} whose characters are kept in a temporary file
+     * (two bytes per character, so that any part of it can be read directly)
+     */
+    private static class FileClob implements Clob {
+
+        private final long length;
+        private File file;
+
+        FileClob(File file, long length) {
+            this.file = file;
+            this.length = length;
+        }
+
+        private synchronized File file() throws SQLException {
+            if (file == null) {
+                throw new SQLException("Clob has been freed");
+            }
+            return file;
+        }
+
+        @Override
+        public long length() throws SQLException {
+            file();
+            return length;
+        }
+
+        @Override
+        public String getSubString(long pos, int len) throws SQLException {
+            if (pos < 1 || pos > length + 1 || len < 0) {
+                throw new SQLException("Invalid position " + pos + " or length " + len);
+            }
+            len = (int) Math.min(len, length - pos + 1);
+            try (RandomAccessFile raf = new RandomAccessFile(file(), "r")) {
+                byte[] bytes = new byte[len * 2];
+                raf.seek((pos - 1) * 2);
+                raf.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_16BE);
+            } catch (IOException e) {
+                throw new SQLException("Unable to read " + file, e);
+            }
+        }
+
+        @Override
+        public Reader getCharacterStream() throws SQLException {
+            try {
+                return Files.newBufferedReader(file().toPath(), StandardCharsets.UTF_16BE);
+            } catch (IOException e) {
+                throw new SQLException("Unable to read " + file, e);
+            }
+        }
+
+        @Override
+        public Reader getCharacterStream(long pos, long len) throws SQLException {
+            if (pos < 1 || pos > length + 1 || len < 0 || pos - 1 + len > length) {
+                throw new SQLException("Invalid position " + pos + " or length " + len);
+            }
+            try {
+                BufferedReader reader = Files.newBufferedReader(file().toPath(), StandardCharsets.UTF_16BE);
+                for (long skip = pos - 1; skip > 0;) {
+                    long n = reader.skip(skip);
+                    if (n <= 0) {
+                        throw new SQLException("Unexpected end of " + file);
+                    }
+                    skip -= n;
+                }
+                return new LimitedReader(reader, len);
+            } catch (IOException e) {
+                throw new SQLException("Unable to read " + file, e);
+            }
+        }
+
+        @Override
+        public InputStream getAsciiStream() throws SQLException {
+            final Reader reader = getCharacterStream();
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    int c = reader.read();
+                    return c < 0 ? -1 : c < 128 ? c : '?';
+                }
+
+                @Override
+                public void close() throws IOException {
+                    reader.close();
+                }
+            };
+        }
+
+        @Override
+        public long position(String searchstr, long start) throws SQLException {
+            if (searchstr == null || start < 1) {
+                throw new SQLException("Invalid search string or position " + start);
+            }
+            if (start - 1 + searchstr.length() > length) {
+                return -1;
+            }
+            if (searchstr.isEmpty()) {
+                return start;
+            }
+            // Knuth-Morris-Pratt, so that the file is read only once
+            char[] pattern = searchstr.toCharArray();
+            int[] fallback = new int[pattern.length];
+            for (int i = 1, k = 0; i < pattern.length; i++) {
+                while (k > 0 && pattern[i] != pattern[k]) {
+                    k = fallback[k - 1];
+                }
+                if (pattern[i] == pattern[k]) {
+                    k++;
+                }
+                fallback[i] = k;
+            }
+            try (Reader reader = getCharacterStream(start, length - start + 1)) {
+                char[] buffer = new char[8192];
+                long pos = start;
+                int matched = 0;
+                int n;
+                while ((n = reader.read(buffer)) >= 0) {
+                    for (int i = 0; i < n; i++, pos++) {
+                        while (matched > 0 && buffer[i] != pattern[matched]) {
+                            matched = fallback[matched - 1];
+                        }
+                        if (buffer[i] == pattern[matched]) {
+                            matched++;
+                        }
+                        if (matched == pattern.length) {
+                            return pos - pattern.length + 1;
+                        }
+                    }
+                }
+                return -1;
+            } catch (IOException e) {
+                throw new SQLException("Unable to read " + file, e);
+            }
+        }
+
+        @Override
+        public long position(Clob searchstr, long start) throws SQLException {
+            if (searchstr == null) {
+                throw new SQLException("Invalid search string");
+            }
+            long searchLength = searchstr.length();
+            if (start - 1 + searchLength > length) {
+                return -1;
+            }
+            return position(searchstr.getSubString(1, (int) searchLength), start);
+        }
+
+        @Override
+        public int setString(long pos, String str) throws SQLException {
+            throw new SQLException("Clob is read-only");
+        }
+
+        @Override
+        public int setString(long pos, String str, int offset, int len) throws SQLException {
+            throw new SQLException("Clob is read-only");
+        }
+
+        @Override
+        public OutputStream setAsciiStream(long pos) throws SQLException {
+            throw new SQLException("Clob is read-only");
+        }
+
+        @Override
+        public Writer setCharacterStream(long pos) throws SQLException {
+            throw new SQLException("Clob is read-only");
+        }
+
+        @Override
+        public void truncate(long len) throws SQLException {
+            throw new SQLException("Clob is read-only");
+        }
+
+        @Override
+        public synchronized void free() {
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
+        }
+
+    }
+
+    /**
+     * Reads at most a given number of characters
+     */
+    private static class LimitedReader extends Reader {
+
+        private final Reader reader;
+        private long remaining;
+
+        LimitedReader(Reader reader, long remaining) {
+            this.reader = reader;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = reader.read(cbuf, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+    }
+
+}
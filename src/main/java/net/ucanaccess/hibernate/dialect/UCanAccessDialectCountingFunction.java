@@ -0,0 +1,65 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.util.List;
+
+import org.hibernate.QueryException;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.Type;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - wraps the SQL functions registered by
+ * {@link UCanAccessDialect} so that {@link UCanAccessMetrics} can count how
+ * often each one is translated
+ * 
+ */
+class UCanAccessDialectCountingFunction implements SQLFunction {
+
+    private final String name;
+    private final SQLFunction delegate;
+
+    UCanAccessDialectCountingFunction(String name, SQLFunction delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return delegate.hasArguments();
+    }
+
+    @Override
+    public boolean hasParenthesesIfNoArguments() {
+        return delegate.hasParenthesesIfNoArguments();
+    }
+
+    @Override
+    public Type getReturnType(Type firstArgumentType, Mapping mapping) throws QueryException {
+        return delegate.getReturnType(firstArgumentType, mapping);
+    }
+
+    @Override
+    public String render(Type firstArgumentType, @SuppressWarnings("rawtypes") List arguments,
+            SessionFactoryImplementor factory) throws QueryException {
+        UCanAccessMetrics.getInstance().functionTranslated(name);
+        return delegate.render(firstArgumentType, arguments, factory);
+    }
+
+}
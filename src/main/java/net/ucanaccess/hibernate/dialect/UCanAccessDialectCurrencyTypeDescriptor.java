@@ -0,0 +1,158 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.hibernate.type.descriptor.ValueBinder;
+import org.hibernate.type.descriptor.ValueExtractor;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BasicExtractor;
+import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - CURRENCY columns
+ * 
+ * Values are exchanged with the Java side as {@code long}s holding the
+ * amount in ten-thousandths (e.g., 12.34 is 123400), which is how Access
+ * stores them.
+ * 
+ */
+public class UCanAccessDialectCurrencyTypeDescriptor implements SqlTypeDescriptor {
+
+    /**
+     * The type code under which {@link UCanAccessDialect} registers the
+     * CURRENCY column type (there is no JDBC type code for it)
+     */
+    public static final int CURRENCY = 2_000_000_004;
+
+    /** the number of decimal places of a CURRENCY value */
+    public static final int SCALE = 4;
+
+    /** 10 to the power of {@link #SCALE} */
+    public static final long FACTOR = 10_000L;
+
+    /**
+     * Below this many units, a scaled value survives the round trip through
+     * a double exactly
+     */
+    private static final double EXACT_DOUBLE_LIMIT = 1e11;
+
+    public static final UCanAccessDialectCurrencyTypeDescriptor INSTANCE = new UCanAccessDialectCurrencyTypeDescriptor();
+
+    @Override
+    public int getSqlType() {
+        return CURRENCY;
+    }
+
+    @Override
+    public boolean canBeRemapped() {
+        return false;
+    }
+
+    @Override
+    public <X> ValueBinder<X> getBinder(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+        return new ValueBinder<X>() {
+            @Override
+            public void bind(PreparedStatement st, X value, int index, WrapperOptions options) throws SQLException {
+                if (value == null) {
+                    st.setNull(index, Types.DECIMAL);
+                } else {
+                    st.setBigDecimal(index, toBigDecimal(javaTypeDescriptor.unwrap(value, Long.class, options)));
+                }
+            }
+
+            @Override
+            public void bind(CallableStatement st, X value, String name, WrapperOptions options) throws SQLException {
+                if (value == null) {
+                    st.setNull(name, Types.DECIMAL);
+                } else {
+                    st.setBigDecimal(name, toBigDecimal(javaTypeDescriptor.unwrap(value, Long.class, options)));
+                }
+            }
+        };
+    }
+
+    @Override
+    public <X> ValueExtractor<X> getExtractor(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+        return new BasicExtractor<X>(javaTypeDescriptor, this) {
+            @Override
+            protected X doExtract(ResultSet rs, String name, WrapperOptions options) throws SQLException {
+                return wrap(rs.getBigDecimal(name), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, int index, WrapperOptions options)
+                    throws SQLException {
+                return wrap(statement.getBigDecimal(index), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, String name, WrapperOptions options)
+                    throws SQLException {
+                return wrap(statement.getBigDecimal(name), options);
+            }
+
+            @SuppressWarnings("unchecked")
+            private X wrap(BigDecimal value, WrapperOptions options) {
+                if (value == null) {
+                    return null;
+                }
+                if (javaTypeDescriptor == UCanAccessMoneyType.MoneyTypeDescriptor.INSTANCE) {
+                    // (saves boxing the long)
+                    return (X) UCanAccessMoney.ofScaled(toScaled(value));
+                }
+                return javaTypeDescriptor.wrap(toScaled(value), options);
+            }
+        };
+    }
+
+    /**
+     * Returns the amount in ten-thousandths. (The driver hands out the
+     * BigDecimal that the mirror database holds, so reading it does not
+     * allocate. Whether this conversion does depends on the JDK: on newer
+     * ones, e.g., 17, BigDecimal.doubleValue() divides the unscaled value
+     * directly and nothing is allocated unless the amount is 10^11 or more; on
+     * Java 8, it parses the result of toString(), which allocates a string
+     * per value.)
+     */
+    public static long toScaled(BigDecimal value) {
+        if (value.scale() == SCALE) {
+            double d = value.doubleValue();
+            if (Math.abs(d) < EXACT_DOUBLE_LIMIT) {
+                return Math.round(d * FACTOR);
+            }
+        }
+        return value.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Returns the amount given in ten-thousandths, in the form that the
+     * mirror database stores
+     */
+    public static BigDecimal toBigDecimal(long scaled) {
+        return BigDecimal.valueOf(scaled, SCALE);
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.hibernate.QueryException;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.Type;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - renders HQL functions that take a date
+ * part as their first argument as the Access functions that take an interval
+ * string, e.g., {@code dateadd(day, 7, e.date)} as
+ * {@code DateAdd('d', 7, e.date)} and {@code extract(year from e.date)} as
+ * {@code DatePart('yyyy', e.date)}
+ * 
+ * The date part can be given as a keyword (year, quarter, month, week, day,
+ * dayofyear, dayofweek, hour, minute, second) or as a string literal holding
+ * either a keyword or an Access interval ('yyyy', 'q', 'm', 'ww', 'd', 'y',
+ * 'w', 'h', 'n', 's').
+ * 
+ */
+class UCanAccessDialectIntervalFunction implements SQLFunction {
+
+    private static final Map<String, String> INTERVALS = new HashMap<>();
+
+    static {
+        INTERVALS.put("year", "yyyy");
+        INTERVALS.put("quarter", "q");
+        INTERVALS.put("month", "m");
+        INTERVALS.put("week", "ww");
+        INTERVALS.put("day", "d");
+        INTERVALS.put("dayofyear", "y");
+        INTERVALS.put("dayofweek", "w");
+        INTERVALS.put("weekday", "w");
+        INTERVALS.put("hour", "h");
+        INTERVALS.put("minute", "n");
+        INTERVALS.put("second", "s");
+        for (String interval : new String[] { "yyyy", "q", "m", "ww", "d", "y", "w", "h", "n", "s" }) {
+            INTERVALS.put(interval, interval);
+        }
+    }
+
+    private final String accessFunction;
+    private final Type returnType;
+
+    UCanAccessDialectIntervalFunction(String accessFunction, Type returnType) {
+        this.accessFunction = accessFunction;
+        this.returnType = returnType;
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public boolean hasParenthesesIfNoArguments() {
+        return true;
+    }
+
+    @Override
+    public Type getReturnType(Type firstArgumentType, Mapping mapping) throws QueryException {
+        return returnType;
+    }
+
+    @Override
+    public String render(Type firstArgumentType, @SuppressWarnings("rawtypes") List arguments,
+            SessionFactoryImplementor factory) throws QueryException {
+        if (arguments.size() < 2) {
+            throw new QueryException(accessFunction + "() requires a date part and at least one more argument");
+        }
+        StringBuilder sb = new StringBuilder(accessFunction).append("('")
+                .append(interval(arguments.get(0).toString())).append('\'');
+        for (int i = 1; i < arguments.size(); i++) {
+            String argument = arguments.get(i).toString();
+            // extract(year from e.date)
+            if (i == 1 && argument.equalsIgnoreCase("from")) {
+                continue;
+            }
+            sb.append(", ").append(argument);
+        }
+        return sb.append(')').toString();
+    }
+
+    private String interval(String datePart) throws QueryException {
+        String key = datePart.trim();
+        if (key.length() > 1 && key.startsWith("'") && key.endsWith("'")) {
+            key = key.substring(1, key.length() - 1);
+        }
+        String interval = INTERVALS.get(key.toLowerCase(Locale.ROOT));
+        if (interval == null) {
+            throw new QueryException("Unknown date part for " + accessFunction + "(): " + datePart);
+        }
+        return interval;
+    }
+
+}
@@ -17,22 +17,64 @@ package net.ucanaccess.hibernate.dialect;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Locale;
 
 import org.hibernate.dialect.pagination.LimitHandler;
+import org.hibernate.dialect.pagination.LimitHelper;
 import org.hibernate.engine.spi.RowSelection;
 
 /**
  * 
  * Hibernate dialect for UCanAccess - limit handler for query results
  * 
+ * The row limit and offset are bound as JDBC parameters so that every page of
+ * a query shares the same SQL text (and therefore the same prepared statement
+ * and UCanAccess translation). Optionally, a first page can be rendered as
+ * {@code SELECT TOP n ...} instead of {@code ... limit ?}; such a handler
+ * remembers which of the two it rendered, so it serves one query at a time
+ * (like Hibernate's SQL Server limit handlers, {@link UCanAccessDialect}
+ * hands out a new one for each query).
+ * 
  */
 public class UCanAccessDialectLimitHandler implements LimitHandler {
 
+    /**
+     * System property that switches first pages (offset zero) to the
+     * {@code SELECT TOP n} form
+     */
+    public static final String USE_TOP_FOR_FIRST_PAGE =
+            UCanAccessDialectLimitHandler.class.getName() + ".useTopForFirstPage";
+
+    private final boolean useTopForFirstPage;
+
+    /** whether processSql rendered {@code TOP n} rather than {@code limit ?} */
+    private boolean topRendered;
+
+    public UCanAccessDialectLimitHandler() {
+        this(Boolean.getBoolean(USE_TOP_FOR_FIRST_PAGE));
+    }
+
+    public UCanAccessDialectLimitHandler(boolean useTopForFirstPage) {
+        this.useTopForFirstPage = useTopForFirstPage;
+    }
+
     @Override
     public int bindLimitParametersAtEndOfQuery(RowSelection selection, PreparedStatement statement, int index)
             throws SQLException {
-        // (not used)
-        return 0;
+        if (!LimitHelper.hasFirstRow(selection)) {
+            if (!LimitHelper.hasMaxRows(selection) || topRendered) {
+                return 0;
+            }
+            // ... limit ?
+            statement.setInt(index, selection.getMaxRows());
+            return 1;
+        }
+        // ... limit ? offset ?
+        // ("offset only" selections still need a limit, so use the largest one possible)
+        statement.setInt(index,
+                LimitHelper.hasMaxRows(selection) ? selection.getMaxRows() : Integer.MAX_VALUE);
+        statement.setInt(index + 1, LimitHelper.getFirstRow(selection));
+        return 2;
     }
 
     @Override
@@ -44,8 +86,52 @@ public class UCanAccessDialectLimitHandler implements LimitHandler {
 
     @Override
     public String processSql(String sql, RowSelection selection) {
-        System.out.println(sql);
-        return String.format("%s limit %d offset %d", sql, selection.getMaxRows(), selection.getFirstRow());
+        topRendered = false;
+        if (LimitHelper.hasFirstRow(selection)) {
+            UCanAccessMetrics.getInstance().limitRewritten(false);
+            return sql + " limit ? offset ?";
+        }
+        if (!LimitHelper.hasMaxRows(selection)) {
+            return sql;
+        }
+        if (useTopForFirstPage) {
+            String topSql = insertTop(sql, selection.getMaxRows());
+            if (topSql != null) {
+                topRendered = true;
+                UCanAccessMetrics.getInstance().limitRewritten(true);
+                return topSql;
+            }
+        }
+        UCanAccessMetrics.getInstance().limitRewritten(false);
+        return sql + " limit ?";
+    }
+
+    /**
+     * Returns the statement with {@code TOP n} inserted after the leading
+     * {@code SELECT} keyword (i.e., ahead of any {@code DISTINCT}, which is
+     * where UCanAccess expects it), or null if the statement does not start
+     * with {@code SELECT}.
+     */
+    private static String insertTop(String sql, int maxRows) {
+        int start = 0;
+        while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        int end = start + "select".length();
+        if (end >= sql.length() || !Character.isWhitespace(sql.charAt(end))
+                || !sql.substring(start, end).toLowerCase(Locale.ROOT).equals("select")) {
+            return null;
+        }
+        return new StringBuilder(sql.length() + 16)
+                .append(sql, 0, end)
+                .append(" top ")
+                .append(maxRows)
+                .append(sql, end, sql.length())
+                .toString();
+    }
+
+    boolean usesTopForFirstPage() {
+        return useTopForFirstPage;
     }
 
     @Override
@@ -0,0 +1,200 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.jdbc.internal.FormatStyle;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.jdbc.spi.SqlStatementLogger;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ *
+ * Hibernate dialect for UCanAccess - table-based id generator
+ *
+ * A {@link TableGenerator} that reserves a whole block of ids per round trip
+ * (by default 50 ids, handed out by the "pooled-lo" optimizer) so that inserts
+ * can be batched, which is not possible with IDENTITY (COUNTER) columns.
+ *
+ * The block is reserved in its own short transaction. While it does so the
+ * generator holds an exclusive lock on a small file next to the database
+ * (named after the database file, with the extension ".idlock") so that
+ * several JVMs working with the same database file never reserve the same
+ * block. Use the "lock_file" parameter to choose another file, or "none" to
+ * disable the file lock.
+ *
+ * Usage:
+ *
+ * <pre>
+ * &#64;GenericGenerator(name = "events_gen", strategy = "net.ucanaccess.hibernate.dialect.UCanAccessDialectTableGenerator")
+ * &#64;GeneratedValue(generator = "events_gen")
+ * </pre>
+ *
+ */
+public class UCanAccessDialectTableGenerator extends TableGenerator {
+
+    public static final String LOCK_FILE_PARAM = "lock_file";
+
+    public static final int DEFAULT_BLOCK_SIZE = 50;
+
+    /** guards the file lock, which is held on behalf of the whole JVM */
+    private static final ReentrantLock JVM_LOCK = new ReentrantLock();
+
+    private boolean storeLastUsedValue;
+    private File lockFile;
+
+    private String selectQuery;
+    private String insertQuery;
+    private String updateQuery;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        if (params.getProperty(INCREMENT_PARAM) == null) {
+            params.setProperty(INCREMENT_PARAM, Integer.toString(DEFAULT_BLOCK_SIZE));
+        }
+        if (params.getProperty(OPT_PARAM) == null) {
+            params.setProperty(OPT_PARAM, "pooled-lo");
+        }
+        super.configure(type, params, serviceRegistry);
+
+        ConfigurationService configurationService = serviceRegistry.getService(ConfigurationService.class);
+        storeLastUsedValue = configurationService.getSetting(AvailableSettings.TABLE_GENERATOR_STORE_LAST_USED,
+                StandardConverters.BOOLEAN, true);
+        String lockFileName = params.getProperty(LOCK_FILE_PARAM);
+        if (lockFileName == null) {
+            String databasePath = UCanAccessUrl.databasePath(
+                    configurationService.getSetting(AvailableSettings.URL, StandardConverters.STRING));
+            if (databasePath != null) {
+                lockFile = new File(databasePath + ".idlock");
+            }
+        } else if (!lockFileName.equalsIgnoreCase("none")) {
+            lockFile = new File(lockFileName);
+        }
+    }
+
+    @Override
+    public void registerExportables(Database database) {
+        super.registerExportables(database);
+        selectQuery = buildSelectQuery(database.getJdbcEnvironment().getDialect());
+        insertQuery = buildInsertQuery();
+        updateQuery = buildUpdateQuery();
+    }
+
+    @Override
+    public Serializable generate(final SharedSessionContractImplementor session, final Object obj) {
+        return getOptimizer().generate(new AccessCallback() {
+            @Override
+            public IntegralDataTypeHolder getNextValue() {
+                JVM_LOCK.lock();
+                try {
+                    if (lockFile == null) {
+                        return reserveBlock(session);
+                    }
+                    try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE)) {
+                        // released when the channel is closed
+                        channel.lock();
+                        return reserveBlock(session);
+                    }
+                } catch (IOException e) {
+                    throw new HibernateException("Unable to lock id generator file " + lockFile, e);
+                } finally {
+                    JVM_LOCK.unlock();
+                }
+            }
+
+            @Override
+            public String getTenantIdentifier() {
+                return session.getTenantIdentifier();
+            }
+        });
+    }
+
+    private IntegralDataTypeHolder reserveBlock(SharedSessionContractImplementor session) {
+        final SqlStatementLogger statementLogger = session.getFactory().getServiceRegistry()
+                .getService(JdbcServices.class).getSqlStatementLogger();
+        return session.getTransactionCoordinator().createIsolationDelegate().delegateWork(
+                new AbstractReturningWork<IntegralDataTypeHolder>() {
+                    @Override
+                    public IntegralDataTypeHolder execute(Connection connection) throws SQLException {
+                        IntegralDataTypeHolder value = IdentifierGeneratorHelper
+                                .getIntegralDataTypeHolder(getIdentifierType().getReturnedClass());
+                        int rows;
+                        do {
+                            statementLogger.logStatement(selectQuery, FormatStyle.BASIC.getFormatter());
+                            try (PreparedStatement selectPS = connection.prepareStatement(selectQuery)) {
+                                selectPS.setString(1, getSegmentValue());
+                                try (ResultSet selectRS = selectPS.executeQuery()) {
+                                    if (selectRS.next()) {
+                                        value.initialize(selectRS, storeLastUsedValue ? 0 : 1);
+                                    } else {
+                                        value.initialize(storeLastUsedValue ? getInitialValue() - 1 : getInitialValue());
+                                        statementLogger.logStatement(insertQuery, FormatStyle.BASIC.getFormatter());
+                                        try (PreparedStatement insertPS = connection.prepareStatement(insertQuery)) {
+                                            insertPS.setString(1, getSegmentValue());
+                                            value.bind(insertPS, 2);
+                                            insertPS.executeUpdate();
+                                        }
+                                    }
+                                }
+                            }
+
+                            // only succeeds if nobody else has moved the value since we read it
+                            statementLogger.logStatement(updateQuery, FormatStyle.BASIC.getFormatter());
+                            try (PreparedStatement updatePS = connection.prepareStatement(updateQuery)) {
+                                IntegralDataTypeHolder updateValue = value.copy();
+                                if (getOptimizer().applyIncrementSizeToSourceValues()) {
+                                    updateValue.add(getIncrementSize());
+                                } else {
+                                    updateValue.increment();
+                                }
+                                updateValue.bind(updatePS, 1);
+                                value.bind(updatePS, 2);
+                                updatePS.setString(3, getSegmentValue());
+                                rows = updatePS.executeUpdate();
+                            }
+                        } while (rows == 0);
+
+                        return storeLastUsedValue ? value.increment() : value;
+                    }
+                }, true);
+    }
+
+}
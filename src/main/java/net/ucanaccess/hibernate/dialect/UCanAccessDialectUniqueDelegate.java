@@ -15,8 +15,15 @@
  */
 package net.ucanaccess.hibernate.dialect;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+
 import org.hibernate.boot.Metadata;
+import org.hibernate.dialect.Dialect;
 import org.hibernate.dialect.unique.UniqueDelegate;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
 import org.hibernate.mapping.Column;
 import org.hibernate.mapping.Table;
 import org.hibernate.mapping.UniqueKey;
@@ -25,26 +32,84 @@ import org.hibernate.mapping.UniqueKey;
  * 
  * Hibernate dialect for UCanAccess - support for unique columns
  * 
+ * Every unique key (a column with {@code unique = true} or a named or
+ * composite {@code @UniqueConstraint}) becomes a unique index, e.g.,
+ * {@code create unique index [UK_name] on [Person] ([lastName], [firstName])}.
+ * Access stores it as an index of the table, so natural-key lookups can use
+ * it.
+ * 
+ * The indexes are only created along with their table (by "hbm2ddl.auto"
+ * create, or by update for a table that does not exist yet). Hibernate cannot
+ * tell whether an index already exists in the Access file, because UCanAccess
+ * renames the indexes when it loads them into its mirror, and creating an
+ * index that already exists breaks the UCanAccess connection. UCanAccess does
+ * not support DROP INDEX either, so unique keys are never dropped (they go
+ * away with their table).
+ * 
+ * Each {@link UCanAccessDialect} has its own delegate, and
+ * {@link UCanAccessSchemaManagementTool} starts each run of the schema tool
+ * with an empty set of created tables.
+ * 
  */
 public class UCanAccessDialectUniqueDelegate implements UniqueDelegate {
 
+    /**
+     * the tables whose CREATE TABLE statement has been generated in this run
+     * (by identity: tables of the same name are equal)
+     */
+    private final Set<Table> createdTables = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<Table, Boolean>()));
+
+    /**
+     * Forgets the tables created by earlier runs of the schema tool
+     */
+    void startRun() {
+        createdTables.clear();
+    }
+
     @Override
     public String getColumnDefinitionUniquenessFragment(Column column) {
-        return " UNIQUE";
+        // (Hibernate also adds a unique key for the column, which is created as an index)
+        return "";
     }
 
     @Override
     public String getTableCreationUniqueConstraintsFragment(Table table) {
+        createdTables.add(table);
         return "";
     }
 
     @Override
     public String getAlterTableToAddUniqueKeyCommand(UniqueKey uniqueKey, Metadata metadata) {
-        return null;
+        if (!createdTables.contains(uniqueKey.getTable())) {
+            // (the table already exists, and so may the index)
+            return null;
+        }
+        JdbcEnvironment jdbcEnvironment = metadata.getDatabase().getJdbcEnvironment();
+        Dialect dialect = jdbcEnvironment.getDialect();
+        StringBuilder sb = new StringBuilder("create unique index ")
+                .append(dialect.quote(uniqueKey.getName()))
+                .append(" on ")
+                .append(jdbcEnvironment.getQualifiedObjectNameFormatter()
+                        .format(uniqueKey.getTable().getQualifiedTableName(), dialect))
+                .append(" (");
+        Iterator<Column> columnIterator = uniqueKey.columnIterator();
+        while (columnIterator.hasNext()) {
+            Column column = columnIterator.next();
+            sb.append(column.getQuotedName(dialect));
+            if (uniqueKey.getColumnOrderMap().containsKey(column)) {
+                sb.append(' ').append(uniqueKey.getColumnOrderMap().get(column));
+            }
+            if (columnIterator.hasNext()) {
+                sb.append(", ");
+            }
+        }
+        return sb.append(')').toString();
     }
 
     @Override
     public String getAlterTableToDropUniqueKeyCommand(UniqueKey uniqueKey, Metadata metadata) {
+        // (not supported by UCanAccess)
         return null;
     }
 
@@ -0,0 +1,271 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.HibernateException;
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
+import org.hibernate.SessionFactory;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.BatchFetchQueue;
+import org.hibernate.engine.spi.CollectionEntry;
+import org.hibernate.engine.spi.LoadQueryInfluencers;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+import org.hibernate.loader.collection.BatchingCollectionInitializerBuilder;
+import org.hibernate.loader.collection.CollectionInitializer;
+import org.hibernate.loader.entity.BatchingEntityLoaderBuilder;
+import org.hibernate.loader.entity.UniqueEntityLoader;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.collection.QueryableCollection;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.OuterJoinLoadable;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - lazy loading monitor
+ * 
+ * Counts, per session, how often each lazy collection role (e.g.,
+ * "com.example.Event.guests") is loaded and how often proxies of each entity
+ * have to be loaded. When the same role is loaded lazily
+ * {@link UCanAccessSettings#FETCH_MONITOR_THRESHOLD} times in one session,
+ * which is the typical N+1 pattern of iterating over a query result and
+ * touching a lazy association of every row, the role is reported to
+ * {@link UCanAccessMetrics} together with the application method that
+ * triggered the load.
+ * 
+ * The batch size of a role can be changed while the application runs (with
+ * {@link #setBatchSize(String, int)}, or automatically for every reported
+ * role with {@link UCanAccessSettings#FETCH_AUTO_BATCH_SIZE}); the lazy loads
+ * of the role then fetch that many collections (or entities) of the session
+ * at once. Batch sizes and subselect fetching can also be set per role when
+ * the SessionFactory starts, see {@link UCanAccessSettings#FETCH_PREFIX}.
+ * 
+ * The monitor is registered by {@link UCanAccessIntegrator} unless
+ * {@link UCanAccessSettings#FETCH_MONITOR} is "false".
+ * 
+ */
+public class UCanAccessFetchMonitor implements InitializeCollectionEventListener, LoadEventListener {
+
+    public static final int DEFAULT_THRESHOLD = 10;
+
+    private static final String PACKAGE_PREFIX = UCanAccessFetchMonitor.class.getPackage().getName() + '.';
+
+    private final int threshold;
+    private final int autoBatchSize;
+
+    private final ConcurrentMap<String, Integer> batchSizes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CollectionInitializer> collectionInitializers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, UniqueEntityLoader> entityLoaders = new ConcurrentHashMap<>();
+
+    /** lazy loads per role of the open sessions (each map is only used by its own session) */
+    private final ConcurrentMap<SharedSessionContractImplementor, Map<String, int[]>> sessionCounts =
+            new ConcurrentHashMap<>();
+
+    public UCanAccessFetchMonitor(int threshold, int autoBatchSize) {
+        this.threshold = threshold;
+        this.autoBatchSize = autoBatchSize;
+    }
+
+    /**
+     * Returns the monitor of the SessionFactory, or null if it has none
+     */
+    public static UCanAccessFetchMonitor of(SessionFactory sessionFactory) {
+        EventListenerRegistry registry = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        for (InitializeCollectionEventListener listener
+                : registry.getEventListenerGroup(EventType.INIT_COLLECTION).listeners()) {
+            if (listener instanceof UCanAccessFetchMonitor) {
+                return (UCanAccessFetchMonitor) listener;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the number of collections of the role (or entities of the entity
+     * name) that are fetched together by every later lazy load, overriding
+     * the batch size of the mapping; "0" restores the mapping's batch size.
+     */
+    public void setBatchSize(String role, int batchSize) {
+        if (batchSize <= 0) {
+            batchSizes.remove(role);
+        } else {
+            batchSizes.put(role, batchSize);
+        }
+    }
+
+    /**
+     * Returns the batch size set for the role (or entity name) while the
+     * application runs, or 0 if the mapping's batch size is used
+     */
+    public int getBatchSize(String role) {
+        Integer batchSize = batchSizes.get(role);
+        return batchSize == null ? 0 : batchSize;
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) throws HibernateException {
+        PersistentCollection collection = event.getCollection();
+        EventSource session = event.getSession();
+        CollectionEntry ce = session.getPersistenceContext().getCollectionEntry(collection);
+        if (collection.wasInitialized() || ce == null || ce.getLoadedPersister() == null) {
+            // (the default listener takes care of it)
+            return;
+        }
+        CollectionPersister persister = ce.getLoadedPersister();
+        lazyLoaded(session, persister.getRole());
+
+        Integer batchSize = batchSizes.get(persister.getRole());
+        if (batchSize == null || batchSize == persister.getBatchSize()
+                || (persister.hasCache() && session.getCacheMode().isGetEnabled())
+                || !session.getLoadQueryInfluencers().getEnabledFilters().isEmpty()) {
+            return;
+        }
+        // collections are only queued for batch loading if the mapping asks for it
+        List<CollectionEntry> queued = new ArrayList<>();
+        PersistenceContext persistenceContext = session.getPersistenceContext();
+        BatchFetchQueue batchFetchQueue = persistenceContext.getBatchFetchQueue();
+        if (batchSize > 1 && persister.getBatchSize() <= 1) {
+            for (Object o : persistenceContext.getCollectionEntries().entrySet()) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                PersistentCollection other = (PersistentCollection) entry.getKey();
+                CollectionEntry otherEntry = (CollectionEntry) entry.getValue();
+                if (otherEntry.getLoadedPersister() == persister && otherEntry.getLoadedKey() != null
+                        && !other.wasInitialized()) {
+                    batchFetchQueue.addBatchLoadableCollection(other, otherEntry);
+                    queued.add(otherEntry);
+                }
+            }
+        }
+        try {
+            collectionInitializer(persister, batchSize, session.getFactory()).initialize(ce.getLoadedKey(), session);
+        } finally {
+            for (CollectionEntry entry : queued) {
+                batchFetchQueue.removeBatchLoadableCollection(entry);
+            }
+        }
+        if (session.getFactory().getStatistics().isStatisticsEnabled()) {
+            session.getFactory().getStatistics().fetchCollection(persister.getRole());
+        }
+    }
+
+    @Override
+    public void onLoad(LoadEvent event, LoadType loadType) throws HibernateException {
+        if (loadType != IMMEDIATE_LOAD) {
+            return;
+        }
+        EventSource session = event.getSession();
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(event.getEntityClassName());
+        Serializable id = event.getEntityId();
+        if (session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister)) != null) {
+            // (already loaded together with another proxy)
+            return;
+        }
+        lazyLoaded(session, persister.getEntityName());
+
+        // only entities whose mapping allows batch loading are queued for it
+        Integer batchSize = batchSizes.get(persister.getEntityName());
+        if (batchSize == null || !persister.isBatchLoadable()
+                || !(persister instanceof OuterJoinLoadable) || persister.canReadFromCache()
+                || (event.getLockMode() != null && event.getLockMode() != LockMode.NONE)) {
+            return;
+        }
+        // the default listener then finds the entity in the session
+        entityLoader((OuterJoinLoadable) persister, batchSize, session.getFactory())
+                .load(id, null, session, LockOptions.NONE);
+    }
+
+    private CollectionInitializer collectionInitializer(CollectionPersister persister, int batchSize,
+            SessionFactoryImplementor factory) {
+        return collectionInitializers.computeIfAbsent(persister.getRole() + '#' + batchSize, k -> {
+            BatchingCollectionInitializerBuilder builder = BatchingCollectionInitializerBuilder.getBuilder(factory);
+            QueryableCollection queryable = (QueryableCollection) persister;
+            return persister.isOneToMany()
+                    ? builder.createBatchingOneToManyInitializer(queryable, batchSize, factory,
+                            LoadQueryInfluencers.NONE)
+                    : builder.createBatchingCollectionInitializer(queryable, batchSize, factory,
+                            LoadQueryInfluencers.NONE);
+        });
+    }
+
+    private UniqueEntityLoader entityLoader(OuterJoinLoadable persister, int batchSize,
+            SessionFactoryImplementor factory) {
+        return entityLoaders.computeIfAbsent(persister.getEntityName() + '#' + batchSize,
+                k -> BatchingEntityLoaderBuilder.getBuilder(factory).buildLoader(persister, batchSize, LockMode.NONE,
+                        factory, LoadQueryInfluencers.NONE));
+    }
+
+    private void lazyLoaded(final SharedSessionContractImplementor session, String role) {
+        UCanAccessMetrics.getInstance().lazyLoaded(role);
+        Map<String, int[]> counts = sessionCounts.get(session);
+        if (counts == null) {
+            counts = new HashMap<>();
+            sessionCounts.put(session, counts);
+            session.getEventListenerManager().addListener(new BaseSessionEventListener() {
+                @Override
+                public void end() {
+                    sessionCounts.remove(session);
+                }
+            });
+        }
+        int[] count = counts.computeIfAbsent(role, k -> new int[1]);
+        if (++count[0] == threshold) {
+            UCanAccessMetrics.getInstance().nPlusOneDetected(role, callSite());
+            if (autoBatchSize > 1) {
+                batchSizes.putIfAbsent(role, autoBatchSize);
+            }
+        }
+    }
+
+    /**
+     * Returns the innermost stack frame that belongs to the application, i.e.,
+     * not to Hibernate, the JDK, a proxy class or this package
+     */
+    static String callSite() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            String className = element.getClassName();
+            if (className.startsWith("org.hibernate.") || className.startsWith("java.")
+                    || className.startsWith("javax.") || className.startsWith("jdk.")
+                    || className.startsWith("sun.") || className.startsWith("com.sun.")
+                    || className.contains("$HibernateProxy$") || className.contains("_$$_")
+                    || (className.startsWith(PACKAGE_PREFIX) && className.indexOf('.', PACKAGE_PREFIX.length()) < 0)) {
+                continue;
+            }
+            return className + '.' + element.getMethodName() + '(' + element.getFileName() + ':'
+                    + element.getLineNumber() + ')';
+        }
+        return "(unknown)";
+    }
+
+}
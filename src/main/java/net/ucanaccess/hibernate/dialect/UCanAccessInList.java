@@ -0,0 +1,73 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.hibernate.query.Query;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - runs a query with a large list parameter
+ * (e.g., "from Event where id in :ids") in chunks
+ * 
+ * The distinct values are split into chunks of at most
+ * {@link UCanAccessDialect#IN_EXPRESSION_COUNT_LIMIT} values and the results
+ * of the chunks are concatenated. Hibernate pads the list of each chunk to a
+ * power of two ("hibernate.query.in_clause_parameter_padding", which
+ * {@link UCanAccessDialect} turns on by default), so any number of values is
+ * looked up with only a handful of distinct SQL statements, each of which is
+ * prepared (and translated by UCanAccess) once. An empty collection returns
+ * an empty list without running the query.
+ * 
+ * Because each chunk is a query of its own, the results are only in order
+ * within a chunk, and the query must not use first/max results or aggregate
+ * functions.
+ * 
+ */
+public final class UCanAccessInList {
+
+    private UCanAccessInList() {
+    }
+
+    public static <T> List<T> list(Query<T> query, String name, Collection<?> values) {
+        return list(query, name, values, UCanAccessDialect.IN_EXPRESSION_COUNT_LIMIT);
+    }
+
+    public static <T> List<T> list(Query<T> query, String name, Collection<?> values, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (values.isEmpty()) {
+            // "in ()" is not valid SQL
+            return new ArrayList<>();
+        }
+        List<Object> distinct = new ArrayList<>(new LinkedHashSet<>(values));
+        if (distinct.size() <= chunkSize) {
+            return query.setParameterList(name, distinct).list();
+        }
+        List<T> results = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            List<Object> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+            results.addAll(query.setParameterList(name, chunk).list());
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.jdbc.connections.spi.JdbcConnectionAccess;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+import net.ucanaccess.jdbc.UcanaccessConnection;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - integrator that is applied to every
+ * SessionFactory using {@link UCanAccessDialect} (registered in
+ * META-INF/services/org.hibernate.integrator.spi.Integrator)
+ * 
+ * Once the schema tool has run, it widens the mirror columns of CURRENCY
+ * columns created in this run. (UCanAccess gives them a precision of 8 in
+ * the mirror database, so amounts of 10000 or more would be rejected until
+ * the database is opened again.) It also lets a
+ * {@link UCanAccessRoutingConnectionProvider} switch the mirror to
+ * multi-version concurrency control. Then it runs {@link UCanAccessWarmUp},
+ * unless {@link UCanAccessSettings#WARMUP} is "false".
+ * 
+ * Before that, it applies the per-role fetch settings
+ * ({@link UCanAccessSettings#FETCH_PREFIX}) to the mappings and registers a
+ * {@link UCanAccessFetchMonitor}, unless
+ * {@link UCanAccessSettings#FETCH_MONITOR} is "false".
+ * 
+ */
+public class UCanAccessIntegrator implements Integrator {
+
+    private static final String NARROW_CURRENCY_COLUMNS_QUERY =
+            "select c.TABLE_NAME, c.COLUMN_NAME from INFORMATION_SCHEMA.COLUMNS c "
+            + "join UCA_METADATA.COLUMNS_VIEW m "
+            + "on m.ESCAPED_TABLE_NAME = c.TABLE_NAME and m.ESCAPED_COLUMN_NAME = c.COLUMN_NAME "
+            + "where c.TABLE_SCHEMA = 'PUBLIC' and m.ORIGINAL_TYPE = 'MONEY' and c.NUMERIC_PRECISION < 19";
+
+    @Override
+    public void integrate(final Metadata metadata, final SessionFactoryImplementor sessionFactory,
+            final SessionFactoryServiceRegistry serviceRegistry) {
+        if (!(sessionFactory.getJdbcServices().getDialect() instanceof UCanAccessDialect)) {
+            return;
+        }
+        final ConfigurationService configurationService = serviceRegistry.getService(ConfigurationService.class);
+        Map<?, ?> settings = configurationService.getSettings();
+        applyFetchSettings(metadata, settings);
+        if (ConfigurationHelper.getBoolean(UCanAccessSettings.FETCH_MONITOR, settings, true)) {
+            UCanAccessFetchMonitor monitor = new UCanAccessFetchMonitor(
+                    ConfigurationHelper.getInt(UCanAccessSettings.FETCH_MONITOR_THRESHOLD, settings,
+                            UCanAccessFetchMonitor.DEFAULT_THRESHOLD),
+                    ConfigurationHelper.getInt(UCanAccessSettings.FETCH_AUTO_BATCH_SIZE, settings, 0));
+            EventListenerRegistry eventListenerRegistry = serviceRegistry.getService(EventListenerRegistry.class);
+            eventListenerRegistry.prependListeners(EventType.INIT_COLLECTION, monitor);
+            eventListenerRegistry.prependListeners(EventType.LOAD, monitor);
+        }
+        sessionFactory.addObserver(new SessionFactoryObserver() {
+            @Override
+            public void sessionFactoryCreated(SessionFactory factory) {
+                widenCurrencyColumns(
+                        serviceRegistry.getService(JdbcServices.class).getBootstrapJdbcConnectionAccess());
+                ConnectionProvider connectionProvider = serviceRegistry.getService(ConnectionProvider.class);
+                if (connectionProvider != null
+                        && connectionProvider.isUnwrappableAs(UCanAccessRoutingConnectionProvider.class)) {
+                    try {
+                        connectionProvider.unwrap(UCanAccessRoutingConnectionProvider.class).mirrorReady();
+                    } catch (SQLException e) {
+                        throw new HibernateException("Unable to switch the mirror to MVCC", e);
+                    }
+                }
+                if (configurationService.getSetting(UCanAccessSettings.WARMUP, StandardConverters.BOOLEAN, true)) {
+                    String tables = configurationService.getSetting(UCanAccessSettings.WARMUP_TABLES,
+                            StandardConverters.STRING, "");
+                    new UCanAccessWarmUp(sessionFactory, metadata, tables.trim().isEmpty()
+                            ? Collections.<String>emptySet()
+                            : new HashSet<>(Arrays.asList(tables.split(",")))).run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    /**
+     * Applies the "hibernate.ucanaccess.fetch.&lt;role or entity name&gt;"
+     * settings. (The integrator runs before the persisters are built from the
+     * mappings.)
+     */
+    private static void applyFetchSettings(Metadata metadata, Map<?, ?> settings) {
+        for (Map.Entry<?, ?> setting : settings.entrySet()) {
+            String key = setting.getKey().toString();
+            if (!key.startsWith(UCanAccessSettings.FETCH_PREFIX)) {
+                continue;
+            }
+            String name = key.substring(UCanAccessSettings.FETCH_PREFIX.length());
+            String value = setting.getValue().toString().trim();
+            Collection collection = metadata.getCollectionBinding(name);
+            PersistentClass entity = metadata.getEntityBinding(name);
+            if (value.equalsIgnoreCase("subselect") && collection != null) {
+                collection.setSubselectLoadable(true);
+            } else if (collection != null || entity != null) {
+                int batchSize;
+                try {
+                    batchSize = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new HibernateException("Invalid value of " + key + ": " + value, e);
+                }
+                if (collection != null) {
+                    collection.setBatchSize(batchSize);
+                } else {
+                    entity.setBatchSize(batchSize);
+                }
+            } else {
+                throw new HibernateException("Unknown collection role or entity name in " + key);
+            }
+        }
+    }
+
+    private static void widenCurrencyColumns(JdbcConnectionAccess connectionAccess) {
+        try {
+            Connection connection = connectionAccess.obtainConnection();
+            try {
+                UcanaccessConnection ucaConnection;
+                if (connection instanceof UcanaccessConnection) {
+                    ucaConnection = (UcanaccessConnection) connection;
+                } else if (connection.isWrapperFor(UcanaccessConnection.class)) {
+                    ucaConnection = connection.unwrap(UcanaccessConnection.class);
+                } else {
+                    return;
+                }
+                // straight to the mirror database; UCanAccess itself cannot alter columns
+                Connection hsqldb = ucaConnection.getHSQLDBConnection();
+                try (Statement st = hsqldb.createStatement()) {
+                    List<String> alters = new ArrayList<>();
+                    try (ResultSet rs = st.executeQuery(NARROW_CURRENCY_COLUMNS_QUERY)) {
+                        while (rs.next()) {
+                            alters.add("alter table " + quote(rs.getString(1)) + " alter column "
+                                    + quote(rs.getString(2)) + " decimal(100, 4)");
+                        }
+                    }
+                    for (String alter : alters) {
+                        st.execute(alter);
+                    }
+                }
+            } finally {
+                connectionAccess.releaseConnection(connection);
+            }
+        } catch (SQLException e) {
+            throw new HibernateException("Unable to widen the mirror columns of CURRENCY columns", e);
+        }
+    }
+
+    private static String quote(String name) {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.Query;
+
+/**
+ *
+ * Keyset ("seek") pagination
+ *
+ * Instead of skipping rows with OFFSET, which makes the database read (and
+ * throw away) every row before the page, each page continues from the sort
+ * key and id of the last row of the previous page. Access has no row value
+ * comparisons like {@code (sort_key, id) > (?, ?)}, so the predicate is
+ * expanded to
+ *
+ * <pre>
+ * e.sortKey &gt;= :k and (e.sortKey &gt; :k or e.id &gt; :id)
+ * </pre>
+ *
+ * (the leading range condition lets the database use an index on the sort
+ * key, e.g., IX_date on EVENTS), so every page costs about the same no matter
+ * how deep it is.
+ *
+ * Rows whose sort key is null come first, ordered by id. The position is
+ * handed to the caller as an opaque continuation token (safe to use in URLs)
+ * for REST APIs.
+ *
+ * <pre>
+ * UCanAccessKeysetPager&lt;Event&gt; pager = new UCanAccessKeysetPager&lt;&gt;(Event.class, "date", 25);
+ * UCanAccessKeysetPager.Page&lt;Event&gt; page = pager.fetch(session, request.getParameter("next"));
+ * // ... render page.getResults(), with a link to page.getNextToken() if page.hasNext()
+ * </pre>
+ *
+ */
+public class UCanAccessKeysetPager<T> {
+
+    private static final String ALIAS = "e";
+    private static final String TOKEN_VERSION = "1";
+
+    private final Class<T> entityClass;
+    private final String sortProperty;
+    private final int pageSize;
+    private final boolean ascending;
+    private final String restriction;
+
+    public UCanAccessKeysetPager(Class<T> entityClass, String sortProperty, int pageSize) {
+        this(entityClass, sortProperty, pageSize, true, null);
+    }
+
+    /**
+     * @param restriction
+     *            optional HQL condition on the entity (alias "e"), e.g.,
+     *            "e.title like :title"; its parameters are passed to
+     *            {@link #fetch(Session, String, Map)}
+     */
+    public UCanAccessKeysetPager(Class<T> entityClass, String sortProperty, int pageSize, boolean ascending,
+            String restriction) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.entityClass = entityClass;
+        this.sortProperty = sortProperty;
+        this.pageSize = pageSize;
+        this.ascending = ascending;
+        this.restriction = restriction;
+    }
+
+    /**
+     * Fetches the page after the one that returned {@code continuationToken}
+     * (or the first page, if the token is null or empty).
+     */
+    public Page<T> fetch(Session session, String continuationToken) {
+        return fetch(session, continuationToken, Collections.<String, Object>emptyMap());
+    }
+
+    public Page<T> fetch(Session session, String continuationToken, Map<String, ?> parameters) {
+        Position position = continuationToken == null || continuationToken.isEmpty() ? Position.FIRST
+                : decode(continuationToken);
+        EntityPersister persister = ((SessionImplementor) session).getFactory().getMetamodel()
+                .entityPersister(entityClass);
+        String idProperty = persister.getIdentifierPropertyName();
+        List<T> results = new ArrayList<>(pageSize);
+
+        if (position.nullKeys) {
+            List<T> rows = query(session, parameters, ALIAS + "." + sortProperty + " is null"
+                    + (position.id == null ? "" : " and " + ALIAS + "." + idProperty + (ascending ? " > " : " < ") + ":id"),
+                    ALIAS + "." + idProperty, position, pageSize + 1);
+            if (rows.size() > pageSize) {
+                rows = rows.subList(0, pageSize);
+                return new Page<>(rows, encode(new Position(true, null, lastId(session, persister, rows))));
+            }
+            results.addAll(rows);
+            position = new Position(false, null, null);
+        }
+
+        int remaining = pageSize - results.size();
+        String sortPath = ALIAS + "." + sortProperty;
+        String condition = sortPath + " is not null";
+        if (position.id != null) {
+            String op = ascending ? ">" : "<";
+            condition += String.format(" and %1$s %2$s= :k and (%1$s %2$s :k or %3$s.%4$s %2$s :id)",
+                    sortPath, op, ALIAS, idProperty);
+        }
+        List<T> rows = query(session, parameters, condition, sortPath + ", " + ALIAS + "." + idProperty,
+                position, remaining + 1);
+        boolean hasNext = rows.size() > remaining;
+        if (hasNext) {
+            rows = rows.subList(0, remaining);
+        }
+        results.addAll(rows);
+        if (!hasNext || results.isEmpty()) {
+            return new Page<>(results, null);
+        }
+        if (rows.isEmpty()) {
+            // the rows whose sort key is null filled the page exactly, so the
+            // next page starts with the first row whose sort key is not null
+            return new Page<>(results, encode(new Position(false, null, null)));
+        }
+        T last = rows.get(rows.size() - 1);
+        return new Page<>(results, encode(new Position(false, persister.getPropertyValue(last, sortProperty),
+                persister.getIdentifier(last, (SessionImplementor) session))));
+    }
+
+    private List<T> query(Session session, Map<String, ?> parameters, String condition, String orderBy,
+            Position position, int maxResults) {
+        StringBuilder hql = new StringBuilder("from ").append(entityClass.getName()).append(' ').append(ALIAS)
+                .append(" where ").append(condition);
+        if (restriction != null) {
+            hql.append(" and (").append(restriction).append(')');
+        }
+        hql.append(" order by ").append(orderBy.replace(",", direction() + ",")).append(direction());
+        Query<T> query = session.createQuery(hql.toString(), entityClass).setMaxResults(maxResults);
+        if (position.id != null) {
+            query.setParameter("id", position.id);
+            if (!position.nullKeys) {
+                query.setParameter("k", position.sortKey);
+            }
+        }
+        for (Map.Entry<String, ?> parameter : parameters.entrySet()) {
+            query.setParameter(parameter.getKey(), parameter.getValue());
+        }
+        return query.list();
+    }
+
+    private String direction() {
+        return ascending ? " asc" : " desc";
+    }
+
+    private static Object lastId(Session session, EntityPersister persister, List<?> rows) {
+        return persister.getIdentifier(rows.get(rows.size() - 1), (SessionImplementor) session);
+    }
+
+    /**
+     * A page of results, and the token to pass to
+     * {@link UCanAccessKeysetPager#fetch(Session, String)} for the next one
+     */
+    public static final class Page<T> {
+        private final List<T> results;
+        private final String nextToken;
+
+        Page(List<T> results, String nextToken) {
+            this.results = results;
+            this.nextToken = nextToken;
+        }
+
+        public List<T> getResults() {
+            return results;
+        }
+
+        /** null if this is the last page */
+        public String getNextToken() {
+            return nextToken;
+        }
+
+        public boolean hasNext() {
+            return nextToken != null;
+        }
+    }
+
+    // -------------------
+    // continuation tokens
+    // -------------------
+
+    private static final class Position {
+        static final Position FIRST = new Position(true, null, null);
+
+        /** still going through the rows whose sort key is null */
+        final boolean nullKeys;
+        final Object sortKey;
+        final Object id;
+
+        Position(boolean nullKeys, Object sortKey, Object id) {
+            this.nullKeys = nullKeys;
+            this.sortKey = sortKey;
+            this.id = id;
+        }
+    }
+
+    /*
+     * The token is a list of base64url fields separated by '.': the format
+     * version, the sort property (so that a token can't be used with another
+     * pager), the phase, and the typed sort key and id values.
+     */
+    private String encode(Position position) {
+        return String.join(".", field(TOKEN_VERSION), field(sortProperty), field(position.nullKeys ? "n" : "v"),
+                field(typedValue(position.sortKey)), field(typedValue(position.id)));
+    }
+
+    private Position decode(String token) {
+        String[] fields = token.split("\\.", -1);
+        try {
+            if (fields.length != 5 || !unfield(fields[0]).equals(TOKEN_VERSION)
+                    || !unfield(fields[1]).equals(sortProperty)) {
+                throw new IllegalArgumentException("Continuation token does not belong to this pager");
+            }
+            return new Position(unfield(fields[2]).equals("n"), parseTypedValue(unfield(fields[3])),
+                    parseTypedValue(unfield(fields[4])));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid continuation token", e);
+        }
+    }
+
+    private static String field(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String unfield(String field) {
+        return new String(Base64.getUrlDecoder().decode(field), StandardCharsets.UTF_8);
+    }
+
+    private static String typedValue(Object value) {
+        if (value == null) {
+            return "n";
+        } else if (value instanceof String) {
+            return "s" + value;
+        } else if (value instanceof Integer) {
+            return "i" + value;
+        } else if (value instanceof Long) {
+            return "l" + value;
+        } else if (value instanceof Short) {
+            return "h" + value;
+        } else if (value instanceof BigDecimal) {
+            return "d" + ((BigDecimal) value).toPlainString();
+        } else if (value instanceof Double) {
+            return "f" + value;
+        } else if (value instanceof Boolean) {
+            return "b" + value;
+        } else if (value instanceof LocalDateTime) {
+            return "t" + value;
+        } else if (value instanceof LocalDate) {
+            return "D" + value;
+        } else if (value instanceof Timestamp) {
+            return "T" + value;
+        } else if (value instanceof Date) {
+            return "U" + ((Date) value).getTime();
+        }
+        throw new IllegalArgumentException("Unsupported keyset value type: " + value.getClass().getName());
+    }
+
+    private static Object parseTypedValue(String typed) {
+        String value = typed.substring(1);
+        switch (typed.charAt(0)) {
+        case 'n':
+            return null;
+        case 's':
+            return value;
+        case 'i':
+            return Integer.valueOf(value);
+        case 'l':
+            return Long.valueOf(value);
+        case 'h':
+            return Short.valueOf(value);
+        case 'd':
+            return new BigDecimal(value);
+        case 'f':
+            return Double.valueOf(value);
+        case 'b':
+            return Boolean.valueOf(value);
+        case 't':
+            return LocalDateTime.parse(value);
+        case 'D':
+            return LocalDate.parse(value);
+        case 'T':
+            return Timestamp.valueOf(value);
+        case 'U':
+            return new Date(Long.parseLong(value));
+        default:
+            throw new IllegalArgumentException("Unknown value type: " + typed.charAt(0));
+        }
+    }
+
+}
@@ -0,0 +1,606 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - run-time metrics
+ * 
+ * Collects, for the whole JVM:
+ * 
+ * <ul>
+ * <li>execution count and latency histogram per SQL "shape" (the SQL text with
+ * literals replaced by "?"), recorded by {@link UCanAccessStatementInspector}
+ * and {@link UCanAccessMetricsListener} if they are configured, and the rows
+ * returned per shape, recorded by {@link UCanAccessRowCounter} for
+ * connections of {@link UCanAccessConnectionProvider}</li>
+ * <li>the number of queries whose row limits were rewritten by
+ * {@link UCanAccessDialectLimitHandler}</li>
+ * <li>the number of times each HQL function was translated to its Access
+ * equivalent</li>
+ * <li>the hits and misses of {@link UCanAccessSqlTranslationCache}</li>
+ * <li>the mirror load time and connection waits of
+ * {@link UCanAccessConnectionProvider}</li>
+ * <li>the tenant databases loaded and unloaded by
+ * {@link UCanAccessMultiTenantConnectionProvider}</li>
+ * <li>the queue depth, waiting times and group sizes of
+ * {@link UCanAccessWriteScheduler}</li>
+ * <li>the duration of the last {@link UCanAccessWarmUp}</li>
+ * <li>the schema reads of {@link UCanAccessSchemaManagementTool} and how many
+ * of them were answered from a cached snapshot</li>
+ * <li>the lazy loads per association role (or entity name) and the suspected
+ * N+1 patterns found by {@link UCanAccessFetchMonitor}</li>
+ * </ul>
+ * 
+ * The same numbers are available through JMX as
+ * "net.ucanaccess.hibernate.dialect:type=UCanAccessMetrics".
+ * 
+ */
+public final class UCanAccessMetrics implements UCanAccessMetricsMXBean {
+
+    public static final String OBJECT_NAME = "net.ucanaccess.hibernate.dialect:type=UCanAccessMetrics";
+
+    /** upper bounds (in microseconds) of the latency histogram buckets; the last bucket has no upper bound */
+    private static final long[] BUCKET_BOUNDS_MICROS = { 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+            100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000 };
+
+    /** statements beyond this many distinct shapes are counted as OTHER_SHAPE */
+    private static final int MAX_SHAPES = 500;
+    static final String OTHER_SHAPE = "(other statements)";
+    static final String BATCH_SHAPE = "(JDBC batches)";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w\\]])-?\\d+(?:\\.\\d+)?(?![\\w\\[])");
+
+    private static final UCanAccessMetrics INSTANCE = new UCanAccessMetrics();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException | SecurityException e) {
+            // the Java API still works
+        }
+    }
+
+    private final ConcurrentMap<String, Shape> shapesBySql = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final LongAdder statementCount = new LongAdder();
+    private final LongAdder limitRewriteCount = new LongAdder();
+    private final LongAdder topRewriteCount = new LongAdder();
+    private final LongAdder sqlCacheHitCount = new LongAdder();
+    private final LongAdder sqlCacheMissCount = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> functionTranslationCounts = new ConcurrentHashMap<>();
+    private final AtomicLong mirrorLoadNanos = new AtomicLong();
+    private final LongAdder connectionAcquisitionCount = new LongAdder();
+    private final LongAdder connectionWaitNanos = new LongAdder();
+    private final LongAdder tenantLoadCount = new LongAdder();
+    private final LongAdder tenantLoadNanos = new LongAdder();
+    private final AtomicLong maxTenantLoadNanos = new AtomicLong();
+    private final LongAdder tenantEvictionCount = new LongAdder();
+    private final AtomicLong writeQueueDepth = new AtomicLong();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder writeWaitNanos = new LongAdder();
+    private final AtomicLong maxWriteWaitNanos = new AtomicLong();
+    private final LongAdder writeGroupCount = new LongAdder();
+    private final LongAdder writeGroupedCount = new LongAdder();
+    private final AtomicLong warmUpNanos = new AtomicLong();
+    private final AtomicLong warmUpStatementCount = new AtomicLong();
+    private final AtomicLong warmUpFailureCount = new AtomicLong();
+    private final AtomicLong schemaReadNanos = new AtomicLong();
+    private final LongAdder schemaCacheHitCount = new LongAdder();
+    private final LongAdder schemaCacheMissCount = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> lazyLoadCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> nPlusOneSuspects = new ConcurrentHashMap<>();
+
+    private UCanAccessMetrics() {
+    }
+
+    public static UCanAccessMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    // ---------
+    // recording
+    // ---------
+
+    void statementExecuted(String sql, long nanos) {
+        shape(sql).record(nanos);
+        statementCount.increment();
+    }
+
+    /** records the number of rows read from one result set of the statement */
+    void rowsReturned(String sql, long rows) {
+        shape(sql).recordRows(rows);
+    }
+
+    private Shape shape(String sql) {
+        Shape shape = shapesBySql.get(sql);
+        if (shape == null) {
+            String shapeSql = shapeOf(sql);
+            shape = shapes.get(shapeSql);
+            if (shape == null) {
+                shape = shapes.size() < MAX_SHAPES ? shapes.computeIfAbsent(shapeSql, Shape::new)
+                        : shapes.computeIfAbsent(OTHER_SHAPE, Shape::new);
+            }
+            if (shapesBySql.size() < MAX_SHAPES * 4) {
+                shapesBySql.put(sql, shape);
+            }
+        }
+        return shape;
+    }
+
+    void limitRewritten(boolean top) {
+        (top ? topRewriteCount : limitRewriteCount).increment();
+    }
+
+    void sqlTranslated(boolean cacheHit) {
+        (cacheHit ? sqlCacheHitCount : sqlCacheMissCount).increment();
+    }
+
+    void functionTranslated(String name) {
+        functionTranslationCounts.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    void mirrorLoaded(long nanos) {
+        mirrorLoadNanos.set(nanos);
+    }
+
+    void connectionAcquired(long waitNanos) {
+        connectionAcquisitionCount.increment();
+        connectionWaitNanos.add(waitNanos);
+    }
+
+    void tenantLoaded(long nanos) {
+        tenantLoadCount.increment();
+        tenantLoadNanos.add(nanos);
+        maxTenantLoadNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void tenantEvicted() {
+        tenantEvictionCount.increment();
+    }
+
+    void writeQueued() {
+        writeQueueDepth.incrementAndGet();
+    }
+
+    void writeDequeued(long waitNanos) {
+        writeQueueDepth.decrementAndGet();
+        writeCount.increment();
+        writeWaitNanos.add(waitNanos);
+        maxWriteWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    void writeGroupCommitted(int size) {
+        writeGroupCount.increment();
+        writeGroupedCount.add(size);
+    }
+
+    void warmedUp(long nanos, int statements, int failures) {
+        warmUpNanos.set(nanos);
+        warmUpStatementCount.set(statements);
+        warmUpFailureCount.set(failures);
+    }
+
+    void schemaRead(long nanos, boolean cached) {
+        schemaReadNanos.set(nanos);
+        (cached ? schemaCacheHitCount : schemaCacheMissCount).increment();
+    }
+
+    void lazyLoaded(String role) {
+        lazyLoadCounts.computeIfAbsent(role, k -> new LongAdder()).increment();
+    }
+
+    void nPlusOneDetected(String role, String callSite) {
+        nPlusOneSuspects.computeIfAbsent(role + " at " + callSite, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Returns the SQL with string and numeric literals replaced by "?" and
+     * runs of whitespace collapsed, so that statements that differ only in
+     * their literal values are counted together.
+     */
+    static String shapeOf(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMERIC_LITERAL.matcher(shape).replaceAll("?");
+        return shape.trim().replaceAll("\\s+", " ");
+    }
+
+    // -------
+    // reading
+    // -------
+
+    /**
+     * Returns the statistics of every SQL shape executed so far, slowest (in
+     * total) first
+     */
+    @Override
+    public List<StatementShape> getStatementShapes() {
+        List<StatementShape> result = new ArrayList<>(shapes.size());
+        for (Shape shape : shapes.values()) {
+            result.add(shape.snapshot());
+        }
+        result.sort((a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+        return result;
+    }
+
+    @Override
+    public long getStatementCount() {
+        return statementCount.sum();
+    }
+
+    /** number of queries rendered with "limit ?" or "limit ? offset ?" */
+    @Override
+    public long getLimitRewriteCount() {
+        return limitRewriteCount.sum();
+    }
+
+    /** number of queries rendered with "select top n" */
+    @Override
+    public long getTopRewriteCount() {
+        return topRewriteCount.sum();
+    }
+
+    /** number of statements whose translation was found in a {@link UCanAccessSqlTranslationCache} */
+    @Override
+    public long getSqlCacheHitCount() {
+        return sqlCacheHitCount.sum();
+    }
+
+    /** number of statements that UCanAccess had to translate */
+    @Override
+    public long getSqlCacheMissCount() {
+        return sqlCacheMissCount.sum();
+    }
+
+    @Override
+    public double getSqlCacheHitRatio() {
+        long hitCount = sqlCacheHitCount.sum();
+        long total = hitCount + sqlCacheMissCount.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns the number of times each HQL function (e.g., "current_date") was
+     * rendered as its Access equivalent. Hibernate caches translated queries,
+     * so this counts translations, not executions.
+     */
+    @Override
+    public Map<String, Long> getFunctionTranslationCounts() {
+        return sums(functionTranslationCounts);
+    }
+
+    /** time taken by the most recent mirror load of a {@link UCanAccessConnectionProvider} */
+    @Override
+    public long getMirrorLoadMillis() {
+        return mirrorLoadNanos.get() / 1000000L;
+    }
+
+    @Override
+    public long getConnectionAcquisitionCount() {
+        return connectionAcquisitionCount.sum();
+    }
+
+    /** total time spent waiting for a free pooled connection */
+    @Override
+    public long getConnectionWaitMillis() {
+        return connectionWaitNanos.sum() / 1000000L;
+    }
+
+    /** number of tenant databases loaded by {@link UCanAccessMultiTenantConnectionProvider}s */
+    @Override
+    public long getTenantLoadCount() {
+        return tenantLoadCount.sum();
+    }
+
+    /** total time spent loading tenant databases */
+    @Override
+    public long getTenantLoadMillis() {
+        return tenantLoadNanos.sum() / 1000000L;
+    }
+
+    @Override
+    public long getMaxTenantLoadMillis() {
+        return maxTenantLoadNanos.get() / 1000000L;
+    }
+
+    /** number of tenant databases unloaded to make room for others */
+    @Override
+    public long getTenantEvictionCount() {
+        return tenantEvictionCount.sum();
+    }
+
+    /** number of items waiting in the queues of the {@link UCanAccessWriteScheduler}s */
+    @Override
+    public long getWriteQueueDepth() {
+        return writeQueueDepth.get();
+    }
+
+    /** number of items taken from the queues of the {@link UCanAccessWriteScheduler}s */
+    @Override
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    /** total time that items spent in the write queues */
+    @Override
+    public long getWriteWaitMillis() {
+        return writeWaitNanos.sum() / 1000000L;
+    }
+
+    @Override
+    public long getMaxWriteWaitMillis() {
+        return maxWriteWaitNanos.get() / 1000000L;
+    }
+
+    /** number of write transactions committed */
+    @Override
+    public long getWriteGroupCount() {
+        return writeGroupCount.sum();
+    }
+
+    /** average number of items committed together */
+    @Override
+    public double getAverageWriteGroupSize() {
+        long groupCount = writeGroupCount.sum();
+        return groupCount == 0 ? 0 : (double) writeGroupedCount.sum() / groupCount;
+    }
+
+    /** time taken by the most recent {@link UCanAccessWarmUp} */
+    @Override
+    public long getWarmUpMillis() {
+        return warmUpNanos.get() / 1000000L;
+    }
+
+    /** number of statements prepared or run by the most recent warm-up */
+    @Override
+    public long getWarmUpStatementCount() {
+        return warmUpStatementCount.get();
+    }
+
+    /** number of statements that failed in the most recent warm-up */
+    @Override
+    public long getWarmUpFailureCount() {
+        return warmUpFailureCount.get();
+    }
+
+    /** time taken by the most recent schema read, including the fingerprint check */
+    @Override
+    public long getSchemaReadMillis() {
+        return schemaReadNanos.get() / 1000000L;
+    }
+
+    /** number of schema reads answered from a cached {@link UCanAccessSchemaSnapshot} */
+    @Override
+    public long getSchemaCacheHitCount() {
+        return schemaCacheHitCount.sum();
+    }
+
+    /** number of schema reads that had to read the schema from the database */
+    @Override
+    public long getSchemaCacheMissCount() {
+        return schemaCacheMissCount.sum();
+    }
+
+    /**
+     * Returns the number of lazy collection loads per collection role and of
+     * proxy initializations per entity name
+     */
+    @Override
+    public Map<String, Long> getLazyLoadCounts() {
+        return sums(lazyLoadCounts);
+    }
+
+    /**
+     * Returns the number of sessions in which each collection role (or entity
+     * name) was loaded lazily too often, keyed "role at call site"
+     */
+    @Override
+    public Map<String, Long> getNPlusOneSuspects() {
+        return sums(nPlusOneSuspects);
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counts) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    public static List<Long> getBucketBoundsMicros() {
+        List<Long> bounds = new ArrayList<>(BUCKET_BOUNDS_MICROS.length);
+        for (long bound : BUCKET_BOUNDS_MICROS) {
+            bounds.add(bound);
+        }
+        return Collections.unmodifiableList(bounds);
+    }
+
+    /**
+     * Clears the statement, rewrite, function, tenant, write and lazy load
+     * counts (the mirror load time, the write queue depth, the warm-up
+     * results and the schema cache counts are kept)
+     */
+    @Override
+    public void reset() {
+        shapesBySql.clear();
+        shapes.clear();
+        statementCount.reset();
+        limitRewriteCount.reset();
+        topRewriteCount.reset();
+        sqlCacheHitCount.reset();
+        sqlCacheMissCount.reset();
+        functionTranslationCounts.clear();
+        connectionAcquisitionCount.reset();
+        connectionWaitNanos.reset();
+        tenantLoadCount.reset();
+        tenantLoadNanos.reset();
+        maxTenantLoadNanos.set(0);
+        tenantEvictionCount.reset();
+        writeCount.reset();
+        writeWaitNanos.reset();
+        maxWriteWaitNanos.set(0);
+        writeGroupCount.reset();
+        writeGroupedCount.reset();
+        lazyLoadCounts.clear();
+        nPlusOneSuspects.clear();
+    }
+
+    private static final class Shape {
+        private final String sql;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+        private final LongAdder resultSets = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final AtomicLong maxRows = new AtomicLong();
+
+        Shape(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long nanos) {
+            executions.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long micros = nanos / 1000L;
+            int bucket = Arrays.binarySearch(BUCKET_BOUNDS_MICROS, micros);
+            buckets.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+        }
+
+        void recordRows(long count) {
+            resultSets.increment();
+            rows.add(count);
+            maxRows.accumulateAndGet(count, Math::max);
+        }
+
+        StatementShape snapshot() {
+            long[] histogram = new long[buckets.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = buckets.get(i);
+            }
+            return new StatementShape(sql, executions.sum(), totalNanos.sum(), maxNanos.get(), histogram,
+                    resultSets.sum(), rows.sum(), maxRows.get());
+        }
+    }
+
+    /**
+     * Statistics of one SQL shape
+     */
+    public static final class StatementShape {
+        private final String sql;
+        private final long executions;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] histogram;
+        private final long resultSets;
+        private final long rows;
+        private final long maxRows;
+
+        StatementShape(String sql, long executions, long totalNanos, long maxNanos, long[] histogram,
+                long resultSets, long rows, long maxRows) {
+            this.sql = sql;
+            this.executions = executions;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+            this.resultSets = resultSets;
+            this.rows = rows;
+            this.maxRows = maxRows;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public double getMeanMillis() {
+            return executions == 0 ? 0 : totalNanos / 1e6 / executions;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * Number of executions per latency bucket (see
+         * {@link UCanAccessMetrics#getBucketBoundsMicros()}; the last element
+         * counts the executions slower than the last bound)
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        /** number of result sets whose rows were counted */
+        public long getResultSets() {
+            return resultSets;
+        }
+
+        /** total number of rows read from the result sets */
+        public long getRows() {
+            return rows;
+        }
+
+        public double getMeanRows() {
+            return resultSets == 0 ? 0 : (double) rows / resultSets;
+        }
+
+        public long getMaxRows() {
+            return maxRows;
+        }
+
+        @Override
+        public String toString() {
+            if (resultSets == 0) {
+                return String.format("%d x %.2f ms (max %.2f ms): %s", executions, getMeanMillis(), getMaxMillis(),
+                        sql);
+            }
+            return String.format("%d x %.2f ms (max %.2f ms), %.1f rows (max %d): %s", executions, getMeanMillis(),
+                    getMaxMillis(), getMeanRows(), maxRows, sql);
+        }
+    }
+
+}
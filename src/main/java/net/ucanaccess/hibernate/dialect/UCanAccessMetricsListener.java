@@ -0,0 +1,71 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - session event listener for
+ * {@link UCanAccessMetrics}
+ * 
+ * Times every JDBC statement execution and records it under the SQL that
+ * {@link UCanAccessStatementInspector} saw being prepared. Hibernate does not
+ * tell the listener which statements a JDBC batch contained, so batches are
+ * recorded together as "(JDBC batches)". Statements that Hibernate executes
+ * without preparing them with their SQL are not recorded.
+ * 
+ */
+public class UCanAccessMetricsListener extends BaseSessionEventListener {
+
+    private String executeSql;
+    private long executeStart;
+    private long batchStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executeSql = UCanAccessStatementInspector.takeSql();
+        executeStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        long nanos = System.nanoTime() - executeStart;
+        if (executeSql != null) {
+            UCanAccessMetrics.getInstance().statementExecuted(executeSql, nanos);
+            executeSql = null;
+        }
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        // (the SQL of the batch's statements is not the SQL of the next execution)
+        UCanAccessStatementInspector.takeSql();
+        batchStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        UCanAccessMetrics.getInstance().statementExecuted(UCanAccessMetrics.BATCH_SHAPE, System.nanoTime() - batchStart);
+    }
+
+    @Override
+    public void end() {
+        // (statements prepared but never executed, which would stay with a pooled thread)
+        UCanAccessStatementInspector.takeSql();
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - JMX view of {@link UCanAccessMetrics}
+ * (object name "net.ucanaccess.hibernate.dialect:type=UCanAccessMetrics")
+ * 
+ */
+public interface UCanAccessMetricsMXBean {
+
+    List<UCanAccessMetrics.StatementShape> getStatementShapes();
+
+    long getStatementCount();
+
+    long getLimitRewriteCount();
+
+    long getTopRewriteCount();
+
+    long getSqlCacheHitCount();
+
+    long getSqlCacheMissCount();
+
+    double getSqlCacheHitRatio();
+
+    Map<String, Long> getFunctionTranslationCounts();
+
+    long getMirrorLoadMillis();
+
+    long getConnectionAcquisitionCount();
+
+    long getConnectionWaitMillis();
+
+    long getTenantLoadCount();
+
+    long getTenantLoadMillis();
+
+    long getMaxTenantLoadMillis();
+
+    long getTenantEvictionCount();
+
+    long getWriteQueueDepth();
+
+    long getWriteCount();
+
+    long getWriteWaitMillis();
+
+    long getMaxWriteWaitMillis();
+
+    long getWriteGroupCount();
+
+    double getAverageWriteGroupSize();
+
+    long getWarmUpMillis();
+
+    long getWarmUpStatementCount();
+
+    long getWarmUpFailureCount();
+
+    long getSchemaReadMillis();
+
+    long getSchemaCacheHitCount();
+
+    long getSchemaCacheMissCount();
+
+    Map<String, Long> getLazyLoadCounts();
+
+    Map<String, Long> getNPlusOneSuspects();
+
+    void reset();
+
+}
@@ -0,0 +1,311 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - persistent mirror cache
+ * 
+ * Keeps the HSQLDB mirror of an Access database on disk (UCanAccess
+ * "keepMirror" option) so that it can be reused the next time the
+ * SessionFactory starts, instead of converting the whole database again.
+ * 
+ * The mirror is only reused if the database file still has the fingerprint
+ * (size, modification time and content hash) that it had when the mirror was
+ * last closed; otherwise the mirror is deleted and UCanAccess builds a new
+ * one. Changes made through the mirror itself are written to the database
+ * file as well, so the fingerprint is recorded again when the pool stops.
+ * 
+ * While a pool uses the cached mirror it holds an exclusive lock on a file in
+ * the cache directory (named after the database file, with the extension
+ * ".lock"). A second pool, in this or another JVM, that finds the lock taken
+ * leaves the cached files alone and converts the database as usual.
+ * 
+ * Enabled by {@link UCanAccessSettings#MIRROR_CACHE_DIRECTORY}; used by
+ * {@link UCanAccessConnectionProvider}.
+ * 
+ */
+public class UCanAccessMirrorCache {
+
+    /** how much of the database file goes into the content hash */
+    public enum HashMode {
+        /** size and modification time only */
+        NONE,
+        /** the first and the last megabyte of the file */
+        SAMPLED,
+        /** the whole file */
+        FULL
+    }
+
+    private static final int SAMPLE_SIZE = 1024 * 1024;
+
+    private final File databaseFile;
+    private final File fingerprintFile;
+    private final File mirrorPrefix;
+    private final HashMode hashMode;
+    private final boolean reused;
+    private FileChannel lockChannel;
+
+    UCanAccessMirrorCache(File databaseFile, File directory, HashMode hashMode) {
+        this.databaseFile = databaseFile;
+        this.hashMode = hashMode;
+        String baseName = baseName(databaseFile);
+        this.fingerprintFile = new File(directory, baseName + ".fingerprint");
+        this.mirrorPrefix = new File(directory, baseName + "-mirror");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new HibernateException("Unable to create mirror cache directory " + directory);
+        }
+        lockChannel = tryLock(new File(directory, baseName + ".lock"));
+        if (lockChannel == null) {
+            // another pool is using the mirror
+            reused = false;
+            return;
+        }
+        Properties stored = readFingerprint();
+        reused = stored != null && stored.equals(fingerprint()) && hasMirrorFiles();
+        if (!reused) {
+            deleteMirrorFiles();
+        }
+        // if we crash, the database may have been changed through a mirror
+        // that was not shut down properly, so don't trust it next time
+        fingerprintFile.delete();
+    }
+
+    /**
+     * Returns the mirror cache configured in the settings for a connection URL,
+     * or null if the mirror cache is not enabled (or the URL is not a
+     * UCanAccess URL).
+     */
+    public static UCanAccessMirrorCache configure(String url, @SuppressWarnings("rawtypes") Map settings) {
+        String directory = ConfigurationHelper.getString(UCanAccessSettings.MIRROR_CACHE_DIRECTORY, settings);
+        String databasePath = UCanAccessUrl.databasePath(url);
+        if (directory == null || directory.trim().isEmpty() || databasePath == null) {
+            return null;
+        }
+        return new UCanAccessMirrorCache(new File(databasePath), new File(directory.trim()), hashMode(settings));
+    }
+
+    /**
+     * Returns the hash mode configured in the settings
+     */
+    static HashMode hashMode(@SuppressWarnings("rawtypes") Map settings) {
+        return HashMode.valueOf(ConfigurationHelper.getString(UCanAccessSettings.MIRROR_CACHE_HASH, settings,
+                HashMode.SAMPLED.name()).trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the connection URL with the "keepMirror" option pointing to the cache
+     */
+    public String applyTo(String url) {
+        if (lockChannel == null) {
+            return url;
+        }
+        return UCanAccessUrl.withOption(url, "keepMirror", mirrorPrefix.getAbsolutePath());
+    }
+
+    /**
+     * True if the mirror left by a previous run is being reused
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * Records the fingerprint of the database file, so that the mirror can be
+     * reused next time. Call this after the last connection to the database
+     * has been closed.
+     */
+    public void storeFingerprint() {
+        if (lockChannel == null || !hasMirrorFiles()) {
+            return;
+        }
+        try {
+            File tmp = new File(fingerprintFile.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                fingerprint().store(out, databaseFile.getAbsolutePath());
+            }
+            Files.move(tmp.toPath(), fingerprintFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the mirror will simply be rebuilt next time
+            fingerprintFile.delete();
+        }
+    }
+
+    /**
+     * Releases the lock on the cache, so that the next pool can use the
+     * mirror. Call this after {@link #storeFingerprint()}.
+     */
+    public void release() {
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                // (ignore)
+            }
+            lockChannel = null;
+        }
+    }
+
+    /**
+     * Returns an open channel on the lock file that holds the lock, or null if
+     * the lock is held by someone else
+     */
+    private static FileChannel tryLock(File lockFile) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return channel;
+            }
+        } catch (OverlappingFileLockException e) {
+            // held by another pool in this JVM
+        } catch (IOException e) {
+            throw new HibernateException("Unable to lock mirror cache file " + lockFile, e);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // (ignore)
+        }
+        return null;
+    }
+
+    private Properties readFingerprint() {
+        if (!fingerprintFile.isFile()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(fingerprintFile)) {
+            props.load(in);
+            return props;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the name under which files belonging to a database file are
+     * kept in a cache directory
+     */
+    static String baseName(File databaseFile) {
+        // the same file name may be used in several folders
+        return String.format("%s-%08x", databaseFile.getName(), databaseFile.getAbsolutePath().hashCode());
+    }
+
+    Properties fingerprint() {
+        return fingerprint(databaseFile, hashMode);
+    }
+
+    /**
+     * Returns the size, modification time and (depending on the hash mode)
+     * content hash of a database file
+     */
+    static Properties fingerprint(File databaseFile, HashMode hashMode) {
+        Properties props = new Properties();
+        props.setProperty("size", Long.toString(databaseFile.length()));
+        props.setProperty("lastModified", Long.toString(databaseFile.lastModified()));
+        props.setProperty("hashMode", hashMode.name());
+        if (hashMode != HashMode.NONE) {
+            props.setProperty("sha256", contentHash(databaseFile, hashMode));
+        }
+        return props;
+    }
+
+    private static String contentHash(File databaseFile, HashMode hashMode) {
+        try (RandomAccessFile raf = new RandomAccessFile(databaseFile, "r")) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            long length = raf.length();
+            if (hashMode == HashMode.FULL || length <= 2L * SAMPLE_SIZE) {
+                update(digest, raf, 0, length, buffer);
+            } else {
+                update(digest, raf, 0, SAMPLE_SIZE, buffer);
+                update(digest, raf, length - SAMPLE_SIZE, SAMPLE_SIZE, buffer);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new HibernateException("Unable to fingerprint " + databaseFile, e);
+        }
+    }
+
+    private static void update(MessageDigest digest, RandomAccessFile raf, long position, long count,
+            byte[] buffer) throws IOException {
+        raf.seek(position);
+        while (count > 0) {
+            int n = raf.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (n < 0) {
+                break;
+            }
+            digest.update(buffer, 0, n);
+            count -= n;
+        }
+    }
+
+    /** UCanAccess adds a suffix (and HSQLDB several extensions) to the keepMirror path */
+    private File[] mirrorFiles() {
+        final String prefix = mirrorPrefix.getName();
+        File[] files = mirrorPrefix.getParentFile().listFiles((dir, name) -> name.startsWith(prefix));
+        return files == null ? new File[0] : files;
+    }
+
+    private boolean hasMirrorFiles() {
+        return mirrorFiles().length > 0;
+    }
+
+    private void deleteMirrorFiles() {
+        for (File file : mirrorFiles()) {
+            if (file.isDirectory()) {
+                File[] children = file.listFiles();
+                if (children != null) {
+                    for (File child : children) {
+                        child.delete();
+                    }
+                }
+            }
+            file.delete();
+        }
+    }
+
+}
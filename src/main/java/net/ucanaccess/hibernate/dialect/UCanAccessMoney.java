@@ -0,0 +1,136 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - an amount of money as Access stores it
+ * in a CURRENCY column, i.e., a whole number of ten-thousandths
+ * 
+ * Attributes of this type are mapped to CURRENCY columns automatically (see
+ * {@link UCanAccessMoneyType}). The arithmetic is done on {@code long}s and
+ * throws {@link ArithmeticException} on overflow.
+ * 
+ */
+public final class UCanAccessMoney implements Comparable<UCanAccessMoney>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final UCanAccessMoney ZERO = new UCanAccessMoney(0);
+
+    private final long scaled;
+
+    private UCanAccessMoney(long scaled) {
+        this.scaled = scaled;
+    }
+
+    /**
+     * Returns the amount given in ten-thousandths (e.g., 123400 for 12.34)
+     */
+    public static UCanAccessMoney ofScaled(long scaled) {
+        return scaled == 0 ? ZERO : new UCanAccessMoney(scaled);
+    }
+
+    /**
+     * Returns the amount given in whole units and ten-thousandths (e.g.,
+     * {@code of(12, 3400)} for 12.34)
+     */
+    public static UCanAccessMoney of(long units, int tenThousandths) {
+        return ofScaled(Math.addExact(Math.multiplyExact(units, UCanAccessDialectCurrencyTypeDescriptor.FACTOR),
+                tenThousandths));
+    }
+
+    /**
+     * Returns the amount rounded (half-even) to ten-thousandths
+     */
+    public static UCanAccessMoney valueOf(BigDecimal value) {
+        return ofScaled(UCanAccessDialectCurrencyTypeDescriptor.toScaled(value));
+    }
+
+    /**
+     * Returns the amount parsed from a string such as "-12.34"
+     */
+    public static UCanAccessMoney parse(String value) {
+        return valueOf(new BigDecimal(value));
+    }
+
+    /** the amount in ten-thousandths */
+    public long getScaled() {
+        return scaled;
+    }
+
+    public UCanAccessMoney plus(UCanAccessMoney other) {
+        return ofScaled(Math.addExact(scaled, other.scaled));
+    }
+
+    public UCanAccessMoney minus(UCanAccessMoney other) {
+        return ofScaled(Math.subtractExact(scaled, other.scaled));
+    }
+
+    public UCanAccessMoney times(long factor) {
+        return ofScaled(Math.multiplyExact(scaled, factor));
+    }
+
+    public UCanAccessMoney negate() {
+        return ofScaled(Math.negateExact(scaled));
+    }
+
+    public int signum() {
+        return Long.signum(scaled);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return UCanAccessDialectCurrencyTypeDescriptor.toBigDecimal(scaled);
+    }
+
+    @Override
+    public int compareTo(UCanAccessMoney other) {
+        return Long.compare(scaled, other.scaled);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof UCanAccessMoney && ((UCanAccessMoney) obj).scaled == scaled;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(scaled);
+    }
+
+    /**
+     * Returns the amount with four decimal places, e.g., "-12.3400"
+     */
+    @Override
+    public String toString() {
+        long factor = UCanAccessDialectCurrencyTypeDescriptor.FACTOR;
+        long units = Math.abs(scaled / factor);
+        long fraction = Math.abs(scaled % factor);
+        StringBuilder sb = new StringBuilder(24);
+        if (scaled < 0) {
+            sb.append('-');
+        }
+        sb.append(units).append('.');
+        for (long f = factor / 10; f > fraction && f > 1; f /= 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.math.BigDecimal;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - maps {@link UCanAccessMoney} attributes
+ * to CURRENCY columns
+ * 
+ * Registered by {@link UCanAccessDialect} under the name "ucanaccess_money"
+ * and for the {@link UCanAccessMoney} class, so the attributes need no
+ * {@code @Type} annotation.
+ * 
+ */
+public class UCanAccessMoneyType extends AbstractSingleColumnStandardBasicType<UCanAccessMoney> {
+
+    public static final String NAME = "ucanaccess_money";
+
+    public static final UCanAccessMoneyType INSTANCE = new UCanAccessMoneyType();
+
+    public UCanAccessMoneyType() {
+        super(UCanAccessDialectCurrencyTypeDescriptor.INSTANCE, MoneyTypeDescriptor.INSTANCE);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected boolean registerUnderJavaType() {
+        return true;
+    }
+
+    static class MoneyTypeDescriptor extends AbstractTypeDescriptor<UCanAccessMoney> {
+
+        static final MoneyTypeDescriptor INSTANCE = new MoneyTypeDescriptor();
+
+        MoneyTypeDescriptor() {
+            super(UCanAccessMoney.class);
+        }
+
+        @Override
+        public String toString(UCanAccessMoney value) {
+            return value.toString();
+        }
+
+        @Override
+        public UCanAccessMoney fromString(String string) {
+            return UCanAccessMoney.parse(string);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <X> X unwrap(UCanAccessMoney value, Class<X> type, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+            if (Long.class.isAssignableFrom(type)) {
+                return (X) Long.valueOf(value.getScaled());
+            }
+            if (BigDecimal.class.isAssignableFrom(type)) {
+                return (X) value.toBigDecimal();
+            }
+            if (String.class.isAssignableFrom(type)) {
+                return (X) value.toString();
+            }
+            throw unknownUnwrap(type);
+        }
+
+        @Override
+        public <X> UCanAccessMoney wrap(X value, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Long) {
+                return UCanAccessMoney.ofScaled((Long) value);
+            }
+            if (value instanceof BigDecimal) {
+                return UCanAccessMoney.valueOf((BigDecimal) value);
+            }
+            if (value instanceof String) {
+                return UCanAccessMoney.parse((String) value);
+            }
+            throw unknownWrap(value.getClass());
+        }
+
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - connection pools for one database per
+ * tenant
+ * 
+ * Each tenant's database is loaded (i.e., a {@link UCanAccessConnectionProvider}
+ * is opened for it, with the same settings as a single-database pool) when a
+ * session first asks for a connection to it. At most
+ * {@link UCanAccessSettings#TENANT_MAX_LOADED} mirrors, whose database files
+ * add up to at most {@link UCanAccessSettings#TENANT_MEMORY_BUDGET} megabytes,
+ * are kept loaded; beyond that, the mirror of the least recently used tenant
+ * is closed, but only once none of its connections is in use (tenant URLs
+ * always get "immediatelyReleaseResources=true", so that UCanAccess frees the
+ * mirror at once). Tenants listed in {@link UCanAccessSettings#TENANT_PINNED}
+ * (or pinned with {@link #pin(String)}) count towards these limits but are
+ * never unloaded.
+ * 
+ * To use it, in hibernate.cfg.xml
+ * 
+ * <pre>
+ * &lt;property name="hibernate.multiTenancy"&gt;DATABASE&lt;/property&gt;
+ * &lt;property name="hibernate.multi_tenant_connection_provider"&gt;net.ucanaccess.hibernate.dialect.UCanAccessMultiTenantConnectionProvider&lt;/property&gt;
+ * &lt;property name="hibernate.ucanaccess.tenant.url"&gt;jdbc:ucanaccess://C:/branches/{tenant}.accdb&lt;/property&gt;
+ * &lt;property name="hibernate.ucanaccess.tenant.default"&gt;head_office&lt;/property&gt;
+ * &lt;property name="connection.pool_size"&gt;2&lt;/property&gt;
+ * </pre>
+ * 
+ * Tenant identifiers become part of a file name, so they may only contain
+ * letters, digits, "_", "-" and single dots.
+ * 
+ */
+public class UCanAccessMultiTenantConnectionProvider implements MultiTenantConnectionProvider, Configurable, Stoppable {
+
+    public static final String TENANT_PLACEHOLDER = "{tenant}";
+    public static final int DEFAULT_MAX_LOADED = 10;
+
+    private static final Pattern TENANT_IDENTIFIER = Pattern.compile("[\\w-]+(?:\\.[\\w-]+)*");
+
+    private Map<Object, Object> configurationValues;
+    private String urlPattern;
+    private String defaultTenant;
+    private int maxLoaded;
+    private long memoryBudgetBytes;
+    private final Set<String> pinned = ConcurrentHashMap.newKeySet();
+
+    /** tenants that are loaded or being loaded, least recently used first (guarded by itself) */
+    private final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile boolean stopped;
+
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void configure(@SuppressWarnings("rawtypes") Map configurationValues) {
+        urlPattern = ConfigurationHelper.getString(UCanAccessSettings.TENANT_URL, configurationValues);
+        if (urlPattern == null || !urlPattern.contains(TENANT_PLACEHOLDER)) {
+            throw new HibernateException("UCanAccessMultiTenantConnectionProvider requires "
+                    + UCanAccessSettings.TENANT_URL + " (with " + TENANT_PLACEHOLDER + " for the tenant identifier)");
+        }
+        urlPattern = urlPattern.trim();
+        this.configurationValues = new HashMap<>(configurationValues);
+        defaultTenant = ConfigurationHelper.getString(UCanAccessSettings.TENANT_DEFAULT, configurationValues);
+        maxLoaded = ConfigurationHelper.getInt(UCanAccessSettings.TENANT_MAX_LOADED, configurationValues,
+                DEFAULT_MAX_LOADED);
+        memoryBudgetBytes = ConfigurationHelper.getLong(UCanAccessSettings.TENANT_MEMORY_BUDGET, configurationValues,
+                0) * 1024L * 1024L;
+        String pinnedTenants = ConfigurationHelper.getString(UCanAccessSettings.TENANT_PINNED, configurationValues, "");
+        try {
+            for (String tenantIdentifier : pinnedTenants.split(",")) {
+                if (!tenantIdentifier.trim().isEmpty()) {
+                    pin(tenantIdentifier.trim());
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            stop();
+            throw new HibernateException("Unable to load the pinned tenant databases", e);
+        }
+    }
+
+    /**
+     * Loads the tenant's database, if it is not loaded yet, and keeps it
+     * loaded until {@link #unpin(String)} is called
+     */
+    public void pin(String tenantIdentifier) throws SQLException {
+        pinned.add(tenantIdentifier);
+        release(acquire(tenantIdentifier));
+    }
+
+    /**
+     * Lets the tenant's database be unloaded again when it is the least
+     * recently used one
+     */
+    public void unpin(String tenantIdentifier) {
+        pinned.remove(tenantIdentifier);
+        evict();
+    }
+
+    @Override
+    public Connection getAnyConnection() throws SQLException {
+        if (defaultTenant == null) {
+            throw new SQLException("UCanAccessMultiTenantConnectionProvider requires "
+                    + UCanAccessSettings.TENANT_DEFAULT + " for connections that are not tied to a tenant");
+        }
+        return getConnection(defaultTenant);
+    }
+
+    @Override
+    public void releaseAnyConnection(Connection connection) throws SQLException {
+        releaseConnection(defaultTenant, connection);
+    }
+
+    @Override
+    public Connection getConnection(String tenantIdentifier) throws SQLException {
+        Tenant tenant = acquire(tenantIdentifier);
+        try {
+            return tenant.pool.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            release(tenant);
+            throw e;
+        }
+    }
+
+    @Override
+    public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
+        Tenant tenant;
+        synchronized (tenants) {
+            tenant = tenants.get(tenantIdentifier);
+        }
+        if (tenant == null || tenant.pool == null) {
+            // (the provider has been stopped)
+            connection.close();
+            return;
+        }
+        try {
+            tenant.pool.closeConnection(connection);
+        } finally {
+            release(tenant);
+        }
+    }
+
+    /**
+     * Marks the tenant as in use, so that its database is not unloaded, and
+     * loads the database if necessary
+     */
+    private Tenant acquire(String tenantIdentifier) throws SQLException {
+        if (tenantIdentifier == null || !TENANT_IDENTIFIER.matcher(tenantIdentifier).matches()) {
+            throw new SQLException("Invalid tenant identifier: " + tenantIdentifier);
+        }
+        if (stopped) {
+            throw new SQLException("The UCanAccess tenant connection pools have been stopped");
+        }
+        Tenant tenant;
+        synchronized (tenants) {
+            tenant = tenants.get(tenantIdentifier);
+            if (tenant == null) {
+                tenant = new Tenant(tenantIdentifier);
+                tenants.put(tenantIdentifier, tenant);
+            }
+            tenant.active++;
+        }
+        boolean loaded;
+        try {
+            loaded = tenant.load();
+        } catch (RuntimeException e) {
+            release(tenant);
+            throw e;
+        }
+        if (loaded) {
+            evict();
+        }
+        return tenant;
+    }
+
+    private void release(Tenant tenant) {
+        synchronized (tenants) {
+            tenant.active--;
+            if (tenant.active == 0 && tenant.pool == null) {
+                // (its database could not be loaded)
+                tenants.remove(tenant.id, tenant);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Unloads the least recently used databases that are not in use until the
+     * rest fit into the limits
+     */
+    private void evict() {
+        List<Tenant> victims = new ArrayList<>();
+        synchronized (tenants) {
+            int loaded = 0;
+            long bytes = 0;
+            for (Tenant tenant : tenants.values()) {
+                if (tenant.pool != null) {
+                    loaded++;
+                    bytes += tenant.size;
+                }
+            }
+            Iterator<Tenant> it = tenants.values().iterator();
+            while (it.hasNext() && (loaded > maxLoaded || (memoryBudgetBytes > 0 && bytes > memoryBudgetBytes))) {
+                Tenant tenant = it.next();
+                if (tenant.active == 0 && tenant.pool != null && !pinned.contains(tenant.id)) {
+                    it.remove();
+                    victims.add(tenant);
+                    loaded--;
+                    bytes -= tenant.size;
+                }
+            }
+        }
+        for (Tenant tenant : victims) {
+            tenant.pool.stop();
+            evictionCount.incrementAndGet();
+            UCanAccessMetrics.getInstance().tenantEvicted();
+        }
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        List<Tenant> all;
+        synchronized (tenants) {
+            all = new ArrayList<>(tenants.values());
+            tenants.clear();
+        }
+        for (Tenant tenant : all) {
+            if (tenant.pool != null) {
+                tenant.pool.stop();
+            }
+        }
+    }
+
+    @Override
+    public boolean isUnwrappableAs(@SuppressWarnings("rawtypes") Class unwrapType) {
+        return MultiTenantConnectionProvider.class.equals(unwrapType)
+                || UCanAccessMultiTenantConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    // ----------
+    // statistics
+    // ----------
+
+    /** identifiers of the tenants whose databases are loaded, least recently used first */
+    public List<String> getLoadedTenants() {
+        List<String> result = new ArrayList<>();
+        synchronized (tenants) {
+            for (Tenant tenant : tenants.values()) {
+                if (tenant.pool != null) {
+                    result.add(tenant.id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the connection pool of the tenant, or null if its database is
+     *         not loaded
+     */
+    public UCanAccessConnectionProvider getPool(String tenantIdentifier) {
+        synchronized (tenants) {
+            // (tenants.get would count as a use)
+            for (Tenant tenant : tenants.values()) {
+                if (tenant.id.equals(tenantIdentifier)) {
+                    return tenant.pool;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** total size of the database files whose mirrors are loaded */
+    public long getLoadedBytes() {
+        long bytes = 0;
+        synchronized (tenants) {
+            for (Tenant tenant : tenants.values()) {
+                if (tenant.pool != null) {
+                    bytes += tenant.size;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /** number of tenant databases loaded since the provider was started */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /** number of tenant databases unloaded to make room for others */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UCanAccessMultiTenantConnectionProvider[loaded=%s, loadedSize=%d KB, loads=%d, "
+                + "evictions=%d, pinned=%s]", getLoadedTenants(), getLoadedBytes() / 1024, getLoadCount(),
+                getEvictionCount(), pinned);
+    }
+
+    private final class Tenant {
+        final String id;
+        /** connections in use, and threads loading the database (guarded by tenants) */
+        int active;
+        volatile UCanAccessConnectionProvider pool;
+        /** size of the database file when it was loaded */
+        volatile long size;
+
+        Tenant(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Loads the database unless another thread has already done so
+         * 
+         * @return true if this call loaded it
+         */
+        synchronized boolean load() {
+            if (pool != null) {
+                return false;
+            }
+            // without immediatelyReleaseResources, UCanAccess keeps the mirror
+            // in memory after the pool has closed its last connection
+            String url = UCanAccessUrl.withOption(urlPattern.replace(TENANT_PLACEHOLDER, id),
+                    "immediatelyReleaseResources", "true");
+            Map<Object, Object> values = new HashMap<>(configurationValues);
+            values.put(AvailableSettings.URL, url);
+            long start = System.nanoTime();
+            UCanAccessConnectionProvider tenantPool = new UCanAccessConnectionProvider();
+            tenantPool.configure(values);
+            loadCount.incrementAndGet();
+            UCanAccessMetrics.getInstance().tenantLoaded(System.nanoTime() - start);
+            size = new File(UCanAccessUrl.databasePath(url)).length();
+            pool = tenantPool;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.internal.util.collections.BoundedConcurrentHashMap;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - second-level cache
+ * 
+ * An in-memory cache whose entity, collection, natural id and query result
+ * regions each hold at most {@link UCanAccessSettings#CACHE_MAX_ENTRIES}
+ * entries (least recently used entries are evicted first).
+ * 
+ * Access databases are often changed by other programs (e.g., users working
+ * in Access itself), which Hibernate would never hear about. So the database
+ * file is watched with a {@link WatchService}, and its size and modification
+ * time are also checked every {@link UCanAccessSettings#CACHE_POLL_INTERVAL}
+ * milliseconds for file systems (e.g., network shares) where the watch
+ * service does not report changes. Whenever the file changes, all cached
+ * entities, collections and query results are evicted. This includes
+ * changes made through Hibernate, whose own cache updates were already
+ * correct, so the cache works best for data that is read much more often
+ * than it is written.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * &lt;property name="cache.use_second_level_cache"&gt;true&lt;/property&gt;
+ * &lt;property name="cache.region.factory_class"&gt;net.ucanaccess.hibernate.dialect.UCanAccessRegionFactory&lt;/property&gt;
+ * </pre>
+ * 
+ */
+public class UCanAccessRegionFactory extends RegionFactoryTemplate {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final int DEFAULT_POLL_INTERVAL = 1000;
+
+    private static final long QUIET_PERIOD_MILLIS = 50;
+
+    private final List<Storage> storages = new CopyOnWriteArrayList<>();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private int maxEntries;
+    private long pollIntervalMillis;
+    private File databaseFile;
+    private volatile Thread watcherThread;
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, @SuppressWarnings("rawtypes") Map configValues) {
+        maxEntries = ConfigurationHelper.getInt(UCanAccessSettings.CACHE_MAX_ENTRIES, configValues,
+                DEFAULT_MAX_ENTRIES);
+        pollIntervalMillis = ConfigurationHelper.getInt(UCanAccessSettings.CACHE_POLL_INTERVAL, configValues,
+                DEFAULT_POLL_INTERVAL);
+        String databasePath = UCanAccessUrl.databasePath(ConfigurationHelper.getString(AvailableSettings.URL,
+                configValues));
+        if (databasePath != null) {
+            databaseFile = new File(databasePath).getAbsoluteFile();
+            watcherThread = new Thread(this::watch, "UCanAccess cache invalidation");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        }
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        Thread thread = watcherThread;
+        watcherThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        for (Storage storage : storages) {
+            storage.release();
+        }
+        storages.clear();
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+            DomainDataRegionBuildingContext buildingContext) {
+        return register(new Storage(new BoundedConcurrentHashMap<>(maxEntries, 16,
+                BoundedConcurrentHashMap.Eviction.LRU), true));
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+            SessionFactoryImplementor sessionFactory) {
+        return register(new Storage(new BoundedConcurrentHashMap<>(maxEntries, 16,
+                BoundedConcurrentHashMap.Eviction.LRU), true));
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+            SessionFactoryImplementor sessionFactory) {
+        // never bounded: a missing timestamp would make stale query results look current
+        return register(new Storage(new ConcurrentHashMap<>(), false));
+    }
+
+    private Storage register(Storage storage) {
+        storages.add(storage);
+        return storage;
+    }
+
+    /**
+     * Evicts all cached entities, collections and query results
+     */
+    public void invalidate() {
+        for (Storage storage : storages) {
+            if (storage.invalidatedByFileChanges) {
+                storage.evictData();
+            }
+        }
+        invalidationCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of times the cache has been invalidated
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    private void watch() {
+        Path directory = databaseFile.toPath().getParent();
+        Path fileName = databaseFile.toPath().getFileName();
+        WatchService watchService = null;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            // polling alone still works
+            watchService = null;
+        }
+        try {
+            long lastModified = databaseFile.lastModified();
+            long length = databaseFile.length();
+            boolean recheck = false;
+            while (watcherThread == Thread.currentThread()) {
+                boolean changed = false;
+                if (watchService == null) {
+                    Thread.sleep(pollIntervalMillis);
+                } else {
+                    // a single write usually produces a burst of events, so wait until it is over
+                    WatchKey key = watchService.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                    while (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            changed |= fileName.equals(event.context());
+                        }
+                        key.reset();
+                        key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+                long currentModified = databaseFile.lastModified();
+                long currentLength = databaseFile.length();
+                changed |= currentModified != lastModified || currentLength != length;
+                lastModified = currentModified;
+                length = currentLength;
+                if (changed || recheck) {
+                    invalidate();
+                }
+                // a session that read the old data just before the change may
+                // still put it into the cache, so evict once more afterwards
+                recheck = changed;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        } finally {
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * The contents of a region
+     */
+    private static final class Storage implements DomainDataStorageAccess {
+        private final ConcurrentMap<Object, Object> entries;
+        private final boolean invalidatedByFileChanges;
+
+        Storage(ConcurrentMap<Object, Object> entries, boolean invalidatedByFileChanges) {
+            this.entries = entries;
+            this.invalidatedByFileChanges = invalidatedByFileChanges;
+        }
+
+        @Override
+        public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+            return entries.get(key);
+        }
+
+        @Override
+        public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public void evictData() {
+            entries.clear();
+        }
+
+        @Override
+        public void evictData(Object key) {
+            entries.remove(key);
+        }
+
+        @Override
+        public void release() {
+            entries.clear();
+        }
+    }
+
+}
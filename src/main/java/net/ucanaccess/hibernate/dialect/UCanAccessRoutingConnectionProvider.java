@@ -0,0 +1,332 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import net.ucanaccess.jdbc.UcanaccessConnection;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - connection pool that keeps read-only
+ * work apart from writes
+ * 
+ * Holds two {@link UCanAccessConnectionProvider} pools for the same database:
+ * the write pool, configured as usual, and a read pool whose connections are
+ * put in read-only mode (see {@link UCanAccessSettings#READ_POOL_SIZE}). The
+ * connections handed to Hibernate only pick a pool when the first statement
+ * is run: if {@code setReadOnly(true)} has been called by then (as
+ * read-only transactions of Spring and similar frameworks do), or the session
+ * was opened with {@link #openReadOnlySession(SessionFactory)}, they use the
+ * read pool, so that queries never wait for a connection held by a long
+ * write transaction. {@code Session.setDefaultReadOnly(true)} on its own does
+ * not route anything: it only tells Hibernate not to track changes to the
+ * entities it loads, and never reaches the JDBC connection, so such a session
+ * still uses the write pool.
+ * 
+ * The mirror can also be switched to multi-version concurrency control (see
+ * {@link UCanAccessSettings#READ_POOL_MVCC}), so that queries read the last
+ * committed rows instead of waiting for the table locks of uncommitted
+ * writes. This is off by default because it also changes what writers see:
+ * a write that conflicts with another uncommitted one fails instead of
+ * waiting for it. (UCanAccess leaves its mirror in HSQLDB's default locking
+ * mode, and goes back to it if it has to reload the mirror because another
+ * program changed the database file.)
+ * 
+ * To use it, in hibernate.cfg.xml
+ * 
+ * <pre>
+ * &lt;property name="connection.provider_class"&gt;net.ucanaccess.hibernate.dialect.UCanAccessRoutingConnectionProvider&lt;/property&gt;
+ * &lt;property name="connection.pool_size"&gt;5&lt;/property&gt;
+ * &lt;property name="hibernate.ucanaccess.read_pool.size"&gt;8&lt;/property&gt;
+ * </pre>
+ * 
+ */
+public class UCanAccessRoutingConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    private UCanAccessConnectionProvider writePool;
+    private UCanAccessConnectionProvider readPool;
+    private boolean autoCommit;
+    private boolean multiVersionConcurrency;
+
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+
+    /**
+     * Opens a session whose queries run on the read pool: it is read-only,
+     * is never flushed automatically, and keeps its (read-only) connection
+     * until it is closed.
+     */
+    public static Session openReadOnlySession(SessionFactory sessionFactory) {
+        Session session = sessionFactory.withOptions()
+                .connectionHandlingMode(PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_HOLD)
+                .flushMode(FlushMode.MANUAL)
+                .openSession();
+        session.setDefaultReadOnly(true);
+        session.doWork(connection -> connection.setReadOnly(true));
+        return session;
+    }
+
+    @Override
+    public void configure(@SuppressWarnings("rawtypes") Map configurationValues) {
+        autoCommit = ConfigurationHelper.getBoolean(AvailableSettings.AUTOCOMMIT, configurationValues, false);
+        writePool = new UCanAccessConnectionProvider();
+        writePool.configure(configurationValues);
+
+        Map<?, ?> values = configurationValues;
+        Map<Object, Object> readValues = new HashMap<>(values);
+        readValues.put(AvailableSettings.POOL_SIZE, ConfigurationHelper.getInt(UCanAccessSettings.READ_POOL_SIZE,
+                configurationValues, Runtime.getRuntime().availableProcessors()));
+        // the write pool holds the mirror (and keeps it between runs, if configured)
+        readValues.remove(UCanAccessSettings.MIRROR_CACHE_DIRECTORY);
+        // connections opened before the schema tool runs its DDL cannot be used afterwards
+        readValues.put(UCanAccessSettings.POOL_MIN_SIZE, 0);
+        readPool = new UCanAccessConnectionProvider();
+        readPool.shareSqlCache(writePool.getSqlCache());
+        try {
+            readPool.configure(readValues);
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+        multiVersionConcurrency = ConfigurationHelper.getBoolean(UCanAccessSettings.READ_POOL_MVCC,
+                configurationValues, false);
+    }
+
+    /**
+     * Switches the mirror to multi-version concurrency control, if configured.
+     * Called by {@link UCanAccessIntegrator} once the schema tool has run,
+     * because UCanAccess reloads the mirror after DDL.
+     */
+    void mirrorReady() throws SQLException {
+        if (!multiVersionConcurrency) {
+            return;
+        }
+        Connection conn = writePool.getConnection();
+        try {
+            // (UcanaccessConnection.unwrap does not accept its own class)
+            UcanaccessConnection ucaConnection = conn instanceof UcanaccessConnection ? (UcanaccessConnection) conn
+                    : conn.unwrap(UcanaccessConnection.class);
+            try (Statement st = ucaConnection.getHSQLDBConnection().createStatement()) {
+                st.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+            }
+        } finally {
+            writePool.closeConnection(conn);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return (Connection) Proxy.newProxyInstance(UCanAccessRoutingConnectionProvider.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new RoutingConnection());
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        if (Proxy.isProxyClass(conn.getClass()) && Proxy.getInvocationHandler(conn) instanceof RoutingConnection) {
+            ((RoutingConnection) Proxy.getInvocationHandler(conn)).release();
+        } else {
+            conn.close();
+        }
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        // the read pool first, so that the write pool closes the last connection to the mirror
+        if (readPool != null) {
+            readPool.stop();
+        }
+        if (writePool != null) {
+            writePool.stop();
+        }
+    }
+
+    @Override
+    public boolean isUnwrappableAs(@SuppressWarnings("rawtypes") Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || UCanAccessRoutingConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    // ----------
+    // statistics
+    // ----------
+
+    public UCanAccessConnectionProvider getWritePool() {
+        return writePool;
+    }
+
+    public UCanAccessConnectionProvider getReadPool() {
+        return readPool;
+    }
+
+    /** number of connections that ran their statements on the read pool */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /** number of connections that ran their statements on the write pool */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UCanAccessRoutingConnectionProvider[reads=%d, writes=%d, readPool=%s, writePool=%s]",
+                getReadCount(), getWriteCount(), readPool, writePool);
+    }
+
+    /**
+     * The connection handed to Hibernate. Until a statement is run it only
+     * records the read-only, auto-commit and isolation settings; then it takes
+     * a connection from the pool that the read-only setting calls for.
+     */
+    private final class RoutingConnection implements InvocationHandler {
+        private Connection target;
+        private UCanAccessConnectionProvider pool;
+        private boolean readOnly;
+        private boolean connAutoCommit = autoCommit;
+        private Integer isolation;
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "RoutingConnection[" + (target == null ? "not yet routed" : target) + "]";
+            case "close":
+                release();
+                return null;
+            case "isClosed":
+                return closed;
+            default:
+                break;
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+            if (target == null) {
+                switch (method.getName()) {
+                case "setReadOnly":
+                    readOnly = (Boolean) args[0];
+                    return null;
+                case "isReadOnly":
+                    return readOnly;
+                case "setAutoCommit":
+                    connAutoCommit = (Boolean) args[0];
+                    return null;
+                case "getAutoCommit":
+                    return connAutoCommit;
+                case "setTransactionIsolation":
+                    isolation = (Integer) args[0];
+                    return null;
+                case "commit":
+                case "rollback":
+                case "clearWarnings":
+                    if (args == null) {
+                        return null;
+                    }
+                    break;
+                case "getWarnings":
+                    return null;
+                default:
+                    break;
+                }
+                route();
+            }
+            if (method.getName().equals("isReadOnly")) {
+                // (UCanAccess reports whether the database file is read-only)
+                return readOnly;
+            }
+            if (method.getName().equals("setReadOnly")) {
+                readOnly = (Boolean) args[0];
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void route() throws SQLException {
+            pool = readOnly ? readPool : writePool;
+            Connection conn = pool.getConnection();
+            try {
+                conn.setReadOnly(readOnly);
+                if (isolation != null) {
+                    conn.setTransactionIsolation(isolation);
+                }
+                if (conn.getAutoCommit() != connAutoCommit) {
+                    conn.setAutoCommit(connAutoCommit);
+                }
+            } catch (SQLException | RuntimeException e) {
+                pool.closeConnection(conn);
+                throw e;
+            }
+            target = conn;
+            (readOnly ? readCount : writeCount).incrementAndGet();
+        }
+
+        void release() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (target != null) {
+                pool.closeConnection(target);
+                target = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - row counts for {@link UCanAccessMetrics}
+ * 
+ * Wraps the connections of {@link UCanAccessConnectionProvider} when
+ * {@link UCanAccessStatementInspector} is configured, counts the
+ * ResultSet.next() calls that return a row, and records the count under the
+ * SQL of the prepared statement when the result set (or its statement) is
+ * closed. Like the execution times, the rows of statements that were not
+ * prepared with their SQL are not recorded. Every JDBC call on the wrapped
+ * statements and result sets goes through a dynamic proxy, so only configure
+ * the inspector when the numbers are wanted.
+ * 
+ */
+final class UCanAccessRowCounter {
+
+    private UCanAccessRowCounter() {
+    }
+
+    /** Returns a connection whose prepared statements count the rows they return */
+    static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(UCanAccessRowCounter.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Handles unwrap(), isWrapperFor(), equals() and hashCode() of a proxy, or
+     * returns null to let the target handle the call
+     */
+    private static Object wrapperMethod(Object proxy, Object target, Method method, Object[] args) {
+        switch (method.getName()) {
+        case "unwrap":
+            return ((Class<?>) args[0]).isInstance(target) ? target : null;
+        case "isWrapperFor":
+            return ((Class<?>) args[0]).isInstance(target) ? Boolean.TRUE : null;
+        case "equals":
+            return proxy == args[0];
+        case "hashCode":
+            return System.identityHashCode(proxy);
+        default:
+            return null;
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = wrapperMethod(proxy, connection, method, args);
+            if (result != null) {
+                return result;
+            }
+            switch (method.getName()) {
+            case "prepareStatement":
+                return statement(proxy, (Statement) UCanAccessRowCounter.invoke(connection, method, args),
+                        PreparedStatement.class, (String) args[0]);
+            case "prepareCall":
+                return statement(proxy, (Statement) UCanAccessRowCounter.invoke(connection, method, args),
+                        CallableStatement.class, (String) args[0]);
+            case "createStatement":
+                return statement(proxy, (Statement) UCanAccessRowCounter.invoke(connection, method, args),
+                        Statement.class, null);
+            default:
+                return UCanAccessRowCounter.invoke(connection, method, args);
+            }
+        }
+    }
+
+    private static Object statement(Object connectionProxy, Statement statement, Class<? extends Statement> type,
+            String sql) {
+        return Proxy.newProxyInstance(UCanAccessRowCounter.class.getClassLoader(), new Class<?>[] { type },
+                new StatementHandler(statement, (Connection) connectionProxy, sql));
+    }
+
+    /**
+     * Wraps the result sets of a prepared statement (those of a plain
+     * statement are not counted)
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final Connection connectionProxy;
+        private final String sql;
+        private ResultSetHandler current;
+        private Object currentProxy;
+
+        StatementHandler(Statement statement, Connection connectionProxy, String sql) {
+            this.statement = statement;
+            this.connectionProxy = connectionProxy;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = wrapperMethod(proxy, statement, method, args);
+            if (result != null) {
+                return result;
+            }
+            switch (method.getName()) {
+            case "getConnection":
+                return connectionProxy;
+            case "executeQuery":
+            case "getResultSet":
+                result = UCanAccessRowCounter.invoke(statement, method, args);
+                return sql == null || result == null ? result : resultSet(proxy, (ResultSet) result);
+            case "close":
+                finish();
+                return UCanAccessRowCounter.invoke(statement, method, args);
+            default:
+                return UCanAccessRowCounter.invoke(statement, method, args);
+            }
+        }
+
+        private Object resultSet(Object statementProxy, ResultSet resultSet) {
+            if (current != null && current.resultSet == resultSet) {
+                return currentProxy;
+            }
+            finish();
+            current = new ResultSetHandler(resultSet, statementProxy, sql);
+            currentProxy = Proxy.newProxyInstance(UCanAccessRowCounter.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, current);
+            return currentProxy;
+        }
+
+        private void finish() {
+            if (current != null) {
+                current.finish();
+                current = null;
+                currentProxy = null;
+            }
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final Object statementProxy;
+        private final String sql;
+        private long rows;
+        private boolean finished;
+
+        ResultSetHandler(ResultSet resultSet, Object statementProxy, String sql) {
+            this.resultSet = resultSet;
+            this.statementProxy = statementProxy;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = wrapperMethod(proxy, resultSet, method, args);
+            if (result != null) {
+                return result;
+            }
+            switch (method.getName()) {
+            case "next":
+                result = UCanAccessRowCounter.invoke(resultSet, method, args);
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                }
+                return result;
+            case "getStatement":
+                return statementProxy;
+            case "close":
+                finish();
+                return UCanAccessRowCounter.invoke(resultSet, method, args);
+            default:
+                return UCanAccessRowCounter.invoke(resultSet, method, args);
+            }
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                UCanAccessMetrics.getInstance().rowsReturned(sql, rows);
+            }
+        }
+    }
+
+}
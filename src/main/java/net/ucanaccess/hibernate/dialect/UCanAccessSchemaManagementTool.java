@@ -0,0 +1,339 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.registry.StandardServiceInitiator;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.boot.registry.selector.spi.StrategySelector;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Table;
+import org.hibernate.resource.transaction.spi.DdlTransactionIsolator;
+import org.hibernate.service.spi.ServiceContributor;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.hibernate.tool.schema.JdbcMetadaAccessStrategy;
+import org.hibernate.tool.schema.extract.spi.ColumnInformation;
+import org.hibernate.tool.schema.internal.DefaultSchemaFilterProvider;
+import org.hibernate.tool.schema.internal.GroupedSchemaValidatorImpl;
+import org.hibernate.tool.schema.internal.HibernateSchemaManagementTool;
+import org.hibernate.tool.schema.internal.IndividuallySchemaValidatorImpl;
+import org.hibernate.tool.schema.internal.SchemaManagementToolInitiator;
+import org.hibernate.tool.schema.internal.exec.JdbcContext;
+import org.hibernate.tool.schema.spi.ExecutionOptions;
+import org.hibernate.tool.schema.spi.SchemaCreator;
+import org.hibernate.tool.schema.spi.SchemaFilter;
+import org.hibernate.tool.schema.spi.SchemaFilterProvider;
+import org.hibernate.tool.schema.spi.SchemaManagementTool;
+import org.hibernate.tool.schema.spi.SchemaMigrator;
+import org.hibernate.tool.schema.spi.SchemaValidator;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - schema management tool
+ * 
+ * Speeds up "hibernate.hbm2ddl.auto" = "validate" and "update": Hibernate
+ * reads the database schema through {@link DatabaseMetaData}, table by table,
+ * and each of those calls is a query against the UCanAccess metadata views.
+ * This tool hands Hibernate a {@link DatabaseMetaData} that answers the
+ * table, column, primary key, index and foreign key calls from a
+ * {@link UCanAccessSchemaSnapshot}, which reads the whole schema in one pass
+ * and is reused for as long as the database file is unchanged. Everything
+ * else (and any connection that is not a UCanAccess connection) goes
+ * straight to the driver.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * hibernate.schema_management_tool = net.ucanaccess.hibernate.dialect.UCanAccessSchemaManagementTool
+ * </pre>
+ * 
+ * The snapshots are also kept in files if
+ * {@link UCanAccessSettings#SCHEMA_CACHE_DIRECTORY} (or, failing that,
+ * {@link UCanAccessSettings#MIRROR_CACHE_DIRECTORY}) is set, so that they
+ * survive a restart.
+ * 
+ * Its validation also accepts the columns of the CURRENCY type
+ * ({@link UCanAccessDialectCurrencyTypeDescriptor}), which the driver reports
+ * as DECIMAL and the snapshot as MONEY. Without the setting above, a
+ * {@link UCanAccessDialect} SessionFactory gets this tool without the
+ * snapshots, so that "validate" accepts them there too.
+ * 
+ * Each create and update run starts by clearing the tables that the dialect's
+ * {@link UCanAccessDialectUniqueDelegate} remembers from earlier runs.
+ * 
+ */
+public class UCanAccessSchemaManagementTool extends HibernateSchemaManagementTool {
+
+    private final boolean snapshots;
+
+    public UCanAccessSchemaManagementTool() {
+        this(true);
+    }
+
+    UCanAccessSchemaManagementTool(boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    @Override
+    public DdlTransactionIsolator getDdlTransactionIsolator(JdbcContext jdbcContext) {
+        if (!snapshots) {
+            return super.getDdlTransactionIsolator(jdbcContext);
+        }
+        return new SnapshotIsolator(super.getDdlTransactionIsolator(jdbcContext));
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SchemaCreator getSchemaCreator(Map options) {
+        SchemaCreator creator = super.getSchemaCreator(options);
+        return (metadata, executionOptions, sourceDescriptor, targetDescriptor) -> {
+            startRun();
+            creator.doCreation(metadata, executionOptions, sourceDescriptor, targetDescriptor);
+        };
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SchemaMigrator getSchemaMigrator(Map options) {
+        SchemaMigrator migrator = super.getSchemaMigrator(options);
+        return (metadata, executionOptions, targetDescriptor) -> {
+            startRun();
+            migrator.doMigration(metadata, executionOptions, targetDescriptor);
+        };
+    }
+
+    private void startRun() {
+        Dialect dialect = getServiceRegistry().getService(JdbcServices.class).getDialect();
+        if (dialect.getUniqueDelegate() instanceof UCanAccessDialectUniqueDelegate) {
+            ((UCanAccessDialectUniqueDelegate) dialect.getUniqueDelegate()).startRun();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SchemaValidator getSchemaValidator(Map options) {
+        // (as HibernateSchemaManagementTool does it)
+        SchemaFilter filter = getServiceRegistry().getService(StrategySelector.class)
+                .resolveDefaultableStrategy(SchemaFilterProvider.class,
+                        options == null ? null : options.get(AvailableSettings.HBM2DDL_FILTER_PROVIDER),
+                        DefaultSchemaFilterProvider.INSTANCE)
+                .getValidateFilter();
+        if (JdbcMetadaAccessStrategy.interpretSetting(options) == JdbcMetadaAccessStrategy.GROUPED) {
+            return new GroupedSchemaValidatorImpl(this, filter) {
+                @Override
+                protected void validateColumnType(Table table, Column column, ColumnInformation columnInformation,
+                        Metadata metadata, ExecutionOptions options, Dialect dialect) {
+                    if (!isCurrencyColumn(column, columnInformation, metadata)) {
+                        super.validateColumnType(table, column, columnInformation, metadata, options, dialect);
+                    }
+                }
+            };
+        }
+        return new IndividuallySchemaValidatorImpl(this, filter) {
+            @Override
+            protected void validateColumnType(Table table, Column column, ColumnInformation columnInformation,
+                    Metadata metadata, ExecutionOptions options, Dialect dialect) {
+                if (!isCurrencyColumn(column, columnInformation, metadata)) {
+                    super.validateColumnType(table, column, columnInformation, metadata, options, dialect);
+                }
+            }
+        };
+    }
+
+    /**
+     * Tells whether a column mapped to CURRENCY is one, as far as the
+     * metadata can tell (its type code is not a JDBC type code, so Hibernate's
+     * own comparison never matches)
+     */
+    static boolean isCurrencyColumn(Column column, ColumnInformation columnInformation, Metadata metadata) {
+        if (column.getSqlTypeCode(metadata) != UCanAccessDialectCurrencyTypeDescriptor.CURRENCY) {
+            return false;
+        }
+        String typeName = columnInformation.getTypeName();
+        return columnInformation.getTypeCode() == Types.DECIMAL || "MONEY".equalsIgnoreCase(typeName)
+                || "CURRENCY".equalsIgnoreCase(typeName);
+    }
+
+    private DatabaseMetaData snapshotMetaData(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String databasePath = UCanAccessUrl.databasePath(metaData.getURL());
+        if (databasePath == null) {
+            return metaData;
+        }
+        @SuppressWarnings("rawtypes")
+        Map settings = getServiceRegistry().getService(ConfigurationService.class).getSettings();
+        String directory = ConfigurationHelper.getString(UCanAccessSettings.SCHEMA_CACHE_DIRECTORY, settings,
+                ConfigurationHelper.getString(UCanAccessSettings.MIRROR_CACHE_DIRECTORY, settings));
+        UCanAccessSchemaSnapshot snapshot = UCanAccessSchemaSnapshot.get(connection, new File(databasePath),
+                directory == null || directory.trim().isEmpty() ? null : new File(directory.trim()),
+                UCanAccessMirrorCache.hashMode(settings));
+        if (snapshot == null) {
+            return metaData;
+        }
+        return (DatabaseMetaData) Proxy.newProxyInstance(UCanAccessSchemaManagementTool.class.getClassLoader(),
+                new Class<?>[] { DatabaseMetaData.class }, new SnapshotMetaData(metaData, snapshot));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Hands out the isolated connection with its metadata replaced
+     */
+    private final class SnapshotIsolator implements DdlTransactionIsolator {
+        private final DdlTransactionIsolator delegate;
+        private Connection connection;
+        private Connection proxy;
+        private DatabaseMetaData metaData;
+
+        SnapshotIsolator(DdlTransactionIsolator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public JdbcContext getJdbcContext() {
+            return delegate.getJdbcContext();
+        }
+
+        // abstract in Hibernate 5.4 although deprecated, so it still has to be passed on
+        @Override
+        @SuppressWarnings("deprecation")
+        public void prepare() {
+            delegate.prepare();
+        }
+
+        @Override
+        public Connection getIsolatedConnection() {
+            Connection isolated = delegate.getIsolatedConnection();
+            if (isolated != connection) {
+                connection = isolated;
+                metaData = null;
+                proxy = (Connection) Proxy.newProxyInstance(UCanAccessSchemaManagementTool.class.getClassLoader(),
+                        new Class<?>[] { Connection.class }, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                if (method.getName().equals("getMetaData")) {
+                                    if (metaData == null) {
+                                        metaData = snapshotMetaData(isolated);
+                                    }
+                                    return metaData;
+                                }
+                                return UCanAccessSchemaManagementTool.invoke(isolated, method, args);
+                            }
+                        });
+            }
+            return proxy;
+        }
+
+        @Override
+        public void release() {
+            delegate.release();
+        }
+    }
+
+    /**
+     * Answers the schema calls from the snapshot
+     */
+    private static final class SnapshotMetaData implements InvocationHandler {
+        private final DatabaseMetaData target;
+        private final UCanAccessSchemaSnapshot snapshot;
+
+        SnapshotMetaData(DatabaseMetaData target, UCanAccessSchemaSnapshot snapshot) {
+            this.target = target;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "getTables":
+                return snapshot.getTables((String) args[2], (String[]) args[3]);
+            case "getColumns":
+                return snapshot.getColumns((String) args[2], (String) args[3]);
+            case "getPrimaryKeys":
+                if (args[2] != null) {
+                    return snapshot.getPrimaryKeys((String) args[2]);
+                }
+                break;
+            case "getIndexInfo":
+                if (args[2] != null) {
+                    return snapshot.getIndexInfo((String) args[2], (Boolean) args[3]);
+                }
+                break;
+            case "getImportedKeys":
+                if (args[2] != null) {
+                    return snapshot.getImportedKeys((String) args[2]);
+                }
+                break;
+            default:
+                break;
+            }
+            return UCanAccessSchemaManagementTool.invoke(target, method, args);
+        }
+    }
+
+    /**
+     * Initiates the schema tool (registered in
+     * META-INF/services/org.hibernate.service.spi.ServiceContributor): this
+     * tool without the snapshots for {@link UCanAccessDialect}, unless
+     * "hibernate.schema_management_tool" is set, and Hibernate's otherwise
+     */
+    public static final class Contributor
+            implements ServiceContributor, StandardServiceInitiator<SchemaManagementTool> {
+
+        @Override
+        public void contribute(StandardServiceRegistryBuilder serviceRegistryBuilder) {
+            serviceRegistryBuilder.addInitiator(this);
+        }
+
+        @Override
+        public Class<SchemaManagementTool> getServiceInitiated() {
+            return SchemaManagementTool.class;
+        }
+
+        @Override
+        public SchemaManagementTool initiateService(@SuppressWarnings("rawtypes") Map configurationValues,
+                ServiceRegistryImplementor registry) {
+            if (configurationValues.get(AvailableSettings.SCHEMA_MANAGEMENT_TOOL) == null
+                    && registry.getService(JdbcServices.class).getDialect() instanceof UCanAccessDialect) {
+                return new UCanAccessSchemaManagementTool(false);
+            }
+            return SchemaManagementToolInitiator.INSTANCE.initiateService(configurationValues, registry);
+        }
+    }
+
+}
@@ -0,0 +1,604 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessMirrorCache.HashMode;
+import net.ucanaccess.jdbc.UcanaccessConnection;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - cached schema metadata
+ * 
+ * The tables, columns, primary keys, indexes and foreign keys of an Access
+ * database, read in one pass: one {@link DatabaseMetaData} call for all the
+ * tables and one for all the columns, and one query each against the
+ * mirror's INFORMATION_SCHEMA for the keys and indexes (the same queries that
+ * UCanAccess runs for a single table, without the table condition). Going
+ * through {@link DatabaseMetaData} table by table would take three more
+ * metadata queries per table.
+ * 
+ * Snapshots are kept for the lifetime of the JVM and, if a directory is
+ * configured, in files, and are reused for as long as the database file
+ * keeps the fingerprint (size, modification time and content hash, see
+ * {@link UCanAccessMirrorCache}) that it had when the snapshot was taken.
+ * The files are plain properties files (one entry per non-null value, typed
+ * as a string, number or boolean); a file that cannot be parsed is ignored.
+ * 
+ * Used by {@link UCanAccessSchemaManagementTool}.
+ * 
+ */
+public final class UCanAccessSchemaSnapshot {
+
+    /** version of the file format, changed whenever the layout of the files changes */
+    private static final String FORMAT = "1";
+
+    private static final String FINGERPRINT_PREFIX = "fingerprint.";
+
+    /** (catalog and schema names are not shown, as in UCanAccess's own metadata) */
+    private static final String NULL_NAME = "CAST(NULL AS VARCHAR(128))";
+
+    private static final String PRIMARY_KEYS_QUERY = "SELECT "
+            + NULL_NAME + " AS TABLE_CAT, " + NULL_NAME + " AS TABLE_SCHEM,"
+            + " r.TABLE_NAME AS TABLE_NAME, r.COLUMN_NAME AS COLUMN_NAME, l.KEY_SEQ, l.PK_NAME"
+            + " FROM INFORMATION_SCHEMA.SYSTEM_PRIMARYKEYS l INNER JOIN UCA_METADATA.COLUMNS_VIEW r"
+            + " ON (l.TABLE_NAME = r.ESCAPED_TABLE_NAME AND l.COLUMN_NAME = r.ESCAPED_COLUMN_NAME)"
+            + " WHERE l.TABLE_SCHEM = 'PUBLIC'"
+            + " ORDER BY r.TABLE_NAME, l.KEY_SEQ";
+
+    private static final String INDEXES_QUERY = "SELECT "
+            + NULL_NAME + " AS TABLE_CAT, " + NULL_NAME + " AS TABLE_SCHEM,"
+            + " r.TABLE_NAME AS TABLE_NAME, l.NON_UNIQUE, l.INDEX_QUALIFIER, l.INDEX_NAME, l.TYPE,"
+            + " l.ORDINAL_POSITION, r.COLUMN_NAME AS COLUMN_NAME, l.ASC_OR_DESC, l.CARDINALITY, l.PAGES,"
+            + " l.FILTER_CONDITION, l.ROW_CARDINALITY"
+            + " FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO l INNER JOIN UCA_METADATA.COLUMNS_VIEW r"
+            + " ON (l.TABLE_NAME = r.ESCAPED_TABLE_NAME AND l.COLUMN_NAME = r.ESCAPED_COLUMN_NAME)"
+            + " WHERE l.TABLE_SCHEM = 'PUBLIC'"
+            + " ORDER BY r.TABLE_NAME, l.NON_UNIQUE, l.TYPE, l.INDEX_NAME, l.ORDINAL_POSITION";
+
+    private static final String IMPORTED_KEYS_QUERY = "SELECT "
+            + NULL_NAME + " AS PKTABLE_CAT, " + NULL_NAME + " AS PKTABLE_SCHEM,"
+            + " v.TABLE_NAME AS PKTABLE_NAME, v.COLUMN_NAME AS PKCOLUMN_NAME, "
+            + NULL_NAME + " AS FKTABLE_CAT, " + NULL_NAME + " AS FKTABLE_SCHEM,"
+            + " r.TABLE_NAME AS FKTABLE_NAME,"
+            + " r.COLUMN_NAME AS FKCOLUMN_NAME, l.KEY_SEQ, l.UPDATE_RULE, l.DELETE_RULE, l.FK_NAME, l.PK_NAME,"
+            + " l.DEFERRABILITY"
+            + " FROM INFORMATION_SCHEMA.SYSTEM_CROSSREFERENCE l INNER JOIN UCA_METADATA.COLUMNS_VIEW r"
+            + " ON (l.FKTABLE_NAME = r.ESCAPED_TABLE_NAME AND l.FKCOLUMN_NAME = r.ESCAPED_COLUMN_NAME)"
+            + " INNER JOIN UCA_METADATA.COLUMNS_VIEW v"
+            + " ON (l.PKTABLE_NAME = v.ESCAPED_TABLE_NAME AND l.PKCOLUMN_NAME = v.ESCAPED_COLUMN_NAME)"
+            + " WHERE l.FKTABLE_SCHEM = 'PUBLIC'"
+            + " ORDER BY r.TABLE_NAME, v.TABLE_NAME, l.KEY_SEQ";
+
+    /** the most recent snapshot of each database file, by absolute path */
+    private static final ConcurrentMap<String, UCanAccessSchemaSnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    private final Properties fingerprint;
+    private final List<Map<String, Object>> tables;
+    private final List<Map<String, Object>> columns;
+    private final List<Map<String, Object>> primaryKeys;
+    private final List<Map<String, Object>> indexes;
+    private final List<Map<String, Object>> importedKeys;
+
+    private UCanAccessSchemaSnapshot(Properties fingerprint, Connection connection, Connection hsqldb)
+            throws SQLException {
+        this.fingerprint = fingerprint;
+        DatabaseMetaData metaData = connection.getMetaData();
+        tables = rows(metaData.getTables(null, null, "%", null));
+        columns = rows(metaData.getColumns(null, null, "%", "%"));
+        for (Map<String, Object> column : columns) {
+            // report the Access type (MEMO, OLE, NUMERIC, MONEY, ...) rather than the type of the
+            // mirror's column, which depends on whether the mirror was loaded from the file or
+            // altered by DDL; mostly, that is the type name that the dialect's DDL uses, and so what
+            // Hibernate compares it with when it validates the column (CURRENCY columns are MONEY,
+            // which the tool's validation accepts)
+            Object originalType = column.get("ORIGINAL_TYPE");
+            if (originalType != null) {
+                column.put("TYPE_NAME", originalType);
+            }
+        }
+        try (Statement st = hsqldb.createStatement()) {
+            primaryKeys = rows(st.executeQuery(PRIMARY_KEYS_QUERY));
+            indexes = rows(st.executeQuery(INDEXES_QUERY));
+            importedKeys = rows(st.executeQuery(IMPORTED_KEYS_QUERY));
+        }
+    }
+
+    private UCanAccessSchemaSnapshot(Properties fingerprint, Properties props) {
+        this.fingerprint = fingerprint;
+        tables = load(props, "tables");
+        columns = load(props, "columns");
+        primaryKeys = load(props, "primaryKeys");
+        indexes = load(props, "indexes");
+        importedKeys = load(props, "importedKeys");
+    }
+
+    /**
+     * Returns the schema of a database, read through a connection to it
+     * unless an earlier snapshot (in memory, or in the directory if it is not
+     * null) is still valid, or null if the connection is not a UCanAccess
+     * connection.
+     */
+    static UCanAccessSchemaSnapshot get(Connection connection, File databaseFile, File directory,
+            HashMode hashMode) throws SQLException {
+        UcanaccessConnection ucaConnection;
+        if (connection instanceof UcanaccessConnection) {
+            ucaConnection = (UcanaccessConnection) connection;
+        } else if (connection.isWrapperFor(UcanaccessConnection.class)) {
+            ucaConnection = connection.unwrap(UcanaccessConnection.class);
+        } else {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        // taken before the schema is read, so that changes made meanwhile invalidate the snapshot
+        Properties fingerprint = UCanAccessMirrorCache.fingerprint(databaseFile, hashMode);
+        String key = databaseFile.getAbsolutePath();
+        File file = directory == null ? null
+                : new File(directory, UCanAccessMirrorCache.baseName(databaseFile) + ".schema");
+
+        UCanAccessSchemaSnapshot snapshot = SNAPSHOTS.get(key);
+        if ((snapshot == null || !snapshot.fingerprint.equals(fingerprint)) && file != null) {
+            snapshot = read(file);
+        }
+        boolean cached = snapshot != null && snapshot.fingerprint.equals(fingerprint);
+        if (!cached) {
+            snapshot = new UCanAccessSchemaSnapshot(fingerprint, ucaConnection,
+                    ucaConnection.getHSQLDBConnection());
+            if (file != null) {
+                snapshot.write(file);
+            }
+        }
+        SNAPSHOTS.put(key, snapshot);
+        UCanAccessMetrics.getInstance().schemaRead(System.nanoTime() - start, cached);
+        return snapshot;
+    }
+
+    /**
+     * Forgets the snapshots kept in memory (but not those in files)
+     */
+    public static void clear() {
+        SNAPSHOTS.clear();
+    }
+
+    private static UCanAccessSchemaSnapshot read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            // the schema will simply be read again
+            return null;
+        }
+        if (!FORMAT.equals(props.getProperty("format"))) {
+            return null;
+        }
+        Properties fingerprint = new Properties();
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith(FINGERPRINT_PREFIX)) {
+                fingerprint.setProperty(name.substring(FINGERPRINT_PREFIX.length()), props.getProperty(name));
+            }
+        }
+        try {
+            return new UCanAccessSchemaSnapshot(fingerprint, props);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void write(File file) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        try {
+            File tmp = new File(file.getPath() + ".tmp");
+            Properties props = new Properties();
+            props.setProperty("format", FORMAT);
+            for (String name : fingerprint.stringPropertyNames()) {
+                props.setProperty(FINGERPRINT_PREFIX + name, fingerprint.getProperty(name));
+            }
+            store(props, "tables", tables);
+            store(props, "columns", columns);
+            store(props, "primaryKeys", primaryKeys);
+            store(props, "indexes", indexes);
+            store(props, "importedKeys", importedKeys);
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                props.store(out, "UCanAccess schema snapshot");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the schema will simply be read again next time
+            file.delete();
+        }
+    }
+
+    /**
+     * Adds rows to the properties as "name.rows" (the number of rows),
+     * "name.columns" (the column names, separated by commas) and
+     * "name.row.column" (each value that is not null)
+     */
+    private static void store(Properties props, String name, List<Map<String, Object>> rows) {
+        props.setProperty(name + ".rows", String.valueOf(rows.size()));
+        if (!rows.isEmpty()) {
+            props.setProperty(name + ".columns", String.join(",", rows.get(0).keySet()));
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            for (Map.Entry<String, Object> entry : rows.get(i).entrySet()) {
+                if (entry.getValue() != null) {
+                    props.setProperty(name + "." + i + "." + entry.getKey(), encode(entry.getValue()));
+                }
+            }
+        }
+    }
+
+    /** reads back what {@link #store(Properties, String, List)} wrote */
+    private static List<Map<String, Object>> load(Properties props, String name) {
+        int count = Integer.parseInt(required(props, name + ".rows"));
+        if (count < 0 || count > props.size()) {
+            throw new IllegalArgumentException("Invalid row count for " + name + ": " + count);
+        }
+        String[] columnNames = count == 0 ? new String[0] : required(props, name + ".columns").split(",");
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String column : columnNames) {
+                String value = props.getProperty(name + "." + i + "." + column);
+                row.put(column, value == null ? null : decode(value));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String required(Properties props, String name) {
+        String value = props.getProperty(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value;
+    }
+
+    /** the value, prefixed with its type (other types are kept as strings) */
+    private static String encode(Object value) {
+        if (value instanceof Boolean) {
+            return "b:" + value;
+        }
+        if (value instanceof Short) {
+            return "h:" + value;
+        }
+        if (value instanceof Integer) {
+            return "i:" + value;
+        }
+        if (value instanceof Long) {
+            return "l:" + value;
+        }
+        if (value instanceof Number) {
+            return "n:" + value;
+        }
+        return "s:" + value;
+    }
+
+    private static Object decode(String value) {
+        String text = value.substring(Math.min(2, value.length()));
+        switch (value.length() < 2 || value.charAt(1) != ':' ? "" : value.substring(0, 1)) {
+        case "b":
+            return Boolean.valueOf(text);
+        case "h":
+            return Short.valueOf(text);
+        case "i":
+            return Integer.valueOf(text);
+        case "l":
+            return Long.valueOf(text);
+        case "n":
+            return new BigDecimal(text);
+        case "s":
+            return text;
+        default:
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+    }
+
+    private static List<Map<String, Object>> rows(ResultSet rs) throws SQLException {
+        try {
+            ResultSetMetaData rsmd = rs.getMetaData();
+            List<Map<String, Object>> rows = new ArrayList<>();
+            while (rs.next()) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+                    row.put(rsmd.getColumnLabel(i).toUpperCase(Locale.ROOT), rs.getObject(i));
+                }
+                rows.add(row);
+            }
+            return rows;
+        } finally {
+            rs.close();
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // the DatabaseMetaData calls that Hibernate's schema tools make
+    // ---------------------------------------------------------------
+
+    ResultSet getTables(String tableNamePattern, String[] types) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        Pattern tablePattern = like(tableNamePattern);
+        for (Map<String, Object> row : tables) {
+            if (matches(tablePattern, row.get("TABLE_NAME")) && hasType(types, row.get("TABLE_TYPE"))) {
+                result.add(row);
+            }
+        }
+        return resultSet(result);
+    }
+
+    ResultSet getColumns(String tableNamePattern, String columnNamePattern) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        Pattern tablePattern = like(tableNamePattern);
+        Pattern columnPattern = like(columnNamePattern);
+        for (Map<String, Object> row : columns) {
+            if (matches(tablePattern, row.get("TABLE_NAME")) && matches(columnPattern, row.get("COLUMN_NAME"))) {
+                result.add(row);
+            }
+        }
+        return resultSet(result);
+    }
+
+    ResultSet getPrimaryKeys(String table) {
+        return resultSet(forTable(primaryKeys, "TABLE_NAME", table, false));
+    }
+
+    ResultSet getIndexInfo(String table, boolean unique) {
+        return resultSet(forTable(indexes, "TABLE_NAME", table, unique));
+    }
+
+    ResultSet getImportedKeys(String table) {
+        return resultSet(forTable(importedKeys, "FKTABLE_NAME", table, false));
+    }
+
+    private static List<Map<String, Object>> forTable(List<Map<String, Object>> rows, String tableColumn,
+            String table, boolean unique) {
+        String name = normalizeName(table);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            if (name.equalsIgnoreCase((String) row.get(tableColumn))
+                    && !(unique && Boolean.TRUE.equals(row.get("NON_UNIQUE")))) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static String normalizeName(String name) {
+        name = name.trim();
+        if (name.length() > 1 && (name.startsWith("\"") && name.endsWith("\"")
+                || name.startsWith("[") && name.endsWith("]"))) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    /**
+     * Returns a case-insensitive regular expression for a metadata search
+     * pattern ("%" for any characters, "_" for any one character, "\" to
+     * escape either), or null if the pattern matches everything.
+     */
+    private static Pattern like(String pattern) {
+        if (pattern == null || pattern.equals("%")) {
+            return null;
+        }
+        pattern = normalizeName(pattern);
+        StringBuilder regex = new StringBuilder(pattern.length() + 16);
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+
+    private static boolean matches(Pattern pattern, Object value) {
+        return pattern == null || value != null && pattern.matcher(value.toString()).matches();
+    }
+
+    private static boolean hasType(String[] types, Object type) {
+        if (types == null) {
+            return true;
+        }
+        for (String t : types) {
+            if (t.equalsIgnoreCase(String.valueOf(type))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResultSet resultSet(List<Map<String, Object>> rows) {
+        return (ResultSet) Proxy.newProxyInstance(UCanAccessSchemaSnapshot.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new Rows(rows));
+    }
+
+    /**
+     * A forward-only result set over the rows of a snapshot; only offers the
+     * getters that metadata readers use.
+     */
+    private static final class Rows implements InvocationHandler {
+        private final List<Map<String, Object>> rows;
+        private int index = -1;
+        private boolean wasNull;
+        private boolean closed;
+
+        Rows(List<Map<String, Object>> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "UCanAccessSchemaSnapshot.Rows[" + rows.size() + " rows]";
+            case "close":
+                closed = true;
+                return null;
+            case "isClosed":
+                return closed;
+            case "next":
+                return ++index < rows.size();
+            case "wasNull":
+                return wasNull;
+            case "getStatement":
+                return null;
+            case "getType":
+                return ResultSet.TYPE_FORWARD_ONLY;
+            case "getConcurrency":
+                return ResultSet.CONCUR_READ_ONLY;
+            case "isWrapperFor":
+                return false;
+            case "findColumn":
+                return columnIndex((String) args[0]);
+            case "getObject":
+            case "getString":
+            case "getInt":
+            case "getShort":
+            case "getLong":
+            case "getBoolean":
+                if (args.length == 1) {
+                    return convert(method.getName(), value(args[0]));
+                }
+                break;
+            default:
+                break;
+            }
+            throw new SQLFeatureNotSupportedException(method.getName());
+        }
+
+        private int columnIndex(String label) throws SQLException {
+            int i = 1;
+            for (String name : currentRow().keySet()) {
+                if (name.equalsIgnoreCase(label)) {
+                    return i;
+                }
+                i++;
+            }
+            throw new SQLException("Column not found: " + label);
+        }
+
+        private Map<String, Object> currentRow() throws SQLException {
+            if (closed) {
+                throw new SQLException("ResultSet is closed");
+            }
+            if (index < 0 || index >= rows.size()) {
+                throw new SQLException("No current row");
+            }
+            return rows.get(index);
+        }
+
+        private Object value(Object column) throws SQLException {
+            Map<String, Object> row = currentRow();
+            Object value;
+            if (column instanceof Integer) {
+                int i = (Integer) column;
+                if (i < 1 || i > row.size()) {
+                    throw new SQLException("Column index out of range: " + i);
+                }
+                value = new ArrayList<>(row.values()).get(i - 1);
+            } else {
+                String label = ((String) column).toUpperCase(Locale.ROOT);
+                if (!row.containsKey(label)) {
+                    throw new SQLException("Column not found: " + column);
+                }
+                value = row.get(label);
+            }
+            wasNull = value == null;
+            return value;
+        }
+
+        private static Object convert(String getter, Object value) {
+            switch (getter) {
+            case "getString":
+                return value == null ? null : value.toString();
+            case "getInt":
+                return (int) toLong(value);
+            case "getShort":
+                return (short) toLong(value);
+            case "getLong":
+                return toLong(value);
+            case "getBoolean":
+                if (value instanceof String) {
+                    return Boolean.parseBoolean((String) value) || value.equals("1");
+                }
+                return value instanceof Boolean ? (Boolean) value : toLong(value) != 0;
+            default:
+                return value;
+            }
+        }
+
+        private static long toLong(Object value) {
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            if (value instanceof Boolean) {
+                return (Boolean) value ? 1 : 0;
+            }
+            return Long.parseLong(value.toString().trim());
+        }
+    }
+
+}
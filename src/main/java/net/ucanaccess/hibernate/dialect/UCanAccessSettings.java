@@ -0,0 +1,212 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - names of the configuration settings
+ * (hibernate.cfg.xml properties, etc.) used by the classes in this package
+ * 
+ */
+public interface UCanAccessSettings {
+
+    // -----------------------------------------
+    // UCanAccessConnectionProvider (connection pool)
+    // -----------------------------------------
+
+    /**
+     * Number of connections opened when the SessionFactory starts (default 1).
+     * The maximum number of connections is set with "hibernate.connection.pool_size".
+     */
+    String POOL_MIN_SIZE = "hibernate.ucanaccess.pool.min_size";
+
+    /**
+     * Milliseconds to wait for a free connection before giving up (default 30000)
+     */
+    String POOL_TIMEOUT = "hibernate.ucanaccess.pool.timeout";
+
+    /**
+     * Connections that have been idle for longer than this many milliseconds
+     * are validated before they are handed out (default 30000)
+     */
+    String POOL_IDLE_VALIDATION = "hibernate.ucanaccess.pool.idle_validation";
+
+    /**
+     * Query results with more rows than this are kept in the mirror's disk
+     * files instead of the heap while they are read. Only has an effect if
+     * the mirror is on disk (UCanAccess option "memory=false"), in which case
+     * the default is 10000; "0" turns it off.
+     */
+    String RESULT_MEMORY_ROWS = "hibernate.ucanaccess.result_memory_rows";
+
+    /**
+     * Maximum number of SQL statement translations kept by
+     * {@link UCanAccessSqlTranslationCache}, e.g., "1000" (default "0": no
+     * cache). The cache relies on UCanAccess internals, so it is opt-in.
+     */
+    String SQL_CACHE_SIZE = "hibernate.ucanaccess.sql_cache.size";
+
+    /**
+     * Maximum number of connections in the read-only pool of
+     * {@link UCanAccessRoutingConnectionProvider} (default: the number of
+     * processors)
+     */
+    String READ_POOL_SIZE = "hibernate.ucanaccess.read_pool.size";
+
+    /**
+     * Whether {@link UCanAccessRoutingConnectionProvider} switches the mirror
+     * to multi-version concurrency control, so that readers do not wait for
+     * the locks of uncommitted writes; conflicting writes then fail instead of
+     * waiting (default "false")
+     */
+    String READ_POOL_MVCC = "hibernate.ucanaccess.read_pool.mvcc";
+
+    // -----------------------------------------
+    // UCanAccessMultiTenantConnectionProvider (one database per tenant)
+    // -----------------------------------------
+
+    /**
+     * Connection URL of the tenants' databases, with "{tenant}" where the
+     * tenant identifier goes, e.g.,
+     * "jdbc:ucanaccess://C:/branches/{tenant}.accdb;memory=true"
+     */
+    String TENANT_URL = "hibernate.ucanaccess.tenant.url";
+
+    /**
+     * Tenant whose database Hibernate uses when it needs a connection that is
+     * not tied to a tenant (database metadata, the schema tool, the warm-up)
+     */
+    String TENANT_DEFAULT = "hibernate.ucanaccess.tenant.default";
+
+    /**
+     * Maximum number of tenant databases whose mirrors are kept loaded
+     * (default 10)
+     */
+    String TENANT_MAX_LOADED = "hibernate.ucanaccess.tenant.max_loaded";
+
+    /**
+     * Maximum total size, in megabytes, of the database files whose mirrors
+     * are kept loaded (default 0, i.e., no limit)
+     */
+    String TENANT_MEMORY_BUDGET = "hibernate.ucanaccess.tenant.memory_budget";
+
+    /**
+     * Comma-separated identifiers of the tenants whose databases are loaded
+     * when the SessionFactory starts and never unloaded. Not set by default.
+     */
+    String TENANT_PINNED = "hibernate.ucanaccess.tenant.pinned";
+
+    // -----------------------------------------
+    // connection options
+    // -----------------------------------------
+
+    /**
+     * Prefix for UCanAccess connection options that are added to the
+     * connection URL by {@link UCanAccessConnectionProvider}, e.g.,
+     * "hibernate.ucanaccess.option.memory" = "false" adds ";memory=false".
+     */
+    String OPTION_PREFIX = "hibernate.ucanaccess.option.";
+
+    /**
+     * Directory in which the HSQLDB mirror of the database is kept between
+     * runs (see {@link UCanAccessMirrorCache}). Not set by default, i.e., the
+     * mirror is rebuilt every time the SessionFactory starts.
+     */
+    String MIRROR_CACHE_DIRECTORY = "hibernate.ucanaccess.mirror_cache.directory";
+
+    /**
+     * How much of the database file is hashed to decide whether a cached
+     * mirror (or schema snapshot) is still valid: "none" (size and modification time only),
+     * "sampled" (first and last megabyte, the default) or "full".
+     */
+    String MIRROR_CACHE_HASH = "hibernate.ucanaccess.mirror_cache.hash";
+    // -----------------------------------------
+    // UCanAccessSchemaManagementTool
+    // -----------------------------------------
+    /**
+     * Directory in which {@link UCanAccessSchemaManagementTool} keeps the
+     * schema snapshots between runs (default: the mirror cache directory, if
+     * any). The snapshots are checked against the database file in the same
+     * way as the mirror, see {@link #MIRROR_CACHE_HASH}.
+     */
+    String SCHEMA_CACHE_DIRECTORY = "hibernate.ucanaccess.schema_cache.directory";
+
+    // -----------------------------------------
+    // UCanAccessWarmUp
+    // -----------------------------------------
+
+    /**
+     * Whether {@link UCanAccessWarmUp} runs when the SessionFactory starts
+     * (default "true"); it only prepares the named queries and the entity
+     * statements if {@link #SQL_CACHE_SIZE} is set
+     */
+    String WARMUP = "hibernate.ucanaccess.warmup";
+
+    /**
+     * Comma-separated names of the tables (and their indexes) that are read
+     * when the SessionFactory starts, or "*" for all mapped tables. Not set
+     * by default.
+     */
+    String WARMUP_TABLES = "hibernate.ucanaccess.warmup.tables";
+
+    // -----------------------------------------
+    // UCanAccessFetchMonitor
+    // -----------------------------------------
+
+    /**
+     * Whether {@link UCanAccessFetchMonitor} counts the lazy loads of every
+     * session (default "true")
+     */
+    String FETCH_MONITOR = "hibernate.ucanaccess.fetch_monitor";
+
+    /**
+     * Number of lazy loads of the same collection role (or entity name) in one
+     * session at which the monitor reports a suspected N+1 pattern (default 10)
+     */
+    String FETCH_MONITOR_THRESHOLD = "hibernate.ucanaccess.fetch_monitor.threshold";
+
+    /**
+     * Batch size that the monitor applies to a collection role (or entity
+     * name) once it has reported it, for all later lazy loads (default 0,
+     * i.e., only report)
+     */
+    String FETCH_AUTO_BATCH_SIZE = "hibernate.ucanaccess.fetch_monitor.auto_batch_size";
+
+    /**
+     * Prefix of the settings that tune the fetching of single collection roles
+     * or entities when the SessionFactory starts, e.g.,
+     * "hibernate.ucanaccess.fetch.com.example.Event.guests" = "32" (batch size)
+     * or "subselect"
+     */
+    String FETCH_PREFIX = "hibernate.ucanaccess.fetch.";
+
+    // -----------------------------------------
+    // UCanAccessRegionFactory (second-level cache)
+    // -----------------------------------------
+
+    /**
+     * Maximum number of entries in each entity, collection and query cache
+     * region (default 10000)
+     */
+    String CACHE_MAX_ENTRIES = "hibernate.ucanaccess.cache.max_entries";
+
+    /**
+     * Milliseconds between checks of the database file's size and
+     * modification time (default 1000)
+     */
+    String CACHE_POLL_INTERVAL = "hibernate.ucanaccess.cache.poll_interval";
+
+}
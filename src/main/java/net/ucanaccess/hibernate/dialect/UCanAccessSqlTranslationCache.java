@@ -0,0 +1,281 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.HibernateException;
+import org.hibernate.internal.util.collections.BoundedConcurrentHashMap;
+
+import net.ucanaccess.converters.Pivot;
+import net.ucanaccess.converters.SQLConverter;
+import net.ucanaccess.jdbc.NormalizedSQL;
+import net.ucanaccess.jdbc.UcanaccessConnection;
+import net.ucanaccess.jdbc.UcanaccessPreparedStatement;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - cache of translated SQL statements
+ * 
+ * Every time a statement is prepared, UCanAccess translates it from Access SQL
+ * (square brackets, Access functions, date literals, ...) into the HSQLDB SQL
+ * of its mirror, which typically takes several hundred microseconds, while
+ * preparing the translated statement in HSQLDB takes a few. Hibernate
+ * prepares the same few statements over and over again, so this cache keeps
+ * the translation of each distinct SQL string (least recently used ones are
+ * evicted first) and prepares the translated statement in the mirror
+ * directly.
+ * 
+ * Used by {@link UCanAccessConnectionProvider}, whose connections share one
+ * cache, if {@link UCanAccessSettings#SQL_CACHE_SIZE} is set; it is off by
+ * default. DDL statements and statements that refer to "@@identity" are
+ * always left to UCanAccess, and a DDL statement empties the cache.
+ * 
+ * The cache goes around UcanaccessConnection.prepareStatement, so it depends
+ * on UCanAccess internals: it calls the private
+ * UcanaccessConnection.checkLastModified(), as UCanAccess itself does before
+ * it translates a statement, prepares the translated SQL on the HSQLDB
+ * connection and creates the UcanaccessPreparedStatement itself. If a version
+ * of UCanAccess does not have that method, creating the cache fails, so that
+ * an upgrade cannot silently stop the mirror from being reloaded.
+ * 
+ */
+public class UCanAccessSqlTranslationCache {
+
+    /**
+     * UcanaccessConnection.checkLastModified(), which reloads the mirror if the
+     * database file has been changed by another program; null if this version
+     * of UCanAccess does not have it
+     */
+    private static final MethodHandle CHECK_LAST_MODIFIED;
+
+    /** why CHECK_LAST_MODIFIED could not be found */
+    private static final Exception CHECK_LAST_MODIFIED_ERROR;
+
+    static {
+        MethodHandle handle = null;
+        Exception error = null;
+        try {
+            Method method = UcanaccessConnection.class.getDeclaredMethod("checkLastModified");
+            if (method.getReturnType() != void.class || Modifier.isStatic(method.getModifiers())) {
+                throw new NoSuchMethodException("Unexpected signature: " + method);
+            }
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            error = e;
+        }
+        CHECK_LAST_MODIFIED = handle;
+        CHECK_LAST_MODIFIED_ERROR = error;
+    }
+
+    private final Map<String, NormalizedSQL> translations;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UCanAccessSqlTranslationCache(int size) {
+        if (CHECK_LAST_MODIFIED == null) {
+            throw new HibernateException("The SQL translation cache needs UcanaccessConnection.checkLastModified(),"
+                    + " which this version of UCanAccess does not have; set " + UCanAccessSettings.SQL_CACHE_SIZE
+                    + " to 0", CHECK_LAST_MODIFIED_ERROR);
+        }
+        translations = new BoundedConcurrentHashMap<>(size, 16, BoundedConcurrentHashMap.Eviction.LRU);
+    }
+
+    /**
+     * Returns a connection that prepares statements through this cache (or
+     * the connection itself, if it is not a UCanAccess connection)
+     */
+    public Connection wrap(Connection connection) {
+        if (!(connection instanceof UcanaccessConnection)) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(UCanAccessSqlTranslationCache.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler((UcanaccessConnection) connection));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        return translations.size();
+    }
+
+    public void clear() {
+        translations.clear();
+    }
+
+    private PreparedStatement prepare(UcanaccessConnection connection, Method method, Object[] args)
+            throws Throwable {
+        String sql = (String) args[0];
+        if (SQLConverter.checkDDL(sql)) {
+            clear();
+            return (PreparedStatement) invoke(connection, method, args);
+        }
+        if (SQLConverter.hasIdentity(sql)) {
+            // the translation depends on the last generated key
+            return (PreparedStatement) invoke(connection, method, args);
+        }
+
+        // what UcanaccessConnection.prepareStatement does, apart from the translation itself
+        if (connection.getAutoCommit() || connection.isCheckModified()) {
+            CHECK_LAST_MODIFIED.invoke(connection);
+        }
+        NormalizedSQL translation = translations.get(sql);
+        if (translation == null) {
+            translation = SQLConverter.convertSQL(sql, connection);
+            translations.put(sql, translation);
+            misses.increment();
+            UCanAccessMetrics.getInstance().sqlTranslated(false);
+        } else {
+            Pivot.checkAndRefreshPivot(sql, connection);
+            hits.increment();
+            UCanAccessMetrics.getInstance().sqlTranslated(true);
+        }
+
+        Object[] hsqldbArgs = args.clone();
+        hsqldbArgs[0] = translation.getSql();
+        PreparedStatement hsqldbStatement;
+        try {
+            hsqldbStatement = (PreparedStatement) invoke(connection.getHSQLDBConnection(), method, hsqldbArgs);
+        } catch (SQLException e) {
+            // let UCanAccess report the error (or apply its own fallbacks)
+            return (PreparedStatement) invoke(connection, method, args);
+        }
+        return new UcanaccessPreparedStatement(translation, hsqldbStatement, connection);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final UcanaccessConnection connection;
+
+        ConnectionHandler(UcanaccessConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "prepareStatement":
+                return statement(proxy, prepare(connection, method, args), PreparedStatement.class);
+            case "prepareCall":
+                return statement(proxy, (Statement) UCanAccessSqlTranslationCache.invoke(connection, method, args),
+                        CallableStatement.class);
+            case "createStatement":
+                return statement(proxy, (Statement) UCanAccessSqlTranslationCache.invoke(connection, method, args),
+                        Statement.class);
+            case "unwrap":
+                if (((Class<?>) args[0]).isInstance(connection)) {
+                    return connection;
+                }
+                break;
+            case "isWrapperFor":
+                if (((Class<?>) args[0]).isInstance(connection)) {
+                    return true;
+                }
+                break;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+            }
+            return UCanAccessSqlTranslationCache.invoke(connection, method, args);
+        }
+    }
+
+    private Object statement(Object connectionProxy, Statement statement, Class<? extends Statement> type) {
+        return Proxy.newProxyInstance(UCanAccessSqlTranslationCache.class.getClassLoader(), new Class<?>[] { type },
+                new StatementHandler(statement, (Connection) connectionProxy));
+    }
+
+    /**
+     * Reports the wrapping connection from getConnection(), and empties the
+     * cache when DDL is executed through a plain statement
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final Connection connectionProxy;
+
+        StatementHandler(Statement statement, Connection connectionProxy) {
+            this.statement = statement;
+            this.connectionProxy = connectionProxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (args != null && args.length > 0 && args[0] instanceof String
+                    && (method.getName().startsWith("execute") || method.getName().equals("addBatch"))
+                    && SQLConverter.checkDDL((String) args[0])) {
+                clear();
+            }
+            switch (method.getName()) {
+            case "getConnection":
+                return connectionProxy;
+            case "unwrap":
+                if (((Class<?>) args[0]).isInstance(statement)) {
+                    return statement;
+                }
+                break;
+            case "isWrapperFor":
+                if (((Class<?>) args[0]).isInstance(statement)) {
+                    return true;
+                }
+                break;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+            }
+            return UCanAccessSqlTranslationCache.invoke(statement, method, args);
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.util.Map;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - statement inspector for
+ * {@link UCanAccessMetrics}
+ * 
+ * Remembers the SQL of the statement that the current thread is preparing so
+ * that {@link UCanAccessMetricsListener} can record how long it takes to
+ * execute; the listener takes it when the execution (or a batch) starts, so
+ * it is never attributed to a later statement. The SQL itself is not changed.
+ * Configure both:
+ * 
+ * <pre>
+ * &lt;property name="hibernate.session_factory.statement_inspector"&gt;net.ucanaccess.hibernate.dialect.UCanAccessStatementInspector&lt;/property&gt;
+ * &lt;property name="hibernate.session.events.auto"&gt;net.ucanaccess.hibernate.dialect.UCanAccessMetricsListener&lt;/property&gt;
+ * </pre>
+ * 
+ * With {@link UCanAccessConnectionProvider}, the rows returned by each
+ * statement are counted as well (see {@link UCanAccessRowCounter}).
+ * 
+ */
+public class UCanAccessStatementInspector implements StatementInspector {
+
+    private static final ThreadLocal<String> CURRENT_SQL = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        CURRENT_SQL.set(sql);
+        return sql;
+    }
+
+    /**
+     * Tells whether the settings make this class the statement inspector (as
+     * a class name, a class or an instance)
+     */
+    static boolean isConfigured(@SuppressWarnings("rawtypes") Map settings) {
+        Object setting = settings.get(AvailableSettings.STATEMENT_INSPECTOR);
+        if (setting instanceof Class) {
+            return UCanAccessStatementInspector.class.isAssignableFrom((Class<?>) setting);
+        }
+        if (setting instanceof String) {
+            return UCanAccessStatementInspector.class.getName().equals(((String) setting).trim());
+        }
+        return setting instanceof UCanAccessStatementInspector;
+    }
+
+    /**
+     * Returns the SQL most recently prepared by the current thread, if no
+     * execution has taken it yet, and forgets it
+     */
+    static String takeSql() {
+        String sql = CURRENT_SQL.get();
+        if (sql != null) {
+            CURRENT_SQL.remove();
+        }
+        return sql;
+    }
+
+}
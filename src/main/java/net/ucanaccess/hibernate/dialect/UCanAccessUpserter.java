@@ -0,0 +1,235 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.batch.internal.BasicBatchKey;
+import org.hibernate.engine.jdbc.batch.spi.Batch;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.jdbc.Expectations;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.type.Type;
+
+/**
+ *
+ * Hibernate dialect for UCanAccess - upserts (insert or update) of entities
+ *
+ * {@code Session.saveOrUpdate()} and {@code merge()} read a row before they
+ * insert or update it. This class writes each entity with a single MERGE
+ * statement (see {@link UCanAccessDialect#getUpsertString}) instead: the row
+ * with the entity's id is updated if it exists and inserted otherwise. The
+ * statements are sent in JDBC batches of {@code batchSize} through a
+ * {@link StatelessSession} and committed every {@code commitInterval} rows,
+ * as in {@link UCanAccessBulkLoader}.
+ *
+ * The entities must have their ids set (e.g., assigned natural keys such as
+ * an e-mail address), must not be versioned and must be mapped to a single
+ * table without inheritance. Only the entity's own columns are written, so
+ * collections (e.g., many-to-many links) are not. Updated entities are evicted
+ * from the second-level cache.
+ *
+ */
+public class UCanAccessUpserter {
+
+    public static final int DEFAULT_BATCH_SIZE = UCanAccessBulkLoader.DEFAULT_BATCH_SIZE;
+    public static final int DEFAULT_COMMIT_INTERVAL = UCanAccessBulkLoader.DEFAULT_COMMIT_INTERVAL;
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final UCanAccessDialect dialect;
+    private final int batchSize;
+    private final int commitInterval;
+    private final ConcurrentMap<String, Upsert> upserts = new ConcurrentHashMap<>();
+
+    public UCanAccessUpserter(SessionFactory sessionFactory) {
+        this(sessionFactory, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    public UCanAccessUpserter(SessionFactory sessionFactory, int batchSize, int commitInterval) {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("batchSize and commitInterval must be positive");
+        }
+        this.sessionFactory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+        Dialect dialect = this.sessionFactory.getJdbcServices().getDialect();
+        if (!(dialect instanceof UCanAccessDialect)) {
+            throw new IllegalArgumentException("Upserts need the UCanAccess dialect, not " + dialect);
+        }
+        this.dialect = (UCanAccessDialect) dialect;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    public UCanAccessBulkLoader.Result upsert(Stream<?> entities) {
+        return upsert(entities.iterator());
+    }
+
+    public UCanAccessBulkLoader.Result upsert(Iterable<?> entities) {
+        return upsert(entities.iterator());
+    }
+
+    public UCanAccessBulkLoader.Result upsert(Iterator<?> entities) {
+        long start = System.nanoTime();
+        long rows = 0;
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            session.setJdbcBatchSize(batchSize);
+            SharedSessionContractImplementor sessionImplementor = (SharedSessionContractImplementor) session;
+            Map<Upsert, List<Serializable>> written = new IdentityHashMap<>();
+            Transaction transaction = session.beginTransaction();
+            try {
+                while (entities.hasNext()) {
+                    Object entity = entities.next();
+                    Upsert upsert = upserts.computeIfAbsent(sessionImplementor.bestGuessEntityName(entity),
+                            this::prepare);
+                    Serializable id = upsert.add(sessionImplementor, entity);
+                    List<Serializable> ids = written.computeIfAbsent(upsert, k -> new ArrayList<>());
+                    if (upsert.persister.canWriteToCache()) {
+                        ids.add(id);
+                    }
+                    if (++rows % commitInterval == 0) {
+                        sessionImplementor.getJdbcCoordinator().executeBatch();
+                        transaction.commit();
+                        committed(sessionImplementor, written);
+                        transaction = session.beginTransaction();
+                    }
+                }
+                sessionImplementor.getJdbcCoordinator().executeBatch();
+                transaction.commit();
+                committed(sessionImplementor, written);
+            } catch (RuntimeException e) {
+                sessionImplementor.getJdbcCoordinator().abortBatch();
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        } finally {
+            session.close();
+        }
+        return new UCanAccessBulkLoader.Result(rows, System.nanoTime() - start);
+    }
+
+    /**
+     * Removes the written rows from the second-level cache, and the cached
+     * results of queries on their tables
+     */
+    private void committed(SharedSessionContractImplementor session, Map<Upsert, List<Serializable>> written) {
+        for (Map.Entry<Upsert, List<Serializable>> entry : written.entrySet()) {
+            EntityPersister persister = entry.getKey().persister;
+            for (Serializable id : entry.getValue()) {
+                sessionFactory.getCache().evictEntityData(persister.getEntityName(), id);
+            }
+            if (sessionFactory.getSessionFactoryOptions().isQueryCacheEnabled()) {
+                sessionFactory.getCache().getTimestampsCache().invalidate(persister.getPropertySpaces(), session);
+            }
+        }
+        written.clear();
+    }
+
+    private Upsert prepare(String entityName) {
+        EntityPersister persister = sessionFactory.getMetamodel().entityPersister(entityName);
+        if (!(persister instanceof SingleTableEntityPersister) || ((SingleTableEntityPersister) persister).isMultiTable()
+                || persister.isInherited() || persister.getEntityMetamodel().hasSubclasses()
+                || persister.isVersioned()) {
+            throw new IllegalArgumentException("Upserts are only supported for entities without a version, "
+                    + "mapped to a single table without inheritance, not " + entityName);
+        }
+        SingleTableEntityPersister tablePersister = (SingleTableEntityPersister) persister;
+        boolean[] insertable = persister.getPropertyInsertability();
+        boolean[] updatable = persister.getPropertyUpdateability();
+        List<Integer> properties = new ArrayList<>();
+        List<String> insertColumns = new ArrayList<>();
+        List<String> updateColumns = new ArrayList<>();
+        for (int i = 0; i < insertable.length; i++) {
+            String[] columns = tablePersister.getPropertyColumnNames(i);
+            // (collections have no columns in the entity's table)
+            if (!insertable[i] || columns.length == 0) {
+                continue;
+            }
+            properties.add(i);
+            for (String column : columns) {
+                insertColumns.add(column);
+                if (updatable[i]) {
+                    updateColumns.add(column);
+                }
+            }
+        }
+        String sql = dialect.getUpsertString(tablePersister.getTableName(), tablePersister.getIdentifierColumnNames(),
+                insertColumns.toArray(new String[0]), updateColumns.toArray(new String[0]));
+        return new Upsert(persister, sql, properties.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * The upsert statement of an entity
+     */
+    private static final class Upsert {
+        final EntityPersister persister;
+        final String sql;
+        final int[] properties;
+        // (MERGE counts one row, whether it inserts or updates)
+        final BatchKey batchKey;
+
+        Upsert(EntityPersister persister, String sql, int[] properties) {
+            this.persister = persister;
+            this.sql = sql;
+            this.properties = properties;
+            this.batchKey = new BasicBatchKey(persister.getEntityName() + "#UPSERT", Expectations.BASIC);
+        }
+
+        Serializable add(SharedSessionContractImplementor session, Object entity) {
+            Serializable id = persister.getIdentifier(entity, session);
+            if (id == null) {
+                throw new IllegalArgumentException("Cannot upsert " + persister.getEntityName() + " without an id");
+            }
+            Object[] values = persister.getPropertyValues(entity);
+            Type[] types = persister.getPropertyTypes();
+            Batch batch = session.getJdbcCoordinator().getBatch(batchKey);
+            PreparedStatement statement = batch.getBatchStatement(sql, false);
+            try {
+                int index = 1;
+                persister.getIdentifierType().nullSafeSet(statement, id, index, session);
+                index += persister.getIdentifierType().getColumnSpan(session.getFactory());
+                for (int property : properties) {
+                    types[property].nullSafeSet(statement, values[property], index, session);
+                    index += types[property].getColumnSpan(session.getFactory());
+                }
+            } catch (SQLException e) {
+                throw session.getJdbcServices().getSqlExceptionHelper().convert(e,
+                        "could not upsert " + persister.getEntityName(), sql);
+            }
+            batch.addToBatch();
+            return id;
+        }
+    }
+
+}
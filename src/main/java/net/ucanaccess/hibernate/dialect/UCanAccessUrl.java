@@ -0,0 +1,80 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - helpers for UCanAccess connection URLs,
+ * e.g., "jdbc:ucanaccess://C:/foo/bar.accdb;memory=false"
+ * 
+ */
+public final class UCanAccessUrl {
+
+    public static final String PREFIX = "jdbc:ucanaccess://";
+
+    private UCanAccessUrl() {
+    }
+
+    /**
+     * Returns the path of the database file ("C:/foo/bar.accdb" for the example
+     * above), or null if the URL is not a UCanAccess URL.
+     */
+    public static String databasePath(String url) {
+        if (url == null) {
+            return null;
+        }
+        url = url.trim();
+        if (!url.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            return null;
+        }
+        int end = url.indexOf(';');
+        return url.substring(PREFIX.length(), end < 0 ? url.length() : end).trim();
+    }
+
+    /**
+     * Returns the value of a connection option ("false" for "memory" in the
+     * example above), or null if the URL does not specify that option.
+     */
+    public static String option(String url, String name) {
+        String[] parts = url.trim().split(";");
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq >= 0 && parts[i].substring(0, eq).trim().equalsIgnoreCase(name)) {
+                return parts[i].substring(eq + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the URL with a connection option added (or replaced, if the URL
+     * already specifies that option).
+     */
+    public static String withOption(String url, String name, String value) {
+        StringBuilder sb = new StringBuilder(url.length() + name.length() + value.length() + 2);
+        String[] parts = url.trim().split(";");
+        sb.append(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            String partName = (eq < 0 ? parts[i] : parts[i].substring(0, eq)).trim();
+            if (!partName.isEmpty() && !partName.equalsIgnoreCase(name)) {
+                sb.append(';').append(parts[i].trim());
+            }
+        }
+        return sb.append(';').append(name).append('=').append(value).toString();
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.boot.Metadata;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.query.spi.ParameterParser;
+import org.hibernate.engine.spi.NamedQueryDefinition;
+import org.hibernate.engine.spi.NamedSQLQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Index;
+import org.hibernate.mapping.Table;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.jboss.logging.Logger;
+
+/**
+ * 
+ * Hibernate dialect for UCanAccess - warms up a new SessionFactory so that
+ * the first requests after a start are not slower than the rest
+ * 
+ * Run by {@link UCanAccessIntegrator} once the SessionFactory has been built
+ * (see {@link UCanAccessSettings#WARMUP}). It
+ * 
+ * <ul>
+ * <li>translates every named HQL query to SQL (filling Hibernate's query plan
+ * cache)</li>
+ * <li>prepares (and closes) the SQL of the named HQL and native queries and
+ * the insert, update, delete and snapshot statements of every entity once, so
+ * that their UCanAccess translations are in the
+ * {@link UCanAccessSqlTranslationCache} of
+ * {@link UCanAccessConnectionProvider}. HSQLDB forgets a compiled statement
+ * once it is closed, so nothing else is kept, and this step is skipped when
+ * the pool has no translation cache (see
+ * {@link UCanAccessSettings#SQL_CACHE_SIZE})</li>
+ * <li>reads the tables listed in {@link UCanAccessSettings#WARMUP_TABLES}
+ * and the first column of each of their indexes</li>
+ * </ul>
+ * 
+ * Statements that cannot be prepared are counted and skipped; if no
+ * connection can be obtained, that is counted as a failure and logged. The
+ * time taken is reported by {@link UCanAccessMetrics#getWarmUpMillis()}.
+ * 
+ */
+public class UCanAccessWarmUp {
+
+    private static final Logger LOG = Logger.getLogger(UCanAccessWarmUp.class);
+
+    private static final String[] ENTITY_SQL_METHODS = { "getSQLInsertStrings", "getSQLIdentityInsertString",
+            "getSQLUpdateStrings", "getSQLDeleteStrings", "getSQLSnapshotSelectString" };
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final Metadata metadata;
+    private final Set<String> tables;
+
+    private int statementCount;
+    private int failureCount;
+
+    /**
+     * @param tables
+     *            names of the tables to read (case-insensitive), or "*" for
+     *            all mapped tables
+     */
+    public UCanAccessWarmUp(SessionFactoryImplementor sessionFactory, Metadata metadata, Set<String> tables) {
+        this.sessionFactory = sessionFactory;
+        this.metadata = metadata;
+        this.tables = new LinkedHashSet<>();
+        for (String table : tables) {
+            this.tables.add(table.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Runs the warm-up on a connection of the SessionFactory's connection
+     * provider
+     */
+    public void run() {
+        long start = System.nanoTime();
+        statementCount = 0;
+        failureCount = 0;
+        Set<String> statements = collectStatements();
+        if (!statements.isEmpty() && !hasSqlTranslationCache()) {
+            // (preparing and closing them would leave nothing behind)
+            LOG.debugf("Not preparing %d statements: the connection pool has no SQL translation cache",
+                    statements.size());
+            statements.clear();
+        }
+        try {
+            Connection connection = sessionFactory.getJdbcServices().getBootstrapJdbcConnectionAccess()
+                    .obtainConnection();
+            try {
+                for (String sql : statements) {
+                    prepare(connection, sql);
+                }
+                touchTables(connection);
+            } finally {
+                sessionFactory.getJdbcServices().getBootstrapJdbcConnectionAccess().releaseConnection(connection);
+            }
+        } catch (SQLException e) {
+            // the warm-up must not stop the SessionFactory from starting
+            failureCount++;
+            LOG.warn("Unable to warm up the SessionFactory", e);
+        }
+        UCanAccessMetrics.getInstance().warmedUp(System.nanoTime() - start, statementCount, failureCount);
+    }
+
+    /** number of statements prepared or executed by the last run */
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    /** number of statements that failed in the last run */
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Tells whether the SessionFactory's connections come from a
+     * {@link UCanAccessConnectionProvider} (or the write pool of a
+     * {@link UCanAccessRoutingConnectionProvider}) with a SQL translation cache
+     */
+    private boolean hasSqlTranslationCache() {
+        ConnectionProvider provider = sessionFactory.getServiceRegistry().getService(ConnectionProvider.class);
+        UCanAccessConnectionProvider pool = null;
+        if (provider instanceof UCanAccessConnectionProvider) {
+            pool = (UCanAccessConnectionProvider) provider;
+        } else if (provider instanceof UCanAccessRoutingConnectionProvider) {
+            pool = ((UCanAccessRoutingConnectionProvider) provider).getWritePool();
+        }
+        return pool != null && pool.getSqlCache() != null;
+    }
+
+    private Set<String> collectStatements() {
+        Set<String> statements = new LinkedHashSet<>();
+        for (NamedQueryDefinition query : metadata.getNamedQueryDefinitions()) {
+            try {
+                Collections.addAll(statements, sqlStrings(query.getQueryString()));
+            } catch (HibernateException e) {
+                failureCount++;
+            }
+        }
+        for (NamedSQLQueryDefinition query : metadata.getNamedNativeQueryDefinitions()) {
+            if (!query.isCallable()) {
+                statements.add(jdbcParameters(query.getQueryString()));
+            }
+        }
+        for (EntityPersister persister : sessionFactory.getMetamodel().entityPersisters().values()) {
+            if (persister instanceof AbstractEntityPersister) {
+                addEntityStatements(statements, (AbstractEntityPersister) persister);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Translates an HQL query to SQL through Hibernate's query plan cache
+     * (deprecated, but Hibernate 5 has no replacement for it)
+     */
+    @SuppressWarnings("deprecation")
+    private String[] sqlStrings(String hql) {
+        return sessionFactory.getQueryPlanCache().getHQLQueryPlan(hql, false, Collections.emptyMap())
+                .getSqlStrings();
+    }
+
+    /**
+     * Adds the statements that Hibernate prepares to write an entity (which
+     * {@link AbstractEntityPersister} only makes available to subclasses)
+     */
+    private void addEntityStatements(Set<String> statements, AbstractEntityPersister persister) {
+        for (String methodName : ENTITY_SQL_METHODS) {
+            try {
+                Method method = AbstractEntityPersister.class.getDeclaredMethod(methodName);
+                method.setAccessible(true);
+                Object sql = method.invoke(persister);
+                if (sql instanceof String[]) {
+                    for (String s : (String[]) sql) {
+                        if (s != null) {
+                            statements.add(s);
+                        }
+                    }
+                } else if (sql != null) {
+                    statements.add((String) sql);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // not available in this version of Hibernate
+            }
+        }
+    }
+
+    /** replaces the named (":name") and JPA-style ("?1") parameters of a native query with "?" */
+    private static String jdbcParameters(String sql) {
+        final StringBuilder sb = new StringBuilder(sql.length());
+        ParameterParser.parse(sql, new ParameterParser.Recognizer() {
+            @Override
+            public void outParameter(int position) {
+                sb.append('?');
+            }
+
+            @Override
+            public void ordinalParameter(int position) {
+                sb.append('?');
+            }
+
+            @Override
+            public void namedParameter(String name, int position) {
+                sb.append('?');
+            }
+
+            @Override
+            public void jpaPositionalParameter(int identifier, int position) {
+                sb.append('?');
+            }
+
+            @Override
+            public void other(char character) {
+                sb.append(character);
+            }
+
+            @Override
+            public void complete() {
+            }
+        });
+        return sb.toString();
+    }
+
+    private void prepare(Connection connection, String sql) {
+        try {
+            connection.prepareStatement(sql).close();
+            statementCount++;
+        } catch (SQLException e) {
+            failureCount++;
+        }
+    }
+
+    private void touchTables(Connection connection) {
+        if (tables.isEmpty()) {
+            return;
+        }
+        Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+        for (Table table : metadata.collectTableMappings()) {
+            if (!tables.contains("*") && !tables.contains(table.getName().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            String tableName = table.getQuotedName(dialect);
+            query(connection, "select count(*) from " + tableName);
+            for (Iterator<Index> indexes = table.getIndexIterator(); indexes.hasNext();) {
+                Iterator<Column> columns = indexes.next().getColumnIterator();
+                if (columns.hasNext()) {
+                    query(connection, "select min(" + columns.next().getQuotedName(dialect) + ") from " + tableName);
+                }
+            }
+        }
+    }
+
+    private void query(Connection connection, String sql) {
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                // (just reading)
+            }
+            statementCount++;
+        } catch (SQLException e) {
+            failureCount++;
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+/**
+ *
+ * Runs write transactions one at a time on a single writer thread
+ *
+ * Access handles concurrent writers badly, so instead of committing their own
+ * transactions, request threads submit their writes as {@link Work} to a
+ * first-come, first-served queue. The writer thread takes whatever has queued
+ * up while the previous transaction was committing (up to
+ * {@code maxGroupSize} items) and runs it in one session and one transaction
+ * ("group commit"). If any item of a group fails, the group is rolled back and
+ * its items are run again one by one, so only the failing item sees the
+ * exception. Read-only sessions are not affected and keep running in parallel
+ * on their own pooled connections.
+ *
+ * Because an item may run twice, it should create the entities it saves
+ * itself rather than save instances that were created outside of it. An item
+ * that needs to write more does so in the session it is given: it cannot call
+ * {@link #write} (which would wait for itself) and should not wait for work
+ * that it submits.
+ *
+ * <pre>
+ * UCanAccessWriteScheduler writes = new UCanAccessWriteScheduler(sessionFactory);
+ * Integer id = writes.write(session -&gt; (Integer) session.save(new Event(title, date)));
+ * </pre>
+ *
+ * Queue depth, waiting times and group sizes are recorded in
+ * {@link UCanAccessMetrics}.
+ *
+ */
+public class UCanAccessWriteScheduler implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_GROUP_SIZE = 50;
+
+    /**
+     * A unit of work that is run in a session (and transaction) opened by the
+     * writer thread. It must not commit or roll back the transaction itself.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T execute(Session session);
+    }
+
+    private static final Task<?> STOP = new Task<>(null);
+
+    private final SessionFactory sessionFactory;
+    private final int maxGroupSize;
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    /** (guarded by the queue, so that no work is queued behind STOP) */
+    private boolean closed;
+
+    public UCanAccessWriteScheduler(SessionFactory sessionFactory) {
+        this(sessionFactory, DEFAULT_MAX_GROUP_SIZE);
+    }
+
+    public UCanAccessWriteScheduler(SessionFactory sessionFactory, int maxGroupSize) {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("maxGroupSize must be positive");
+        }
+        this.sessionFactory = sessionFactory;
+        this.maxGroupSize = maxGroupSize;
+        writerThread = new Thread(this::run, "UCanAccess writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the work and returns immediately
+     */
+    public <T> CompletableFuture<T> submit(Work<T> work) {
+        Task<T> task = new Task<>(work);
+        synchronized (queue) {
+            if (closed) {
+                throw new IllegalStateException("The write scheduler has been closed");
+            }
+            UCanAccessMetrics.getInstance().writeQueued();
+            queue.add(task);
+        }
+        return task.future;
+    }
+
+    /**
+     * Queues the work and waits until it has been committed (or has failed, in
+     * which case its exception is rethrown)
+     */
+    public <T> T write(Work<T> work) {
+        if (Thread.currentThread() == writerThread) {
+            throw new IllegalStateException("write() cannot be called from a Work; use the session that it is given");
+        }
+        CompletableFuture<T> future = submit(work);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // the work cannot be taken back out of the queue, so wait for it anyway
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new HibernateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** number of items waiting to be written */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting work, writes everything that has already been queued
+     * and stops the writer thread. (Called from a {@link Work}, it does not
+     * wait for that.)
+     */
+    @Override
+    public void close() {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(STOP);
+        }
+        if (Thread.currentThread() == writerThread) {
+            return;
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Task<?>> group = new ArrayList<>(maxGroupSize);
+        while (true) {
+            Task<?> first;
+            try {
+                first = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == STOP) {
+                break;
+            }
+            group.add(first);
+            queue.drainTo(group, maxGroupSize - 1);
+            boolean stop = group.remove(STOP);
+
+            long now = System.nanoTime();
+            for (Task<?> task : group) {
+                UCanAccessMetrics.getInstance().writeDequeued(now - task.queuedNanos);
+            }
+            if (group.size() == 1 || !runGroup(group, false)) {
+                // (one item at a time, so that only the failing items fail)
+                for (Task<?> task : group) {
+                    runGroup(Collections.singletonList(task), true);
+                }
+            }
+            group.clear();
+            if (stop) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks in one transaction. Returns true if it was committed; if
+     * not, and failTasks is set, completes the tasks with the exception.
+     */
+    private boolean runGroup(List<Task<?>> group, boolean failTasks) {
+        List<Object> results = new ArrayList<>(group.size());
+        Session session = null;
+        Transaction transaction = null;
+        try {
+            session = sessionFactory.openSession();
+            transaction = session.beginTransaction();
+            for (Task<?> task : group) {
+                results.add(task.work.execute(session));
+            }
+            transaction.commit();
+        } catch (RuntimeException | Error e) {
+            if (transaction != null && transaction.isActive()) {
+                try {
+                    transaction.rollback();
+                } catch (RuntimeException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+            }
+            if (failTasks) {
+                for (Task<?> task : group) {
+                    task.future.completeExceptionally(e);
+                }
+            }
+            return false;
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+        UCanAccessMetrics.getInstance().writeGroupCommitted(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).complete(results.get(i));
+        }
+        return true;
+    }
+
+    private static final class Task<T> {
+        final Work<T> work;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long queuedNanos = System.nanoTime();
+
+        Task(Work<T> work) {
+            this.work = work;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.sql.Blob;
+import java.sql.Clob;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+
+/**
+ * 
+ * Attachment entity - an example of an entity with large OLE and MEMO
+ * values that are mapped as Blob and Clob, so that they are only read
+ * when they are used
+ *
+ */
+@Entity
+public class Attachment {
+    @Id
+    @Column(name = "ATTACHMENT_ID")
+    private Integer id;
+    public Integer getId() { return id; }
+
+    // @Lob Blob: OLE
+    @Lob
+    private Blob content;
+    public Blob getContent() { return content; }
+    public void setContent(Blob content) { this.content = content; }
+
+    // @Lob Clob: MEMO
+    @Lob
+    private Clob notes;
+    public Clob getNotes() { return notes; }
+    public void setNotes(Clob notes) { this.notes = notes; }
+
+    public Attachment() {
+        // no-argument constructor required by Hibernate
+    }
+
+    public Attachment(Integer id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+
+/**
+ * Exercises UCanAccessDialectBulkIdStrategy (via the JOINED Venue/Stadium
+ * hierarchy).
+ */
+public class BulkIdStrategyTest extends TestCase {
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(AvailableSettings.CONNECTION_PROVIDER, UCanAccessConnectionProvider.class.getName());
+        ssrb.applySetting(AvailableSettings.POOL_SIZE, "5");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Venue.class)
+                    .addAnnotatedClass(Stadium.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private void insertStadiums(String city, int firstId, int count) {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (int i = 0; i < count; i++) {
+            session.persist(new Stadium(firstId + i, "stadium " + (firstId + i), city, (i + 1) * 1000));
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    private long count(Session session, String table) {
+        return ((Number) session.createNativeQuery("select count(*) from " + table).uniqueResult()).longValue();
+    }
+
+    public void testDeleteAcrossTables() {
+        insertStadiums("Vienna", 1, 6);
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.persist(new Venue(100, "town hall", "Vienna"));
+        session.getTransaction().commit();
+
+        session.beginTransaction();
+        int deleted = session.createQuery("delete from Stadium s where s.capacity > :capacity")
+                .setParameter("capacity", 3000).executeUpdate();
+        session.getTransaction().commit();
+        assertEquals(3, deleted);
+        assertEquals(3, count(session, "Stadium"));
+        assertEquals(4, count(session, "Venue"));
+        assertNotNull(session.get(Venue.class, 100));
+        session.close();
+    }
+
+    public void testUpdateAcrossTables() {
+        insertStadiums("Vienna", 1, 3);
+        insertStadiums("Graz", 11, 2);
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        int updated = session.createQuery(
+                "update Stadium s set s.name = :name, s.capacity = :capacity where s.city = :city")
+                .setParameter("name", "renamed").setParameter("capacity", 42).setParameter("city", "Vienna")
+                .executeUpdate();
+        session.getTransaction().commit();
+        assertEquals(3, updated);
+        for (Stadium stadium : session.createQuery("from Stadium", Stadium.class).getResultList()) {
+            boolean vienna = stadium.getCity().equals("Vienna");
+            assertEquals(vienna, stadium.getName().equals("renamed"));
+            assertEquals(vienna, stadium.getCapacity() == 42);
+        }
+        session.close();
+    }
+
+    /**
+     * The same HQL statement (and therefore the same cached handler) is run
+     * by several threads at once; each must only change its own rows.
+     */
+    public void testConcurrentUpdates() throws Exception {
+        final int threads = 4;
+        final int rounds = 15;
+        for (int t = 0; t < threads; t++) {
+            insertStadiums("city" + t, t * 100 + 1, 20);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int round = 0; round < rounds; round++) {
+                        Session session = sessionFactory.openSession();
+                        session.beginTransaction();
+                        int updated = session.createQuery(
+                                "update Stadium s set s.name = :name, s.capacity = :capacity where s.city = :city")
+                                .setParameter("name", "thread" + thread)
+                                .setParameter("capacity", thread * 1000 + round)
+                                .setParameter("city", "city" + thread).executeUpdate();
+                        session.getTransaction().commit();
+                        session.close();
+                        assertEquals(20, updated);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Session session = sessionFactory.openSession();
+        List<Stadium> stadiums = session.createQuery("from Stadium", Stadium.class).getResultList();
+        assertEquals(threads * 20, stadiums.size());
+        for (Stadium stadium : stadiums) {
+            int thread = Integer.parseInt(stadium.getCity().substring("city".length()));
+            assertEquals("thread" + thread, stadium.getName());
+            assertEquals(thread * 1000 + rounds - 1, stadium.getCapacity());
+        }
+        session.close();
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.persistence.PersistenceException;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessBulkLoader;
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+
+/**
+ * Loads and exports tickets with UCanAccessBulkLoader, including loads and
+ * exports that fail part of the way through.
+ */
+public class BulkLoaderTest extends TestCase {
+    private static final AtomicInteger COMMITS = new AtomicInteger();
+    private static final AtomicInteger ROLLBACKS = new AtomicInteger();
+
+    /**
+     * Counts the commits and rollbacks on its connections
+     */
+    public static class RecordingConnectionProvider extends UCanAccessConnectionProvider {
+        private static final long serialVersionUID = 1L;
+        private final Map<Connection, Connection> pooled = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            Connection proxy = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (p, method, args) -> {
+                        if (method.getName().equals("commit")) {
+                            COMMITS.incrementAndGet();
+                        } else if (method.getName().equals("rollback") && args == null) {
+                            ROLLBACKS.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+            pooled.put(proxy, connection);
+            return proxy;
+        }
+
+        @Override
+        public void closeConnection(Connection conn) throws SQLException {
+            super.closeConnection(pooled.remove(conn));
+        }
+    }
+
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(AvailableSettings.CONNECTION_PROVIDER, RecordingConnectionProvider.class.getName());
+        ssrb.applySetting(AvailableSettings.POOL_SIZE, "5");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Ticket.class).buildMetadata()
+                    .buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private long countTickets() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery("select count(t) from Ticket t", Long.class).getSingleResult();
+        }
+    }
+
+    private static List<Ticket> tickets(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Ticket("holder " + i)).collect(Collectors.toList());
+    }
+
+    public void testLoad() {
+        UCanAccessBulkLoader loader = new UCanAccessBulkLoader(sessionFactory, 10, 25);
+        UCanAccessBulkLoader.Result result = loader.load(tickets(60).stream());
+        assertEquals(60, result.getRows());
+        assertEquals(60, countTickets());
+    }
+
+    public void testLoadFailureKeepsCommittedRows() {
+        UCanAccessBulkLoader loader = new UCanAccessBulkLoader(sessionFactory, 10, 25);
+        Iterator<Ticket> tickets = tickets(60).iterator();
+        Iterator<Ticket> failing = new Iterator<Ticket>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return tickets.hasNext();
+            }
+
+            @Override
+            public Ticket next() {
+                if (next++ == 55) {
+                    throw new IllegalStateException("bad row");
+                }
+                return tickets.next();
+            }
+        };
+        try {
+            loader.load(failing);
+            fail("the load should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("bad row", e.getMessage());
+        }
+        // the first two commit intervals, but not the rows after them
+        assertEquals(50, countTickets());
+    }
+
+    public void testExport() {
+        UCanAccessBulkLoader loader = new UCanAccessBulkLoader(sessionFactory, 10, 25);
+        loader.load(tickets(30));
+
+        List<String> holders = new ArrayList<>();
+        UCanAccessBulkLoader.Result result = loader.export(Ticket.class, ticket -> holders.add(ticket.getHolder()));
+        assertEquals(30, result.getRows());
+        assertEquals(30, holders.size());
+        assertTrue(holders.contains("holder 29"));
+
+        List<Long> ids = new ArrayList<>();
+        result = loader.export("select t.id from Ticket t where t.holder like 'holder 1%'", Long.class, ids::add);
+        assertEquals(11, result.getRows());
+        assertEquals(11, ids.size());
+    }
+
+    public void testExportFailure() {
+        UCanAccessBulkLoader loader = new UCanAccessBulkLoader(sessionFactory, 10, 25);
+        loader.load(tickets(30));
+
+        List<Ticket> exported = new ArrayList<>();
+        int commits = COMMITS.get();
+        int rollbacks = ROLLBACKS.get();
+        try {
+            loader.export(Ticket.class, ticket -> {
+                if (exported.size() == 5) {
+                    throw new IllegalStateException("consumer failed");
+                }
+                exported.add(ticket);
+            });
+            fail("the export should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("consumer failed", e.getMessage());
+        }
+        assertEquals(5, exported.size());
+        assertEquals(commits, COMMITS.get());
+        assertEquals(rollbacks + 1, ROLLBACKS.get());
+
+        // (the same for a query that fails in the database)
+        try {
+            loader.export("select t.id from Ticket t where t.id / 0 = 1", Long.class, id -> { });
+            fail("the export should have failed");
+        } catch (PersistenceException e) {
+            // expected
+        }
+        assertEquals(commits, COMMITS.get());
+        assertEquals(rollbacks + 2, ROLLBACKS.get());
+
+        // and the loader is still usable
+        assertEquals(30, loader.export(Ticket.class, ticket -> { }).getRows());
+        assertEquals(commits + 1, COMMITS.get());
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hsqldb.Session;
+import org.hsqldb.jdbc.JDBCConnection;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+import net.ucanaccess.jdbc.UcanaccessConnection;
+
+/**
+ * Exercises the UCanAccessConnectionProvider pool: connections are reset when
+ * they are returned, reused most recently used first, validated after being
+ * idle, and borrowers time out when the pool is exhausted.
+ */
+public class ConnectionProviderTest extends TestCase {
+    private File directory;
+    private UCanAccessConnectionProvider pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("pool").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (pool != null) {
+            pool.stop();
+        }
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void startPool(int size, String... settings) throws SQLException {
+        Map<String, Object> values = new HashMap<>();
+        values.put(AvailableSettings.URL, "jdbc:ucanaccess://" + directory.getAbsolutePath().replace('\\', '/')
+                + "/pool.accdb;newDatabaseVersion=V2010");
+        values.put(AvailableSettings.POOL_SIZE, Integer.toString(size));
+        for (int i = 0; i < settings.length; i += 2) {
+            values.put(settings[i], settings[i + 1]);
+        }
+        pool = new UCanAccessConnectionProvider();
+        pool.configure(values);
+        Connection conn = pool.getConnection();
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE pooled (id INTEGER PRIMARY KEY, name VARCHAR(50))");
+        }
+        conn.commit();
+        pool.closeConnection(conn);
+    }
+
+    public void testReadOnlyIsResetOnReturn() throws Exception {
+        startPool(1);
+        Connection conn = pool.getConnection();
+        conn.setReadOnly(true);
+        pool.closeConnection(conn);
+
+        Connection next = pool.getConnection();
+        assertSame(conn, next);
+        try (Statement st = next.createStatement()) {
+            assertEquals(1, st.executeUpdate("INSERT INTO pooled (id, name) VALUES (1, 'one')"));
+        }
+        next.commit();
+        pool.closeConnection(next);
+    }
+
+    public void testMostRecentlyUsedFirst() throws Exception {
+        startPool(3);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        assertNotSame(first, second);
+        pool.closeConnection(first);
+        pool.closeConnection(second);
+        assertEquals(0, pool.getActiveCount());
+
+        Connection again = pool.getConnection();
+        assertSame(second, again);
+        pool.closeConnection(again);
+    }
+
+    public void testBrokenIdleConnectionsAreReplaced() throws Exception {
+        // validate every idle connection before handing it out
+        startPool(2, UCanAccessSettings.POOL_IDLE_VALIDATION, "0");
+        Connection conn = pool.getConnection();
+        pool.closeConnection(conn);
+        ((UcanaccessConnection) conn).getHSQLDBConnection().close();
+        long discarded = pool.getDiscardedCount();
+
+        Connection replacement = pool.getConnection();
+        assertNotSame(conn, replacement);
+        assertTrue(replacement.isValid(1));
+        assertEquals(discarded + 1, pool.getDiscardedCount());
+        pool.closeConnection(replacement);
+    }
+
+    public void testBorrowersTimeOut() throws Exception {
+        startPool(1, UCanAccessSettings.POOL_TIMEOUT, "100");
+        Connection conn = pool.getConnection();
+        long start = System.nanoTime();
+        try {
+            pool.getConnection();
+            fail("borrowed more connections than the pool size");
+        } catch (SQLException e) {
+            assertTrue(System.nanoTime() - start >= 90000000L);
+        } finally {
+            pool.closeConnection(conn);
+        }
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    public void testResultsAreSpooledWhenMirrorIsOnDisk() throws Exception {
+        startPool(1, UCanAccessSettings.OPTION_PREFIX + "memory", "false");
+        assertEquals(UCanAccessConnectionProvider.DEFAULT_RESULT_MEMORY_ROWS, resultMemoryRows());
+    }
+
+    public void testResultMemoryRowsCanBeSet() throws Exception {
+        startPool(1, UCanAccessSettings.OPTION_PREFIX + "memory", "false", UCanAccessSettings.RESULT_MEMORY_ROWS,
+                "500");
+        assertEquals(500, resultMemoryRows());
+    }
+
+    public void testResultsStayInMemoryWithMirror() throws Exception {
+        startPool(1);
+        // not set (HSQLDB has nowhere to spool results of an in-memory mirror)
+        assertEquals(0, resultMemoryRows());
+    }
+
+    /** the RESULT MEMORY ROWS setting of the pooled connection's HSQLDB session */
+    private int resultMemoryRows() throws SQLException {
+        Connection conn = pool.getConnection();
+        try {
+            JDBCConnection hsqldb = (JDBCConnection) ((UcanaccessConnection) conn).getHSQLDBConnection();
+            return ((Session) hsqldb.getSession()).getResultMemoryRowCount();
+        } finally {
+            pool.closeConnection(conn);
+        }
+    }
+
+}
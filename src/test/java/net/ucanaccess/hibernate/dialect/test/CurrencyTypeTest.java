@@ -0,0 +1,204 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.spi.SchemaFilter;
+import org.hibernate.tool.schema.spi.SchemaFilterProvider;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessDialectCurrencyTypeDescriptor;
+import net.ucanaccess.hibernate.dialect.UCanAccessMoney;
+import net.ucanaccess.hibernate.dialect.UCanAccessSchemaManagementTool;
+import net.ucanaccess.hibernate.dialect.UCanAccessSchemaSnapshot;
+import net.ucanaccess.jdbc.UcanaccessConnection;
+
+/**
+ * Checks that CURRENCY columns keep their amounts exactly, including amounts
+ * that the mirror's original column type would reject, and that
+ * "hbm2ddl.auto" = "validate" accepts them.
+ */
+public class CurrencyTypeTest extends TestCase {
+
+    /**
+     * Limits the schema tool to the invoices. (Without the snapshots, the
+     * MEMO columns of the entities in hibernate.cfg.xml do not pass
+     * validation.)
+     */
+    public static class InvoicesOnly implements SchemaFilterProvider, SchemaFilter {
+        @Override
+        public boolean includeNamespace(Namespace namespace) {
+            return true;
+        }
+
+        @Override
+        public boolean includeTable(Table table) {
+            return table.getName().equals("Invoice");
+        }
+
+        @Override
+        public boolean includeSequence(Sequence sequence) {
+            return false;
+        }
+
+        @Override
+        public SchemaFilter getCreateFilter() {
+            return this;
+        }
+
+        @Override
+        public SchemaFilter getDropFilter() {
+            return this;
+        }
+
+        @Override
+        public SchemaFilter getMigrateFilter() {
+            return this;
+        }
+
+        @Override
+        public SchemaFilter getValidateFilter() {
+            return this;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        buildSessionFactory("create", false).close();
+        UCanAccessSchemaSnapshot.clear();
+    }
+
+    private SessionFactory buildSessionFactory(String hbm2ddl, boolean snapshots) {
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(AvailableSettings.HBM2DDL_AUTO, hbm2ddl);
+        ssrb.applySetting(AvailableSettings.HBM2DDL_FILTER_PROVIDER, InvoicesOnly.class.getName());
+        if (snapshots) {
+            ssrb.applySetting(AvailableSettings.SCHEMA_MANAGEMENT_TOOL,
+                    UCanAccessSchemaManagementTool.class.getName());
+        }
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            return new MetadataSources(registry).addAnnotatedClass(Invoice.class).buildMetadata()
+                    .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    public void testRoundTrip() {
+        UCanAccessMoney total = UCanAccessMoney.parse("123456789.0123");
+        UCanAccessMoney small = UCanAccessMoney.parse("-0.0005");
+        try (SessionFactory sf = buildSessionFactory("none", false)) {
+            try (Session session = sf.openSession()) {
+                session.beginTransaction();
+                session.persist(new Invoice(1, total, 99_999_9999L));
+                session.persist(new Invoice(2, small, -1L));
+                session.getTransaction().commit();
+            }
+            try (Session session = sf.openSession()) {
+                Invoice invoice = session.get(Invoice.class, 1);
+                assertEquals(total, invoice.getTotal());
+                assertEquals(99_999_9999L, invoice.getFee());
+                invoice = session.get(Invoice.class, 2);
+                assertEquals(small, invoice.getTotal());
+                assertEquals(-1L, invoice.getFee());
+
+                assertEquals(Integer.valueOf(1), session
+                        .createQuery("select i.id from Invoice i where i.total > :amount", Integer.class)
+                        .setParameter("amount", UCanAccessMoney.of(10_000, 0)).getSingleResult());
+            }
+        }
+    }
+
+    public void testMirrorColumnsAreWidened() {
+        try (SessionFactory sf = buildSessionFactory("none", false); Session session = sf.openSession()) {
+            session.doWork(connection -> {
+                Connection hsqldb = ((UcanaccessConnection) connection).getHSQLDBConnection();
+                try (PreparedStatement ps = hsqldb.prepareStatement("select NUMERIC_PRECISION "
+                        + "from INFORMATION_SCHEMA.COLUMNS where TABLE_NAME = 'INVOICE' and COLUMN_NAME = ?")) {
+                    for (String column : new String[] { "TOTAL", "FEE" }) {
+                        ps.setString(1, column);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            assertTrue(column, rs.next());
+                            assertTrue(column, rs.getInt(1) >= 19);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    public void testValidate() {
+        buildSessionFactory("validate", false).close();
+    }
+
+    public void testValidateFromSnapshot() {
+        buildSessionFactory("validate", true).close();
+    }
+
+    public void testMoneyToString() {
+        assertEquals("-12.3400", UCanAccessMoney.parse("-12.34").toString());
+        assertEquals("0.0005", UCanAccessMoney.ofScaled(5).toString());
+        assertEquals("-0.0005", UCanAccessMoney.ofScaled(-5).toString());
+        assertEquals("10000.0100", UCanAccessMoney.of(10_000, 100).toString());
+        assertEquals("-922337203685477.5808", UCanAccessMoney.ofScaled(Long.MIN_VALUE).toString());
+    }
+
+    public void testToScaled() {
+        assertEquals(123_400L, UCanAccessDialectCurrencyTypeDescriptor.toScaled(new BigDecimal("12.34")));
+        assertEquals(123_456L, UCanAccessDialectCurrencyTypeDescriptor.toScaled(new BigDecimal("12.3456")));
+        assertEquals(-5L, UCanAccessDialectCurrencyTypeDescriptor.toScaled(new BigDecimal("-0.0005")));
+        // rounded half-even
+        assertEquals(10_000L, UCanAccessDialectCurrencyTypeDescriptor.toScaled(new BigDecimal("1.00005")));
+        assertEquals(10_002L, UCanAccessDialectCurrencyTypeDescriptor.toScaled(new BigDecimal("1.00015")));
+        // beyond what a double holds exactly
+        assertEquals(9_223_372_036_854_775_807L, UCanAccessDialectCurrencyTypeDescriptor
+                .toScaled(new BigDecimal("922337203685477.5807")));
+        for (long scaled = -100_000_000L; scaled <= 100_000_000L; scaled += 9_973L) {
+            assertEquals(scaled, UCanAccessDialectCurrencyTypeDescriptor
+                    .toScaled(UCanAccessDialectCurrencyTypeDescriptor.toBigDecimal(scaled)));
+        }
+    }
+
+}
@@ -40,6 +40,7 @@ import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.Lob;
 import javax.persistence.ManyToMany;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 /**
@@ -56,6 +57,7 @@ import javax.persistence.Table;
         @Index(columnList = "title", name = "IX_title"),
         @Index(columnList = "EVENT DATE", name = "IX_date")
         })
+@NamedQuery(name = "Event.byTitle", query = "from Event e where e.title = :title")
 public class Event {
     @Id
     @Column(name = "EVENT_ID")
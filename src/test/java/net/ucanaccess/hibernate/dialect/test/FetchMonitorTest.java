@@ -0,0 +1,160 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessFetchMonitor;
+import net.ucanaccess.hibernate.dialect.UCanAccessMetrics;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+
+/**
+ * Checks that UCanAccessFetchMonitor counts the lazy loads of Event.guests,
+ * reports the N+1 pattern of loading them one event at a time, and that
+ * batch fetching (set at run time or by the dialect default) collapses the
+ * lazy loads into one.
+ */
+public class FetchMonitorTest extends TestCase {
+    private static final String ROLE = Event.class.getName() + ".guests";
+    private static final int EVENTS = 12;
+
+    private SessionFactory sessionFactory;
+
+    private void buildSessionFactory(String... settings) {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        for (int i = 0; i < settings.length; i += 2) {
+            ssrb.applySetting(settings[i], settings[i + 1]);
+        }
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < EVENTS; i++) {
+                Event event = new Event("event " + i, LocalDateTime.of(2018, 3, 14, 15, 9, 26).plusDays(i));
+                event.setDescription("fetch monitor " + i);
+                event.getGuests().add(new Guest("guest" + i + "@example.com", "Guest " + i));
+                session.persist(event);
+            }
+            session.getTransaction().commit();
+        }
+        UCanAccessMetrics.getInstance().reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private int readGuests() {
+        int guests = 0;
+        try (Session session = sessionFactory.openSession()) {
+            for (Event event : session.createQuery("from Event e order by e.id", Event.class).list()) {
+                guests += event.getGuests().size();
+            }
+        }
+        return guests;
+    }
+
+    private static long lazyLoads() {
+        Long count = UCanAccessMetrics.getInstance().getLazyLoadCounts().get(ROLE);
+        return count == null ? 0 : count;
+    }
+
+    public void testReportsNPlusOne() {
+        buildSessionFactory(UCanAccessSettings.FETCH_PREFIX + ROLE, "1");
+        assertEquals(EVENTS, readGuests());
+        assertEquals(EVENTS, lazyLoads());
+
+        Map<String, Long> suspects = UCanAccessMetrics.getInstance().getNPlusOneSuspects();
+        assertEquals(1, suspects.size());
+        String suspect = suspects.keySet().iterator().next();
+        assertTrue(suspect, suspect.startsWith(ROLE + " at " + FetchMonitorTest.class.getName() + ".readGuests("));
+    }
+
+    public void testRuntimeBatchSize() {
+        buildSessionFactory(UCanAccessSettings.FETCH_PREFIX + ROLE, "1");
+        UCanAccessFetchMonitor.of(sessionFactory).setBatchSize(ROLE, 16);
+        assertEquals(EVENTS, readGuests());
+        assertEquals(1, lazyLoads());
+        assertTrue(UCanAccessMetrics.getInstance().getNPlusOneSuspects().isEmpty());
+    }
+
+    public void testAutoBatchSize() {
+        buildSessionFactory(UCanAccessSettings.FETCH_PREFIX + ROLE, "1",
+                UCanAccessSettings.FETCH_AUTO_BATCH_SIZE, "16");
+        assertEquals(EVENTS, readGuests());
+        // one at a time until the threshold is reached, which loads the rest together
+        assertEquals(UCanAccessFetchMonitor.DEFAULT_THRESHOLD, lazyLoads());
+        assertEquals(16, UCanAccessFetchMonitor.of(sessionFactory).getBatchSize(ROLE));
+    }
+
+    public void testRuntimeEntityBatchSize() {
+        buildSessionFactory();
+        UCanAccessFetchMonitor.of(sessionFactory).setBatchSize(Event.class.getName(), 4);
+        try (Session session = sessionFactory.openSession()) {
+            List<Integer> ids = session.createQuery("select e.id from Event e order by e.id", Integer.class).list();
+            List<Event> proxies = new ArrayList<>();
+            for (Integer id : ids) {
+                proxies.add(session.load(Event.class, id));
+            }
+            for (Event proxy : proxies) {
+                assertNotNull(proxy.getTitle());
+            }
+        }
+        assertEquals(EVENTS / 4, UCanAccessMetrics.getInstance().getLazyLoadCounts().get(Event.class.getName())
+                .longValue());
+    }
+
+    public void testDialectDefaultBatchFetchSize() {
+        buildSessionFactory();
+        assertEquals(EVENTS, readGuests());
+        assertEquals(1, lazyLoads());
+    }
+
+}
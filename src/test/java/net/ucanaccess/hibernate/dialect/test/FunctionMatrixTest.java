@@ -0,0 +1,220 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+
+import junit.framework.TestCase;
+
+/**
+ * Compatibility matrix for the HQL functions registered by UCanAccessDialect.
+ * 
+ * Each expression is evaluated against a single Event, both in the select
+ * list (to check the value) and in the where clause (to check that the
+ * comparison is done by the database).
+ */
+public class FunctionMatrixTest extends TestCase {
+    private SessionFactory sessionFactory;
+    private Integer eventId;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        Event event = new Event("  Hello World  ", LocalDateTime.of(2018, 3, 14, 15, 9, 26));
+        event.setDescription("function matrix");
+        event.setFee(new BigDecimal("-12.7500"));
+        session.persist(event);
+        session.getTransaction().commit();
+        session.close();
+        eventId = event.getId();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    public void testDateFunctions() {
+        List<String> failures = new ArrayList<>();
+        check(failures, "year(e.date)", 2018);
+        check(failures, "month(e.date)", 3);
+        check(failures, "day(e.date)", 14);
+        check(failures, "hour(e.date)", 15);
+        check(failures, "minute(e.date)", 9);
+        check(failures, "second(e.date)", 26);
+        check(failures, "extract(year from e.date)", 2018);
+        check(failures, "extract(quarter from e.date)", 1);
+        check(failures, "extract(dayofyear from e.date)", 73);
+        check(failures, "datepart(month, e.date)", 3);
+        check(failures, "datepart('ww', e.date)", 11);
+        check(failures, "weekday(e.date)", 4); // Wednesday
+        check(failures, "month(dateadd(day, 20, e.date))", 4);
+        check(failures, "year(dateadd('yyyy', -1, e.date))", 2017);
+        check(failures, "datediff(day, datevalue(e.date), dateserial(2018, 12, 25))", 286);
+        check(failures, "datediff(month, dateserial(2017, 1, 1), e.date)", 14);
+        check(failures, "year(datevalue(e.date))", 2018);
+        check(failures, "format(e.date, 'yyyy-mm-dd')", "2018-03-14");
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    public void testStringFunctions() {
+        List<String> failures = new ArrayList<>();
+        check(failures, "length(e.title)", 15);
+        check(failures, "len(e.title)", 15);
+        check(failures, "trim(e.title)", "Hello World");
+        check(failures, "trim(leading from e.title)", "Hello World  ");
+        check(failures, "ltrim(e.title)", "Hello World  ");
+        check(failures, "rtrim(e.title)", "  Hello World");
+        check(failures, "upper(trim(e.title))", "HELLO WORLD");
+        check(failures, "lower(trim(e.title))", "hello world");
+        check(failures, "locate('World', e.title)", 9);
+        check(failures, "locate('o', e.title, 8)", 10);
+        check(failures, "substring(e.title, 3, 5)", "Hello");
+        check(failures, "substring(e.title, 9)", "World  ");
+        check(failures, "mid(e.title, 9, 5)", "World");
+        check(failures, "concat(trim(e.title), '!', '?')", "Hello World!?");
+        check(failures, "trim(e.title) || '!'", "Hello World!");
+        check(failures, "replace(trim(e.title), 'World', 'There')", "Hello There");
+        check(failures, "reverse(trim(e.title))", "dlroW olleH");
+        check(failures, "concat('[', space(3), ']')", "[   ]");
+        check(failures, "ascii(trim(e.title))", 72);
+        check(failures, "char(72)", "H");
+        check(failures, "bit_length(trim(e.title))", 176);
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    public void testNumericFunctions() {
+        List<String> failures = new ArrayList<>();
+        check(failures, "abs(e.fee)", new BigDecimal("12.7500"));
+        check(failures, "mod(e.id + 17 - e.id, 5)", 2);
+        check(failures, "sqrt(16)", 4.0);
+        check(failures, "square(3)", 9);
+        check(failures, "power(2, 10)", 1024.0);
+        check(failures, "round(2.75, 1)", new BigDecimal("2.8"));
+        check(failures, "int(e.fee)", -13);
+        check(failures, "fix(e.fee)", -12.0);
+        check(failures, "atan(0)", 0.0);
+        check(failures, "sign(e.fee)", -1);
+        check(failures, "floor(e.fee)", new BigDecimal("-13"));
+        check(failures, "ceiling(e.fee)", new BigDecimal("-12"));
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    public void testConversionFunctions() {
+        List<String> failures = new ArrayList<>();
+        check(failures, "str(17)", "17");
+        check(failures, "cstr(17)", "17");
+        check(failures, "clng('42')", 42);
+        check(failures, "cint(2.4)", 2);
+        check(failures, "cdbl(17)", 17.0);
+        check(failures, "ccur(e.fee)", new BigDecimal("-12.7500"));
+        check(failures, "val('12.5 kg')", 12.5);
+        check(failures, "year(cdate('2019-07-01'))", 2019);
+        check(failures, "nz(e.comments, 'none')", "none");
+        check(failures, "isnull(e.comments, 'none')", "none");
+        check(failures, "coalesce(e.comments, 'none')", "none");
+        check(failures, "nullif(e.title, 'x')", "  Hello World  ");
+        check(failures, "cast(e.fee as integer)", -12);
+        check(failures, "cast(e.id as string)", eventId.toString());
+        check(failures, "cast(length(e.title) as big_decimal)", new BigDecimal("15"));
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    public void testGroupByFunction() {
+        try (Session session = sessionFactory.openSession()) {
+            List<Object[]> rows = session.createQuery("select extract(quarter from e.date), count(e) from Event e"
+                    + " where e.id = :id group by extract(quarter from e.date)", Object[].class)
+                    .setParameter("id", eventId).getResultList();
+            assertEquals(1, rows.size());
+            assertEquals(1, ((Number) rows.get(0)[0]).intValue());
+            assertEquals(1L, ((Number) rows.get(0)[1]).longValue());
+        }
+    }
+
+    /**
+     * Evaluates an HQL expression against the test Event and records a
+     * failure if the selected value, or the result of comparing with it in the
+     * where clause, is not the expected one
+     */
+    private void check(List<String> failures, String expression, Object expected) {
+        try (Session session = sessionFactory.openSession()) {
+            Object actual = session.createQuery("select " + expression + " from Event e where e.id = :id")
+                    .setParameter("id", eventId).getSingleResult();
+            if (!matches(expected, actual)) {
+                failures.add(expression + " = " + actual + " (expected " + expected + ")");
+                return;
+            }
+            long count = session.createQuery("select count(e) from Event e where e.id = :id and "
+                    + expression + " = :expected", Long.class)
+                    .setParameter("id", eventId).setParameter("expected", actual).getSingleResult();
+            if (count != 1) {
+                failures.add(expression + " not usable in where clause");
+            }
+        } catch (RuntimeException e) {
+            failures.add(expression + ": " + e);
+        }
+    }
+
+    private static boolean matches(Object expected, Object actual) {
+        if (actual == null) {
+            return false;
+        }
+        if (expected instanceof BigDecimal && actual instanceof Number) {
+            return ((BigDecimal) expected).compareTo(new BigDecimal(actual.toString())) == 0;
+        }
+        if (expected instanceof Number && actual instanceof Number) {
+            return ((Number) expected).doubleValue() == ((Number) actual).doubleValue();
+        }
+        return expected.equals(actual);
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessInList;
+
+/**
+ * Exercises UCanAccessInList (via the Guest entity): chunking, duplicates,
+ * the empty collection, and that the lists are padded by Hibernate only.
+ */
+public class InListTest extends TestCase {
+
+    /** records the SQL of the guest queries */
+    public static class RecordingInspector implements StatementInspector {
+        private static final long serialVersionUID = 1L;
+        static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.startsWith("select") && sql.contains(" in (")) {
+                STATEMENTS.add(sql);
+            }
+            return sql;
+        }
+    }
+
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        sessionFactory = buildSessionFactory("create", true);
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (int i = 1; i <= 10; i++) {
+            session.persist(new Guest(email(i), "Guest " + i));
+        }
+        session.getTransaction().commit();
+        session.close();
+        RecordingInspector.STATEMENTS.clear();
+    }
+
+    private SessionFactory buildSessionFactory(String hbm2ddl, boolean padding) {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting("hibernate.hbm2ddl.auto", hbm2ddl);
+        ssrb.applySetting(AvailableSettings.IN_CLAUSE_PARAMETER_PADDING, Boolean.toString(padding));
+        ssrb.applySetting(AvailableSettings.STATEMENT_INSPECTOR, RecordingInspector.class.getName());
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            return new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private static String email(int i) {
+        return "guest" + i + "@example.com";
+    }
+
+    private static List<String> emails(int... numbers) {
+        List<String> emails = new ArrayList<>();
+        for (int i : numbers) {
+            emails.add(email(i));
+        }
+        return emails;
+    }
+
+    private static List<String> names(List<Guest> guests) {
+        List<String> names = new ArrayList<>();
+        for (Guest guest : guests) {
+            names.add(guest.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static int placeholders(String sql) {
+        return sql.length() - sql.replace("?", "").length();
+    }
+
+    private List<Guest> list(SessionFactory factory, List<String> emails, int chunkSize) {
+        try (Session session = factory.openSession()) {
+            return UCanAccessInList.list(session.createQuery("from Guest where email in :emails", Guest.class),
+                    "emails", emails, chunkSize);
+        }
+    }
+
+    public void testDuplicatesAreLookedUpOnce() {
+        List<Guest> guests = list(sessionFactory, emails(1, 2, 2, 3, 1), 2048);
+        assertEquals(Arrays.asList("Guest 1", "Guest 2", "Guest 3"), names(guests));
+        assertEquals(1, RecordingInspector.STATEMENTS.size());
+        // 3 distinct values, padded by Hibernate to 4
+        assertEquals(4, placeholders(RecordingInspector.STATEMENTS.get(0)));
+    }
+
+    public void testChunks() {
+        List<Guest> guests = list(sessionFactory, emails(1, 2, 3, 4, 5, 6, 7, 11), 3);
+        assertEquals(7, guests.size());
+        assertEquals(3, RecordingInspector.STATEMENTS.size());
+        assertEquals(4, placeholders(RecordingInspector.STATEMENTS.get(0)));
+        assertEquals(4, placeholders(RecordingInspector.STATEMENTS.get(1)));
+        assertEquals(2, placeholders(RecordingInspector.STATEMENTS.get(2)));
+    }
+
+    public void testEmptyCollectionRunsNoQuery() {
+        assertTrue(list(sessionFactory, new ArrayList<>(), 2048).isEmpty());
+        assertTrue(RecordingInspector.STATEMENTS.isEmpty());
+    }
+
+    public void testNoPaddingWhenHibernatePaddingIsOff() {
+        sessionFactory.close();
+        sessionFactory = buildSessionFactory("none", false);
+        List<Guest> guests = list(sessionFactory, emails(1, 2, 3, 4, 5), 2048);
+        assertEquals(5, guests.size());
+        assertEquals(1, RecordingInspector.STATEMENTS.size());
+        assertEquals(5, placeholders(RecordingInspector.STATEMENTS.get(0)));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.annotations.Type;
+
+import net.ucanaccess.hibernate.dialect.UCanAccessCurrencyType;
+import net.ucanaccess.hibernate.dialect.UCanAccessMoney;
+
+/**
+ * 
+ * Invoice entity - an example of an entity with CURRENCY columns, one of
+ * type UCanAccessMoney and one holding ten-thousandths in a long
+ *
+ */
+@Entity
+public class Invoice {
+    @Id
+    @Column(name = "INVOICE_ID")
+    private Integer id;
+    public Integer getId() { return id; }
+
+    private UCanAccessMoney total;
+    public UCanAccessMoney getTotal() { return total; }
+    public void setTotal(UCanAccessMoney total) { this.total = total; }
+
+    @Type(type = UCanAccessCurrencyType.NAME)
+    private long fee;
+    public long getFee() { return fee; }
+    public void setFee(long fee) { this.fee = fee; }
+
+    public Invoice() {
+        // no-argument constructor required by Hibernate
+    }
+
+    public Invoice(Integer id, UCanAccessMoney total, long fee) {
+        this.id = id;
+        this.total = total;
+        this.fee = fee;
+    }
+}
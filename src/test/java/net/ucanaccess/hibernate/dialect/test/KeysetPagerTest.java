@@ -0,0 +1,141 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessKeysetPager;
+
+/**
+ * Exercises UCanAccessKeysetPager, in particular rows with a null sort key at
+ * page boundaries.
+ */
+public class KeysetPagerTest extends TestCase {
+    private SessionFactory sessionFactory;
+    private final List<Integer> ascendingIds = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+        // three events without a date, then four dated ones (inserted out of order)
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        List<Event> undated = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Event event = new Event("undated " + i, null);
+            session.persist(event);
+            undated.add(event);
+        }
+        LocalDateTime base = LocalDateTime.of(2017, 5, 21, 14, 15, 16);
+        Event[] dated = new Event[4];
+        for (int day : new int[] { 2, 0, 3, 1 }) {
+            dated[day] = new Event("dated " + day, base.plusDays(day));
+            session.persist(dated[day]);
+        }
+        session.getTransaction().commit();
+        session.close();
+        for (Event event : undated) {
+            ascendingIds.add(event.getId());
+        }
+        for (Event event : dated) {
+            ascendingIds.add(event.getId());
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private List<Integer> readAll(UCanAccessKeysetPager<Event> pager, int pageSize) {
+        List<Integer> ids = new ArrayList<>();
+        String token = null;
+        Session session = sessionFactory.openSession();
+        try {
+            for (int pages = 0; pages < 20; pages++) {
+                UCanAccessKeysetPager.Page<Event> page = pager.fetch(session, token);
+                assertTrue("page size " + pageSize, page.getResults().size() <= pageSize);
+                for (Event event : page.getResults()) {
+                    ids.add(event.getId());
+                }
+                if (!page.hasNext()) {
+                    return ids;
+                }
+                token = page.getNextToken();
+            }
+            fail("pages do not end");
+            return ids;
+        } finally {
+            session.close();
+        }
+    }
+
+    public void testNullKeysAtEveryPageBoundary() {
+        for (int pageSize = 1; pageSize <= 8; pageSize++) {
+            List<Integer> ids = readAll(new UCanAccessKeysetPager<>(Event.class, "date", pageSize), pageSize);
+            assertEquals("page size " + pageSize, ascendingIds, ids);
+        }
+    }
+
+    public void testNullKeysDescending() {
+        List<Integer> expected = new ArrayList<>(ascendingIds.subList(0, 3));
+        Collections.reverse(expected);
+        List<Integer> datedDescending = new ArrayList<>(ascendingIds.subList(3, 7));
+        Collections.reverse(datedDescending);
+        expected.addAll(datedDescending);
+        for (int pageSize = 1; pageSize <= 8; pageSize++) {
+            List<Integer> ids = readAll(new UCanAccessKeysetPager<>(Event.class, "date", pageSize, false, null),
+                    pageSize);
+            assertEquals("page size " + pageSize, expected, ids);
+        }
+    }
+
+}
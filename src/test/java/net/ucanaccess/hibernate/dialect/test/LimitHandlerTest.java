@@ -0,0 +1,147 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.dialect.pagination.LimitHandler;
+import org.hibernate.engine.spi.RowSelection;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessDialectLimitHandler;
+
+/**
+ * Runs the SQL rendered by UCanAccessDialectLimitHandler, with and without
+ * {@code TOP n} for first pages, and checks that what it binds matches what
+ * it rendered.
+ */
+public class LimitHandlerTest extends TestCase {
+    private static final String SQL = "select [EVENT_ID] from [EVENTS] order by [EVENT_ID]";
+
+    private SessionFactory sessionFactory;
+    private final List<Integer> ids = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (int i = 0; i < 6; i++) {
+            Event event = new Event("event " + i, null);
+            session.persist(event);
+            ids.add(event.getId());
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    /**
+     * Renders the statement for the selection, binds the limit parameters as
+     * Hibernate does and returns the ids that it selects
+     */
+    private List<Integer> page(LimitHandler handler, String sql, RowSelection selection) {
+        List<Integer> page = new ArrayList<>();
+        try (Session session = sessionFactory.openSession()) {
+            session.doWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(handler.processSql(sql, selection))) {
+                    int index = 1 + handler.bindLimitParametersAtStartOfQuery(selection, ps, 1);
+                    handler.bindLimitParametersAtEndOfQuery(selection, ps, index);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            page.add(rs.getInt(1));
+                        }
+                    }
+                }
+            });
+        }
+        return page;
+    }
+
+    private static RowSelection selection(Integer firstRow, Integer maxRows) {
+        RowSelection selection = new RowSelection();
+        selection.setFirstRow(firstRow);
+        selection.setMaxRows(maxRows);
+        return selection;
+    }
+
+    public void testFirstPage() {
+        assertEquals(ids.subList(0, 4), page(new UCanAccessDialectLimitHandler(false), SQL, selection(null, 4)));
+    }
+
+    public void testFirstPageWithTop() {
+        UCanAccessDialectLimitHandler handler = new UCanAccessDialectLimitHandler(true);
+        assertTrue(handler.processSql(SQL, selection(null, 4)).startsWith("select top 4 "));
+        assertEquals(ids.subList(0, 4), page(handler, SQL, selection(null, 4)));
+    }
+
+    public void testFirstPageWithoutRoomForTop() {
+        // TOP cannot go ahead of the parenthesis, so this one gets "limit ?" after all
+        String sql = "(" + SQL + ")";
+        UCanAccessDialectLimitHandler handler = new UCanAccessDialectLimitHandler(true);
+        assertTrue(handler.processSql(sql, selection(null, 4)).endsWith(" limit ?"));
+        assertEquals(ids.subList(0, 4), page(handler, sql, selection(null, 4)));
+
+        // and the handler does not carry that over to the next query
+        assertEquals(ids.subList(0, 2), page(handler, SQL, selection(null, 2)));
+    }
+
+    public void testLaterPage() {
+        for (boolean useTop : new boolean[] { false, true }) {
+            UCanAccessDialectLimitHandler handler = new UCanAccessDialectLimitHandler(useTop);
+            assertEquals(ids.subList(2, 5), page(handler, SQL, selection(2, 3)));
+            assertEquals(ids.subList(4, 6), page(handler, SQL, selection(4, null)));
+        }
+    }
+
+}
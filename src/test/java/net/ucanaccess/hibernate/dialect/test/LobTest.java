@@ -0,0 +1,204 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.jdbc.LobCreator;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessDialectClobTypeDescriptor;
+
+/**
+ * Round-trips large OLE and MEMO values (via the Attachment entity); MEMO
+ * values past the spill threshold are read from a temporary file, which is
+ * deleted when the Clob is freed or the session is closed.
+ */
+public class LobTest extends TestCase {
+    private static final int MEMO_LENGTH = UCanAccessDialectClobTypeDescriptor.DEFAULT_SPILL_THRESHOLD + 100000;
+    private static final int OLE_LENGTH = 3 * 1024 * 1024;
+
+    private SessionFactory sessionFactory;
+    private String memo;
+    private byte[] ole;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).addAnnotatedClass(Attachment.class).buildMetadata()
+                    .buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+        StringBuilder sb = new StringBuilder(MEMO_LENGTH);
+        for (int i = 0; sb.length() < MEMO_LENGTH - 10; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        while (sb.length() < MEMO_LENGTH - 4) {
+            sb.append(' ');
+        }
+        memo = sb.append("\u20acEND").toString();
+        ole = new byte[OLE_LENGTH];
+        for (int i = 0; i < ole.length; i++) {
+            ole[i] = (byte) (i * 31 + i / 977);
+        }
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        LobCreator lobs = Hibernate.getLobCreator(session);
+        Attachment attachment = new Attachment(1);
+        attachment.setNotes(lobs.createClob(memo));
+        attachment.setContent(lobs.createBlob(ole));
+        session.persist(attachment);
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private static int spillFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir"))
+                .list((dir, name) -> name.startsWith("ucanaccess-memo"));
+        return names == null ? 0 : names.length;
+    }
+
+    private static String readAll(Reader reader) throws Exception {
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) >= 0) {
+                sb.append(buffer, 0, n);
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testLargeMemoRoundTrip() throws Exception {
+        int before = spillFiles();
+        Session session = sessionFactory.openSession();
+        try {
+            Clob notes = session.get(Attachment.class, 1).getNotes();
+            assertEquals(before + 1, spillFiles());
+            assertEquals(MEMO_LENGTH, notes.length());
+            assertEquals(memo, readAll(notes.getCharacterStream()));
+            assertEquals("\u20acEND", notes.getSubString(MEMO_LENGTH - 3, 10));
+            assertEquals(memo.substring(1000, 1100), readAll(notes.getCharacterStream(1001, 100)));
+        } finally {
+            session.close();
+        }
+        // deleted when the session is closed
+        assertEquals(before, spillFiles());
+    }
+
+    public void testPosition() throws Exception {
+        Session session = sessionFactory.openSession();
+        try {
+            Clob notes = session.get(Attachment.class, 1).getNotes();
+            assertEquals(memo.indexOf("line 1\n") + 1, notes.position("line 1\n", 1));
+            assertEquals(memo.indexOf("line 10\n") + 1, notes.position("line 10\n", 1));
+            int middle = memo.indexOf("line 50000\n");
+            assertEquals(middle + 1, notes.position("line 50000\n", 1));
+            assertEquals(middle + 1, notes.position("line 50000\n", middle + 1));
+            assertEquals(-1, notes.position("line 50000\n", middle + 2));
+            assertEquals(MEMO_LENGTH - 3, notes.position("\u20acEND", 1));
+            assertEquals(-1, notes.position("\u20acEND!", 1));
+            assertEquals(MEMO_LENGTH - 3, notes.position(Hibernate.getLobCreator(session).createClob("\u20acEND"), 1));
+        } finally {
+            session.close();
+        }
+    }
+
+    public void testFreeDeletesFile() throws Exception {
+        int before = spillFiles();
+        Session session = sessionFactory.openSession();
+        try {
+            Clob notes = session.get(Attachment.class, 1).getNotes();
+            assertEquals(before + 1, spillFiles());
+            notes.free();
+            assertEquals(before, spillFiles());
+            try {
+                notes.length();
+                fail("freed Clob was readable");
+            } catch (SQLException e) {
+                // expected
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    public void testLargeOleRoundTrip() throws Exception {
+        Session session = sessionFactory.openSession();
+        try {
+            Blob content = session.get(Attachment.class, 1).getContent();
+            assertEquals(OLE_LENGTH, content.length());
+            byte[] read = new byte[OLE_LENGTH];
+            try (InputStream in = content.getBinaryStream()) {
+                int offset = 0;
+                int n;
+                while (offset < read.length && (n = in.read(read, offset, read.length - offset)) > 0) {
+                    offset += n;
+                }
+                assertEquals(OLE_LENGTH, offset);
+                assertEquals(-1, in.read());
+            }
+            assertTrue(Arrays.equals(ole, read));
+            byte[] tail = Arrays.copyOfRange(ole, OLE_LENGTH - 100, OLE_LENGTH);
+            assertTrue(Arrays.equals(tail, content.getBytes(OLE_LENGTH - 99, 100)));
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionImplementor;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessMetrics;
+import net.ucanaccess.hibernate.dialect.UCanAccessMetricsListener;
+import net.ucanaccess.hibernate.dialect.UCanAccessStatementInspector;
+
+/**
+ * Checks the statement metrics recorded by UCanAccessStatementInspector and
+ * UCanAccessMetricsListener, and the row counts of UCanAccessConnectionProvider.
+ */
+public class MetricsTest extends TestCase {
+    private SessionFactory sessionFactory;
+    private final UCanAccessMetrics metrics = UCanAccessMetrics.getInstance();
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(AvailableSettings.CONNECTION_PROVIDER, UCanAccessConnectionProvider.class.getName());
+        ssrb.applySetting(AvailableSettings.POOL_SIZE, "5");
+        ssrb.applySetting(AvailableSettings.STATEMENT_INSPECTOR, UCanAccessStatementInspector.class.getName());
+        ssrb.applySetting(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, UCanAccessMetricsListener.class.getName());
+        ssrb.applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, "20");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).addAnnotatedClass(Ticket.class).buildMetadata()
+                    .buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+        metrics.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    /** the statistics of the only shape whose SQL contains the fragment */
+    private UCanAccessMetrics.StatementShape shape(String fragment) {
+        UCanAccessMetrics.StatementShape found = null;
+        for (UCanAccessMetrics.StatementShape shape : metrics.getStatementShapes()) {
+            if (shape.getSql().contains(fragment)) {
+                assertNull("more than one shape contains " + fragment, found);
+                found = shape;
+            }
+        }
+        assertNotNull("no shape contains " + fragment, found);
+        return found;
+    }
+
+    public void testShapes() {
+        try (Session session = sessionFactory.openSession()) {
+            for (String title : new String[] { "first", "second", "third" }) {
+                session.createQuery("from Event e where e.title = '" + title + "'", Event.class).list();
+            }
+        }
+        UCanAccessMetrics.StatementShape shape = shape("from [EVENTS]");
+        assertEquals(3, shape.getExecutions());
+        assertTrue(shape.getSql(), shape.getSql().endsWith("=?"));
+        long histogramTotal = 0;
+        for (long count : shape.getHistogram()) {
+            histogramTotal += count;
+        }
+        assertEquals(3, histogramTotal);
+        assertEquals(3, metrics.getStatementCount());
+    }
+
+    public void testBatches() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < 10; i++) {
+                session.persist(new Ticket("holder " + i));
+            }
+            session.getTransaction().commit();
+            session.createQuery("from Ticket", Ticket.class).list();
+        }
+        assertTrue(shape("(JDBC batches)").getExecutions() > 0);
+        assertEquals(1, shape("from [Ticket]").getExecutions());
+        for (UCanAccessMetrics.StatementShape shape : metrics.getStatementShapes()) {
+            assertFalse(shape.toString(), shape.getSql().startsWith("insert into [Ticket]"));
+        }
+    }
+
+    public void testRows() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < 5; i++) {
+                session.persist(new Ticket("holder " + i));
+            }
+            session.getTransaction().commit();
+            session.createQuery("from Ticket", Ticket.class).list();
+            session.createQuery("from Ticket t where t.id < 0", Ticket.class).list();
+        }
+        UCanAccessMetrics.StatementShape none = shape("<?");
+        UCanAccessMetrics.StatementShape all = null;
+        for (UCanAccessMetrics.StatementShape shape : metrics.getStatementShapes()) {
+            if (shape.getSql().startsWith("select") && shape.getSql().endsWith("from [Ticket] ticket0_")) {
+                all = shape;
+            }
+        }
+        assertNotNull(all);
+        assertEquals(1, all.getResultSets());
+        assertEquals(5, all.getRows());
+        assertEquals(1, none.getResultSets());
+        assertEquals(0, none.getRows());
+        assertTrue(none.toString(), none.toString().contains("0.0 rows"));
+    }
+
+    public void testStatementWithoutInspectedSql() throws SQLException {
+        try (Session session = sessionFactory.openSession()) {
+            session.createQuery("from Event", Event.class).list();
+            long statements = metrics.getStatementCount();
+
+            // (executed by Hibernate, but created without its SQL, so the inspector does not see it)
+            JdbcCoordinator jdbcCoordinator = ((SessionImplementor) session).getJdbcCoordinator();
+            Statement statement = jdbcCoordinator.getStatementPreparer().createStatement();
+            try {
+                ResultSet rs = jdbcCoordinator.getResultSetReturn().extract(statement,
+                        "select count(*) from [EVENTS]");
+                assertTrue(rs.next());
+            } finally {
+                jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+            }
+            assertEquals(statements, metrics.getStatementCount());
+        }
+        assertEquals(1, shape("from [EVENTS]").getExecutions());
+    }
+
+    public void testInspectorLeavesSqlAlone() {
+        String sql = "select * from [EVENTS] where [title] = 'x'";
+        assertSame(sql, new UCanAccessStatementInspector().inspect(sql));
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.cfg.AvailableSettings;
+
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+
+/**
+ * Exercises the persistent mirror cache: the mirror is reused when the
+ * database file has not changed, rebuilt when it was modified outside of
+ * the mirror, and left alone by a second pool while the first one uses it.
+ */
+public class MirrorCacheTest extends TestCase {
+    private File directory;
+    private File cacheDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("mirror").toFile();
+        cacheDirectory = new File(directory, "cache");
+        // create the database without the cache; the tests start from an empty cache directory
+        UCanAccessConnectionProvider pool = startPool(false);
+        Connection conn = pool.getConnection();
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE cached (id INTEGER PRIMARY KEY, name VARCHAR(50))");
+            st.execute("INSERT INTO cached (id, name) VALUES (1, 'one')");
+        }
+        conn.commit();
+        pool.closeConnection(conn);
+        pool.stop();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File databaseFile() {
+        return new File(directory, "cached.accdb");
+    }
+
+    private UCanAccessConnectionProvider startPool() throws SQLException {
+        return startPool(true);
+    }
+
+    private UCanAccessConnectionProvider startPool(boolean cached) throws SQLException {
+        Map<String, Object> values = new HashMap<>();
+        values.put(AvailableSettings.URL, "jdbc:ucanaccess://" + databaseFile().getAbsolutePath().replace('\\', '/')
+                + ";newDatabaseVersion=V2010");
+        if (cached) {
+            values.put(UCanAccessSettings.MIRROR_CACHE_DIRECTORY, cacheDirectory.getAbsolutePath());
+        }
+        // unload the database when the pool stops, so that the next pool reads the file again
+        values.put(UCanAccessSettings.OPTION_PREFIX + "immediatelyReleaseResources", "true");
+        UCanAccessConnectionProvider pool = new UCanAccessConnectionProvider();
+        pool.configure(values);
+        pool.closeConnection(pool.getConnection());
+        return pool;
+    }
+
+    private static int count(UCanAccessConnectionProvider pool) throws SQLException {
+        Connection conn = pool.getConnection();
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM cached")) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            pool.closeConnection(conn);
+        }
+    }
+
+    private File[] cacheFiles(String suffix) {
+        return cacheDirectory.listFiles((dir, name) -> name.startsWith("cached.accdb-") && name.contains(suffix));
+    }
+
+    public void testMirrorIsReused() throws Exception {
+        UCanAccessConnectionProvider pool = startPool();
+        try {
+            assertFalse(pool.isMirrorReused());
+        } finally {
+            pool.stop();
+        }
+        pool = startPool();
+        try {
+            assertTrue(pool.isMirrorReused());
+            assertEquals(1, count(pool));
+        } finally {
+            pool.stop();
+        }
+    }
+
+    public void testExternalModificationInvalidatesMirror() throws Exception {
+        startPool().stop();
+        try (Database db = DatabaseBuilder.open(databaseFile())) {
+            db.getTable("CACHED").addRow(2, "two");
+        }
+        UCanAccessConnectionProvider pool = startPool();
+        try {
+            assertFalse(pool.isMirrorReused());
+            assertEquals(2, count(pool));
+        } finally {
+            pool.stop();
+        }
+        // the rebuilt mirror is cached in turn
+        pool = startPool();
+        try {
+            assertTrue(pool.isMirrorReused());
+            assertEquals(2, count(pool));
+        } finally {
+            pool.stop();
+        }
+    }
+
+    public void testSecondPoolLeavesLiveMirrorAlone() throws Exception {
+        startPool().stop();
+        UCanAccessConnectionProvider first = startPool();
+        try {
+            assertTrue(first.isMirrorReused());
+            int mirrorFiles = cacheFiles("-mirror").length;
+            assertTrue(mirrorFiles > 0);
+
+            UCanAccessConnectionProvider second = startPool();
+            try {
+                assertFalse(second.isMirrorReused());
+                assertEquals(1, count(second));
+            } finally {
+                second.stop();
+            }
+            assertEquals(mirrorFiles, cacheFiles("-mirror").length);
+            assertEquals(1, count(first));
+        } finally {
+            first.stop();
+        }
+        assertEquals(1, cacheFiles(".fingerprint").length);
+
+        UCanAccessConnectionProvider next = startPool();
+        try {
+            assertTrue(next.isMirrorReused());
+        } finally {
+            next.stop();
+        }
+    }
+}
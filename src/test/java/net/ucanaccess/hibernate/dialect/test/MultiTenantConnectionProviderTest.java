@@ -0,0 +1,155 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import junit.framework.TestCase;
+import net.ucanaccess.jdbc.DBReferenceSingleton;
+import net.ucanaccess.hibernate.dialect.UCanAccessMetrics;
+import net.ucanaccess.hibernate.dialect.UCanAccessMultiTenantConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+
+/**
+ * Exercises UCanAccessMultiTenantConnectionProvider: tenant databases are
+ * loaded on first use and the least recently used idle ones are unloaded
+ * beyond the configured limits.
+ */
+public class MultiTenantConnectionProviderTest extends TestCase {
+    private File tenantDirectory;
+    private SessionFactory sessionFactory;
+    private UCanAccessMultiTenantConnectionProvider provider;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+        tenantDirectory = Files.createTempDirectory("tenants").toFile();
+        UCanAccessMetrics.getInstance().reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+        if (provider != null) {
+            provider.stop();
+        }
+        for (File file : tenantDirectory.listFiles()) {
+            file.delete();
+        }
+        tenantDirectory.delete();
+    }
+
+    private String tenantUrl() {
+        return "jdbc:ucanaccess://" + tenantDirectory.getAbsolutePath().replace('\\', '/')
+                + "/{tenant}.accdb;newDatabaseVersion=V2010";
+    }
+
+    /** whether UCanAccess still holds the tenant's mirror */
+    private boolean isMirrorLoaded(String tenant) {
+        return DBReferenceSingleton.getInstance().getReference(new File(tenantDirectory, tenant + ".accdb")) != null;
+    }
+
+    public void testSessionsUseTheirTenantsDatabase() throws Exception {
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(AvailableSettings.MULTI_TENANT, "DATABASE");
+        ssrb.applySetting(AvailableSettings.MULTI_TENANT_CONNECTION_PROVIDER,
+                UCanAccessMultiTenantConnectionProvider.class.getName());
+        ssrb.applySetting(UCanAccessSettings.TENANT_URL, tenantUrl());
+        ssrb.applySetting(UCanAccessSettings.TENANT_DEFAULT, "head_office");
+        ssrb.applySetting(UCanAccessSettings.TENANT_PINNED, "head_office");
+        ssrb.applySetting(UCanAccessSettings.TENANT_MAX_LOADED, "3");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+        UCanAccessMultiTenantConnectionProvider tenants = ((SessionFactoryImplementor) sessionFactory)
+                .getServiceRegistry().getService(MultiTenantConnectionProvider.class)
+                .unwrap(UCanAccessMultiTenantConnectionProvider.class);
+        assertEquals(Arrays.asList("head_office"), tenants.getLoadedTenants());
+
+        for (String tenant : new String[] { "branch1", "branch2", "branch1", "branch3" }) {
+            try (Session session = sessionFactory.withOptions().tenantIdentifier(tenant).openSession()) {
+                String url = session.doReturningWork(connection -> connection.getMetaData().getURL());
+                assertTrue(url, url.contains("/" + tenant + ".accdb"));
+            }
+        }
+        // branch2 was the least recently used
+        assertEquals(new HashSet<>(Arrays.asList("head_office", "branch1", "branch3")),
+                new HashSet<>(tenants.getLoadedTenants()));
+        assertEquals(1, tenants.getEvictionCount());
+        assertFalse("branch2's mirror is still loaded", isMirrorLoaded("branch2"));
+        assertTrue(isMirrorLoaded("branch1"));
+        assertEquals(1, UCanAccessMetrics.getInstance().getTenantEvictionCount());
+        assertEquals(4, UCanAccessMetrics.getInstance().getTenantLoadCount());
+    }
+
+    public void testMemoryBudgetSkipsTenantsInUse() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(UCanAccessSettings.TENANT_URL, tenantUrl());
+        settings.put(UCanAccessSettings.TENANT_MEMORY_BUDGET, "1");
+        settings.put(AvailableSettings.POOL_SIZE, "2");
+        provider = new UCanAccessMultiTenantConnectionProvider();
+        provider.configure(settings);
+
+        Connection busy = provider.getConnection("a");
+        for (String tenant : new String[] { "b", "c", "d" }) {
+            provider.releaseConnection(tenant, provider.getConnection(tenant));
+        }
+        // (a new database file is about 340 KB, so only three fit into a megabyte)
+        assertFalse(provider.getLoadedTenants().contains("b"));
+        assertTrue(provider.getLoadedTenants().contains("a"));
+        assertTrue(provider.getLoadedBytes() <= 1024 * 1024);
+        assertFalse("b's mirror is still loaded", isMirrorLoaded("b"));
+        assertTrue(isMirrorLoaded("a"));
+        provider.releaseConnection("a", busy);
+
+        try {
+            provider.getConnection("../a");
+            fail("tenant identifiers must not name other folders");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+}
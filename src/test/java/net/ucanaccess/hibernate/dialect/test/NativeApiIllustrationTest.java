@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
 import org.hibernate.Session;
@@ -179,6 +180,17 @@ public class NativeApiIllustrationTest extends TestCase {
         session.getTransaction().commit();
         session.close();
 
+        // first page only (max rows without an offset)
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+        rangeQry = session.createQuery("from Event order by id");
+        rangeQry.setMaxResults(1);
+        resultList = (List<Event>) rangeQry.list();
+        assertEquals(1, resultList.size());
+        assertEquals(eventId1, (int) resultList.get(0).getId());
+        session.getTransaction().commit();
+        session.close();
+
         // count(distinct ...) query
         session = sessionFactory.openSession();
         session.beginTransaction();
@@ -188,6 +200,16 @@ public class NativeApiIllustrationTest extends TestCase {
         session.getTransaction().commit();
         session.close();
 
+        // streaming (forward-only) query
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+        try (Stream<Event> eventStream = session.createQuery("from Event order by id", Event.class)
+                .setFetchSize(100).stream()) {
+            assertEquals(2, eventStream.count());
+        }
+        session.getTransaction().commit();
+        session.close();
+
         session = sessionFactory.openSession();
         session.beginTransaction();
         qry = session.createQuery("delete from Guest");
@@ -0,0 +1,165 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessRegionFactory;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+
+/**
+ * Exercises UCanAccessRegionFactory: entities are cached, a change made to
+ * the database file outside of Hibernate evicts them, and the watcher thread
+ * stops with the SessionFactory.
+ */
+public class RegionFactoryTest extends TestCase {
+    private static final String WATCHER_THREAD = "UCanAccess cache invalidation";
+    private static final long POLL_INTERVAL_MILLIS = 200;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting("hibernate.generate_statistics", "true");
+        ssrb.applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true");
+        ssrb.applySetting(AvailableSettings.CACHE_REGION_FACTORY, UCanAccessRegionFactory.class.getName());
+        ssrb.applySetting(AvailableSettings.JPA_SHARED_CACHE_MODE, "ALL");
+        ssrb.applySetting(UCanAccessSettings.CACHE_POLL_INTERVAL, Long.toString(POLL_INTERVAL_MILLIS));
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.persist(new Guest("anne@example.com", "Anne"));
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private UCanAccessRegionFactory regionFactory() {
+        return (UCanAccessRegionFactory) sessionFactory.unwrap(SessionFactoryImplementor.class).getCache()
+                .getRegionFactory();
+    }
+
+    /**
+     * Waits until the evictions caused by earlier writes (including those
+     * made through Hibernate) are over
+     */
+    private void awaitQuiet() throws InterruptedException {
+        long count;
+        do {
+            count = regionFactory().getInvalidationCount();
+            Thread.sleep(3 * POLL_INTERVAL_MILLIS);
+        } while (regionFactory().getInvalidationCount() != count);
+    }
+
+    private String name(String email) {
+        try (Session session = sessionFactory.openSession()) {
+            return session.get(Guest.class, email).getName();
+        }
+    }
+
+    private static boolean watcherRunning() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(WATCHER_THREAD) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testEntitiesAreCached() throws Exception {
+        awaitQuiet();
+        Statistics statistics = sessionFactory.getStatistics();
+        sessionFactory.getCache().evictAllRegions();
+        statistics.clear();
+        assertEquals("Anne", name("anne@example.com"));
+        assertEquals(0, statistics.getSecondLevelCacheHitCount());
+        assertEquals(1, statistics.getSecondLevelCachePutCount());
+        assertEquals("Anne", name("anne@example.com"));
+        assertEquals(1, statistics.getSecondLevelCacheHitCount());
+    }
+
+    public void testExternalChangeEvictsEntities() throws Exception {
+        awaitQuiet();
+        assertEquals("Anne", name("anne@example.com"));
+        long invalidations = regionFactory().getInvalidationCount();
+
+        // a change that Hibernate does not know about
+        String url = (String) sessionFactory.getProperties().get(AvailableSettings.URL);
+        try (Connection conn = DriverManager.getConnection(url, "", ""); Statement st = conn.createStatement()) {
+            st.executeUpdate("UPDATE [Guest] SET [name] = 'Annie' WHERE [email] = 'anne@example.com'");
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (regionFactory().getInvalidationCount() == invalidations && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(regionFactory().getInvalidationCount() > invalidations);
+        assertEquals("Annie", name("anne@example.com"));
+    }
+
+    public void testWatcherStopsWithSessionFactory() throws Exception {
+        assertTrue(watcherRunning());
+        sessionFactory.close();
+        sessionFactory = null;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (watcherRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(watcherRunning());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessRoutingConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+
+/**
+ * Exercises UCanAccessRoutingConnectionProvider: read-only sessions run on
+ * the read pool and do not wait for uncommitted writes.
+ */
+public class RoutingConnectionProviderTest extends TestCase {
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting("hibernate.connection.provider_class", UCanAccessRoutingConnectionProvider.class.getName());
+        ssrb.applySetting(UCanAccessSettings.READ_POOL_SIZE, "2");
+        ssrb.applySetting(UCanAccessSettings.READ_POOL_MVCC, "true");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    public void testReadOnlySessionDoesNotWaitForWriter() throws Exception {
+        UCanAccessRoutingConnectionProvider provider = ((SessionFactoryImplementor) sessionFactory)
+                .getServiceRegistry().getService(ConnectionProvider.class)
+                .unwrap(UCanAccessRoutingConnectionProvider.class);
+        long readsBefore = provider.getReadCount();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Session writer = sessionFactory.openSession()) {
+            writer.beginTransaction();
+            Event event = new Event("routing", LocalDateTime.of(2018, 3, 14, 15, 9, 26));
+            event.setDescription("routing");
+            writer.persist(event);
+            writer.flush();
+
+            // the insert is not committed yet, and holds its locks
+            Future<Long> count = executor.submit(() -> {
+                try (Session reader = UCanAccessRoutingConnectionProvider.openReadOnlySession(sessionFactory)) {
+                    return countRoutingEvents(reader);
+                }
+            });
+            assertEquals(0L, count.get(10, TimeUnit.SECONDS).longValue());
+
+            writer.getTransaction().commit();
+        } finally {
+            executor.shutdown();
+        }
+
+        try (Session reader = UCanAccessRoutingConnectionProvider.openReadOnlySession(sessionFactory)) {
+            assertEquals(1L, countRoutingEvents(reader));
+            reader.beginTransaction();
+            assertEquals(1L, countRoutingEvents(reader));
+            reader.getTransaction().commit();
+            // still on the read pool after the transaction
+            assertEquals(1L, countRoutingEvents(reader));
+        }
+        assertEquals(readsBefore + 2, provider.getReadCount());
+        assertEquals(0, provider.getReadPool().getActiveCount());
+        assertEquals(0, provider.getWritePool().getActiveCount());
+    }
+
+    public void testDefaultReadOnlyAloneUsesWritePool() {
+        UCanAccessRoutingConnectionProvider provider = ((SessionFactoryImplementor) sessionFactory)
+                .getServiceRegistry().getService(ConnectionProvider.class)
+                .unwrap(UCanAccessRoutingConnectionProvider.class);
+        long readsBefore = provider.getReadCount();
+        long writesBefore = provider.getWriteCount();
+
+        try (Session session = sessionFactory.openSession()) {
+            // only affects the entities the session loads, not its connection
+            session.setDefaultReadOnly(true);
+            countRoutingEvents(session);
+        }
+        assertEquals(readsBefore, provider.getReadCount());
+        assertEquals(writesBefore + 1, provider.getWriteCount());
+    }
+
+    private static long countRoutingEvents(Session session) {
+        return session.createQuery("select count(e) from Event e where e.title = 'routing'", Long.class)
+                .getSingleResult();
+    }
+
+}
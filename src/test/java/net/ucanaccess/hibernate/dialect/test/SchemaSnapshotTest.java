@@ -0,0 +1,170 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.tool.schema.spi.SchemaManagementException;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessMetrics;
+import net.ucanaccess.hibernate.dialect.UCanAccessSchemaManagementTool;
+import net.ucanaccess.hibernate.dialect.UCanAccessSchemaSnapshot;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+
+/**
+ * Checks that UCanAccessSchemaManagementTool validates and updates the schema
+ * from a snapshot, and reads the schema again only when the database file has
+ * changed.
+ */
+public class SchemaSnapshotTest extends TestCase {
+    private File schemaCacheDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        // start from the tables of Event and Guest only
+        buildSessionFactory("drop", false, Event.class, Guest.class, Ticket.class).close();
+        buildSessionFactory("create", false, Event.class, Guest.class).close();
+        UCanAccessSchemaSnapshot.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (schemaCacheDirectory != null) {
+            for (File file : schemaCacheDirectory.listFiles()) {
+                file.delete();
+            }
+            schemaCacheDirectory.delete();
+        }
+    }
+
+    private SessionFactory buildSessionFactory(String hbm2ddl, boolean snapshots, Class<?>... classes) {
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(AvailableSettings.HBM2DDL_AUTO, hbm2ddl);
+        if (snapshots) {
+            ssrb.applySetting(AvailableSettings.SCHEMA_MANAGEMENT_TOOL,
+                    UCanAccessSchemaManagementTool.class.getName());
+        }
+        if (schemaCacheDirectory != null) {
+            ssrb.applySetting(UCanAccessSettings.SCHEMA_CACHE_DIRECTORY, schemaCacheDirectory.getPath());
+        }
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            for (Class<?> c : classes) {
+                sources.addAnnotatedClass(c);
+            }
+            return sources.buildMetadata().buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    public void testValidateReusesSnapshot() {
+        UCanAccessMetrics metrics = UCanAccessMetrics.getInstance();
+        long hits = metrics.getSchemaCacheHitCount();
+        long misses = metrics.getSchemaCacheMissCount();
+
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+        assertEquals(misses + 1, metrics.getSchemaCacheMissCount());
+        assertEquals(hits, metrics.getSchemaCacheHitCount());
+
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+        assertEquals(misses + 1, metrics.getSchemaCacheMissCount());
+        assertEquals(hits + 1, metrics.getSchemaCacheHitCount());
+    }
+
+    public void testSnapshotSurvivesRestart() throws IOException {
+        schemaCacheDirectory = Files.createTempDirectory("schema-cache").toFile();
+        UCanAccessMetrics metrics = UCanAccessMetrics.getInstance();
+        long hits = metrics.getSchemaCacheHitCount();
+        long misses = metrics.getSchemaCacheMissCount();
+
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+        assertEquals(misses + 1, metrics.getSchemaCacheMissCount());
+        assertEquals(1, schemaCacheDirectory.listFiles().length);
+
+        // as if the JVM had been restarted
+        UCanAccessSchemaSnapshot.clear();
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+        assertEquals(misses + 1, metrics.getSchemaCacheMissCount());
+        assertEquals(hits + 1, metrics.getSchemaCacheHitCount());
+    }
+
+    public void testUnreadableSnapshotFileIsIgnored() throws IOException {
+        schemaCacheDirectory = Files.createTempDirectory("schema-cache").toFile();
+        UCanAccessMetrics metrics = UCanAccessMetrics.getInstance();
+        long misses = metrics.getSchemaCacheMissCount();
+
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+        File file = schemaCacheDirectory.listFiles()[0];
+        assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1).contains("format=1"));
+
+        // e.g., the start of a serialized Java object
+        Files.write(file.toPath(), new byte[] { (byte) 0xac, (byte) 0xed, 0, 5, 's', 'r' });
+        UCanAccessSchemaSnapshot.clear();
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+        assertEquals(misses + 2, metrics.getSchemaCacheMissCount());
+        assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1).contains("format=1"));
+    }
+
+    public void testUpdateInvalidatesSnapshot() {
+        UCanAccessMetrics metrics = UCanAccessMetrics.getInstance();
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+
+        // the snapshot does not have the tickets table yet ...
+        long misses = metrics.getSchemaCacheMissCount();
+        try {
+            buildSessionFactory("validate", true, Event.class, Guest.class, Ticket.class).close();
+            fail("validation should have failed");
+        } catch (SchemaManagementException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("missing table"));
+        }
+        assertEquals(misses, metrics.getSchemaCacheMissCount());
+
+        // ... so the update creates it, which changes the database file ...
+        buildSessionFactory("update", true, Event.class, Guest.class, Ticket.class).close();
+        assertEquals(misses, metrics.getSchemaCacheMissCount());
+
+        // ... and the next validation reads the schema again
+        buildSessionFactory("validate", true, Event.class, Guest.class).close();
+        assertEquals(misses + 1, metrics.getSchemaCacheMissCount());
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.cfg.AvailableSettings;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessSqlTranslationCache;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+import net.ucanaccess.jdbc.UcanaccessConnection;
+import net.ucanaccess.jdbc.UcanaccessPreparedStatement;
+
+/**
+ * Exercises UCanAccessSqlTranslationCache (via UCanAccessConnectionProvider):
+ * statements prepared through the cache are translated once and return the
+ * same results as UCanAccess's own prepareStatement, DDL empties the cache,
+ * and the private driver method the cache relies on is still there.
+ */
+public class SqlTranslationCacheTest extends TestCase {
+    private File directory;
+    private UCanAccessConnectionProvider pool;
+    private UCanAccessSqlTranslationCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("sqlcache").toFile();
+        Map<String, Object> values = new HashMap<>();
+        values.put(AvailableSettings.URL, "jdbc:ucanaccess://" + directory.getAbsolutePath().replace('\\', '/')
+                + "/sqlcache.accdb;newDatabaseVersion=V2010");
+        values.put(UCanAccessSettings.SQL_CACHE_SIZE, "1000");
+        pool = new UCanAccessConnectionProvider();
+        pool.configure(values);
+        cache = pool.getSqlCache();
+        Connection conn = pool.getConnection();
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE cached (id INTEGER PRIMARY KEY, name VARCHAR(50), created DATETIME)");
+            st.execute("INSERT INTO cached (id, name, created) VALUES (1, 'one', #2000-01-01#)");
+            st.execute("INSERT INTO cached (id, name, created) VALUES (2, 'two', #2010-06-15#)");
+            st.execute("INSERT INTO cached (id, name, created) VALUES (3, 'three', #2020-12-31#)");
+        }
+        conn.commit();
+        pool.closeConnection(conn);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.stop();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static List<List<Object>> rows(PreparedStatement ps) throws SQLException {
+        List<List<Object>> rows = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                List<Object> row = new ArrayList<>();
+                for (int i = 1; i <= columns; i++) {
+                    row.add(rs.getObject(i));
+                }
+                rows.add(row);
+            }
+        } finally {
+            ps.close();
+        }
+        return rows;
+    }
+
+    public void testCheckLastModifiedIsAvailable() throws Exception {
+        // the cache calls this private method; if UCanAccess changes it, the cache must be revisited
+        Method method = UcanaccessConnection.class.getDeclaredMethod("checkLastModified");
+        assertEquals(void.class, method.getReturnType());
+        assertFalse(Modifier.isStatic(method.getModifiers()));
+
+        assertNotNull(cache);
+        Connection conn = pool.getConnection();
+        try {
+            assertFalse(conn instanceof UcanaccessConnection);
+            assertNotNull(conn.unwrap(UcanaccessConnection.class));
+        } finally {
+            pool.closeConnection(conn);
+        }
+    }
+
+    public void testRepeatedStatementsAreTranslatedOnce() throws Exception {
+        String sql = "SELECT [name] FROM [cached] WHERE UCase([name]) = ? ORDER BY [id]";
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        Connection conn = pool.getConnection();
+        try {
+            for (String name : new String[] { "ONE", "TWO" }) {
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ps.setString(1, name);
+                List<List<Object>> rows = rows(ps);
+                assertEquals(1, rows.size());
+                assertEquals(name.toLowerCase(), rows.get(0).get(0));
+            }
+        } finally {
+            pool.closeConnection(conn);
+        }
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    public void testResultsMatchDriver() throws Exception {
+        String[] statements = {
+                "SELECT [id], [name] & '!' FROM [cached] WHERE [created] > #2005-01-01# ORDER BY [id]",
+                "SELECT IIf([id] > 1, 'big', 'small'), Year([created]) FROM [cached] ORDER BY [id] DESC",
+                "SELECT TOP 2 [name] FROM [cached] ORDER BY [created] DESC",
+                "SELECT COUNT(*) FROM [cached] WHERE [name] LIKE 't*'" };
+        Connection conn = pool.getConnection();
+        try {
+            UcanaccessConnection driver = conn.unwrap(UcanaccessConnection.class);
+            for (String sql : statements) {
+                // twice through the cache: translated, then reused
+                List<List<Object>> expected = rows(driver.prepareStatement(sql));
+                assertEquals(sql, expected, rows(conn.prepareStatement(sql)));
+                assertEquals(sql, expected, rows(conn.prepareStatement(sql)));
+            }
+        } finally {
+            pool.closeConnection(conn);
+        }
+    }
+
+    public void testStatementsReportPooledConnection() throws Exception {
+        Connection conn = pool.getConnection();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT [id] FROM [cached]");
+                Statement st = conn.createStatement()) {
+            assertSame(conn, ps.getConnection());
+            assertSame(conn, st.getConnection());
+            assertNotNull(ps.unwrap(UcanaccessPreparedStatement.class));
+        } finally {
+            pool.closeConnection(conn);
+        }
+    }
+
+    public void testOffByDefault() throws Exception {
+        Map<String, Object> values = new HashMap<>();
+        values.put(AvailableSettings.URL, "jdbc:ucanaccess://" + directory.getAbsolutePath().replace('\\', '/')
+                + "/sqlcache.accdb");
+        UCanAccessConnectionProvider plain = new UCanAccessConnectionProvider();
+        plain.configure(values);
+        try {
+            assertNull(plain.getSqlCache());
+        } finally {
+            plain.stop();
+        }
+    }
+
+    public void testDdlEmptiesCache() throws Exception {
+        Connection conn = pool.getConnection();
+        try {
+            conn.prepareStatement("SELECT [id] FROM [cached]").close();
+            assertTrue(cache.size() > 0);
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE TABLE other (id INTEGER PRIMARY KEY)");
+            }
+            assertEquals(0, cache.size());
+
+            conn.prepareStatement("SELECT [id] FROM [cached]").close();
+            assertTrue(cache.size() > 0);
+            try (PreparedStatement ps = conn.prepareStatement("DROP TABLE other")) {
+                ps.execute();
+            }
+            assertEquals(0, cache.size());
+            conn.commit();
+        } finally {
+            pool.closeConnection(conn);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import javax.persistence.Entity;
+import javax.persistence.PrimaryKeyJoinColumn;
+
+/**
+ * 
+ * Stadium entity - a Venue whose own columns are in a second table (with a
+ * differently named key column)
+ *
+ */
+@Entity
+@PrimaryKeyJoinColumn(name = "STADIUM_ID")
+public class Stadium extends Venue {
+    private int capacity;
+    public int getCapacity() { return capacity; }
+    public void setCapacity(int capacity) { this.capacity = capacity; }
+
+    public Stadium() {
+        // no-argument constructor required by Hibernate
+    }
+
+    public Stadium(Integer id, String name, String city, int capacity) {
+        super(id, name, city);
+        this.capacity = capacity;
+    }
+}
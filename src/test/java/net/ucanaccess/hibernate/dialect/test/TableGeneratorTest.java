@@ -0,0 +1,216 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.PooledLoOptimizer;
+import org.hibernate.id.enhanced.TableGenerator;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessDialectTableGenerator;
+import net.ucanaccess.hibernate.dialect.UCanAccessUrl;
+
+/**
+ * Exercises UCanAccessDialectTableGenerator (via the Ticket entity), with
+ * several threads, and with another JVM holding the id lock file.
+ */
+public class TableGeneratorTest extends TestCase {
+    /**
+     * Holds the exclusive lock on a file in another JVM: prints "locked"
+     * once it has the lock and releases it when its standard input is closed
+     */
+    public static final class Locker {
+        public static void main(String[] args) throws Exception {
+            try (FileChannel channel = FileChannel.open(new File(args[0]).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                channel.lock();
+                System.out.println("locked");
+                System.out.flush();
+                while (System.in.read() >= 0) {
+                    // wait
+                }
+            }
+        }
+    }
+
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        // the generator reserves id blocks on a connection of its own
+        ssrb.applySetting("hibernate.connection.pool_size", "5");
+        ssrb.applySetting("hibernate.show_sql", "false");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Ticket.class)
+                    .buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    public void testConcurrentBlockAllocation() throws Exception {
+        final int threads = 4;
+        final int ticketsPerThread = 120; // more than two blocks each
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final String holder = "holder" + t;
+            futures.add(executor.submit(new Callable<List<Long>>() {
+                @Override
+                public List<Long> call() {
+                    List<Long> ids = new ArrayList<>();
+                    Session session = sessionFactory.openSession();
+                    session.beginTransaction();
+                    for (int i = 0; i < ticketsPerThread; i++) {
+                        ids.add((Long) session.save(new Ticket(holder)));
+                    }
+                    session.getTransaction().commit();
+                    session.close();
+                    return ids;
+                }
+            }));
+        }
+        Set<Long> allIds = new HashSet<>();
+        for (Future<List<Long>> future : futures) {
+            allIds.addAll(future.get());
+        }
+        executor.shutdown();
+        assertEquals(threads * ticketsPerThread, allIds.size());
+
+        Session session = sessionFactory.openSession();
+        long count = (long) session.createQuery("select count(*) from Ticket").uniqueResult();
+        assertEquals(threads * ticketsPerThread, count);
+        session.close();
+    }
+
+    /** the value stored by the generator, i.e., the last id of the reserved blocks */
+    private static long lastValue(Session session, TableGenerator generator) {
+        return ((Number) session.createNativeQuery("SELECT " + generator.getValueColumnName() + " FROM "
+                + generator.getTableName()).uniqueResult()).longValue();
+    }
+
+    public void testBatchingDefaults() {
+        SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+        assertTrue(factory.getSessionFactoryOptions().getJdbcBatchSize() > 1);
+        assertTrue(factory.getSessionFactoryOptions().isOrderInsertsEnabled());
+
+        TableGenerator generator = (TableGenerator) factory.getMetamodel().entityPersister(Ticket.class)
+                .getIdentifierGenerator();
+        assertEquals(UCanAccessDialectTableGenerator.DEFAULT_BLOCK_SIZE, generator.getIncrementSize());
+        assertTrue(generator.getOptimizer() instanceof PooledLoOptimizer);
+
+        // one block is reserved for the first 50 tickets
+        int blockSize = UCanAccessDialectTableGenerator.DEFAULT_BLOCK_SIZE;
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        long first = (Long) session.save(new Ticket("batch"));
+        long last = lastValue(session, generator);
+        assertEquals(first + blockSize - 1, last);
+        for (int i = 1; i < blockSize; i++) {
+            assertEquals(Long.valueOf(first + i), session.save(new Ticket("batch")));
+        }
+        assertEquals(last, lastValue(session, generator));
+        session.save(new Ticket("batch"));
+        assertEquals(last + blockSize, lastValue(session, generator));
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    public void testIdLockIsHonouredAcrossProcesses() throws Exception {
+        String url = (String) sessionFactory.getProperties().get(AvailableSettings.URL);
+        File lockFile = new File(UCanAccessUrl.databasePath(url) + ".idlock");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        Process locker = new ProcessBuilder(java, "-cp", classPath, Locker.class.getName(),
+                lockFile.getAbsolutePath()).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(locker.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("locked", reader.readLine());
+
+            // the first ticket of a new SessionFactory has to reserve a block
+            Future<Long> id = executor.submit(() -> {
+                try (Session session = sessionFactory.openSession()) {
+                    session.beginTransaction();
+                    Long ticketId = (Long) session.save(new Ticket("waiting"));
+                    session.getTransaction().commit();
+                    return ticketId;
+                }
+            });
+            try {
+                id.get(2, TimeUnit.SECONDS);
+                fail("reserved a block while another process held " + lockFile);
+            } catch (TimeoutException e) {
+                // expected
+            }
+
+            locker.getOutputStream().close();
+            assertTrue(locker.waitFor(1, TimeUnit.MINUTES));
+            assertNotNull(id.get(1, TimeUnit.MINUTES));
+        } finally {
+            locker.destroy();
+            executor.shutdownNow();
+        }
+    }
+
+}
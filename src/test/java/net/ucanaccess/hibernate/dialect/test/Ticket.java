@@ -0,0 +1,55 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * 
+ * Ticket entity - an example of an entity whose ids come from the
+ * table-based id generator, so its inserts can be batched
+ *
+ */
+@Entity
+public class Ticket {
+    @Id
+    @GenericGenerator(name = "ticket_generator",
+            strategy = "net.ucanaccess.hibernate.dialect.UCanAccessDialectTableGenerator")
+    @GeneratedValue(generator = "ticket_generator")
+    @Column(name = "TICKET_ID")
+    private Long id;
+    public Long getId() { return id; }
+    @SuppressWarnings("unused")
+    private void setId(Long id) { this.id = id; }
+
+    @Column(length = 100)
+    private String holder;
+    public String getHolder() { return holder; }
+    public void setHolder(String holder) { this.holder = holder; }
+
+    public Ticket() {
+        // no-argument constructor required by Hibernate
+    }
+
+    public Ticket(String holder) {
+        this.holder = holder;
+    }
+}
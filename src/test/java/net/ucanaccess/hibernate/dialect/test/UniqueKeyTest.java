@@ -0,0 +1,164 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.persistence.PersistenceException;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.boot.spi.MetadataImplementor;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.unique.UniqueDelegate;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Table;
+import org.hibernate.mapping.UniqueKey;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.hibernate.tool.schema.TargetType;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessDialect;
+
+/**
+ * Checks the unique index of Event.description, and that the unique delegate
+ * creates unique indexes only for the tables created by the same run of the
+ * schema tool.
+ */
+public class UniqueKeyTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+    }
+
+    private static StandardServiceRegistry buildRegistry(String hbm2ddl) {
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(AvailableSettings.HBM2DDL_AUTO, hbm2ddl);
+        return ssrb.build();
+    }
+
+    private static SessionFactory buildSessionFactory(StandardServiceRegistry registry) {
+        try {
+            return new MetadataSources(registry).addAnnotatedClass(Event.class).addAnnotatedClass(Guest.class)
+                    .buildMetadata().buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    private static void persist(SessionFactory sessionFactory, String description) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            Event event = new Event("unique key test", null);
+            event.setDescription(description);
+            session.persist(event);
+            session.getTransaction().commit();
+        }
+    }
+
+    private static long countEvents(SessionFactory sessionFactory) {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery("select count(e) from Event e", Long.class).getSingleResult();
+        }
+    }
+
+    public void testDuplicatesAreRejectedButNullsAreNot() {
+        try (SessionFactory sf = buildSessionFactory(buildRegistry("create"))) {
+            persist(sf, null);
+            persist(sf, null);
+            persist(sf, "once");
+            try {
+                persist(sf, "once");
+                fail("the duplicate should have been rejected");
+            } catch (PersistenceException e) {
+                assertTrue(e.getCause() instanceof ConstraintViolationException);
+            }
+            assertEquals(3, countEvents(sf));
+        }
+    }
+
+    /**
+     * Returns a unique key of the description column. (Hibernate adds the
+     * ones for unique columns when it renders the CREATE TABLE statement.)
+     */
+    private static UniqueKey descriptionKey(Table table) {
+        UniqueKey uniqueKey = new UniqueKey();
+        uniqueKey.setName("UK_description");
+        uniqueKey.setTable(table);
+        @SuppressWarnings("unchecked")
+        Iterator<Column> columns = table.getColumnIterator();
+        while (columns.hasNext()) {
+            Column column = columns.next();
+            if (column.getName().equals("description")) {
+                uniqueKey.addColumn(column);
+            }
+        }
+        return uniqueKey;
+    }
+
+    public void testCreatedTablesAreScopedToTheRun() {
+        StandardServiceRegistry registry = buildRegistry("none");
+        try {
+            // two mappings of the same tables, as two SessionFactories would have them
+            Metadata first = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata();
+            Metadata second = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata();
+            Table firstTable = first.getEntityBinding(Event.class.getName()).getTable();
+            Table secondTable = second.getEntityBinding(Event.class.getName()).getTable();
+            assertEquals(firstTable, secondTable);
+
+            Dialect dialect = registry.getService(JdbcServices.class).getDialect();
+            UniqueDelegate delegate = dialect.getUniqueDelegate();
+            assertNotSame(delegate, new UCanAccessDialect().getUniqueDelegate());
+
+            delegate.getTableCreationUniqueConstraintsFragment(firstTable);
+            UniqueKey firstKey = descriptionKey(firstTable);
+            UniqueKey secondKey = descriptionKey(secondTable);
+            String create = delegate.getAlterTableToAddUniqueKeyCommand(firstKey, first);
+            assertTrue(create, create.startsWith("create unique index "));
+            assertNull(delegate.getAlterTableToAddUniqueKeyCommand(secondKey, second));
+
+            // the next run of the schema tool starts afresh
+            new SchemaUpdate().execute(EnumSet.of(TargetType.STDOUT), (MetadataImplementor) first);
+            assertNull(delegate.getAlterTableToAddUniqueKeyCommand(firstKey, first));
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.stat.Statistics;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessBulkLoader;
+import net.ucanaccess.hibernate.dialect.UCanAccessDialect;
+import net.ucanaccess.hibernate.dialect.UCanAccessUpserter;
+
+/**
+ * Exercises UCanAccessUpserter (via the Guest entity).
+ */
+public class UpserterTest extends TestCase {
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting("hibernate.generate_statistics", "true");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    public void testUpsertString() {
+        String sql = new UCanAccessDialect().getUpsertString("EVENTS", new String[] { "EVENT_ID" },
+                new String[] { "EVENT DATE", "title" }, new String[] { "title" });
+        assertEquals("merge into EVENTS using (values (?, ?, ?)) as v (c0, c1, c2) on EVENTS.EVENT_ID = v.c0"
+                + " when matched then update set title = v.c2"
+                + " when not matched then insert (EVENT_ID, [EVENT DATE], title) values (v.c0, v.c1, v.c2)", sql);
+    }
+
+    public void testUpsertInsertsAndUpdatesWithoutReading() {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.persist(new Guest("anne@example.com", "Anne"));
+        session.persist(new Guest("bob@example.com", "Bob"));
+        session.persist(new Guest("cathy@example.com", "Cathy"));
+        session.getTransaction().commit();
+        session.close();
+
+        List<Guest> guests = Arrays.asList(
+                new Guest("anne@example.com", "Anne Updated"),
+                new Guest("bob@example.com", "Bob Updated"),
+                new Guest("dave@example.com", "Dave"),
+                new Guest("cathy@example.com", "Cathy Updated"),
+                new Guest("erin@example.com", "Erin"));
+        guests.get(2).setVip(true);
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        UCanAccessBulkLoader.Result result = new UCanAccessUpserter(sessionFactory, 2, 4).upsert(guests);
+        assertEquals(5, result.getRows());
+        assertEquals(0, statistics.getEntityLoadCount());
+        // no SELECT, just the MERGE statement (prepared once per transaction of four rows)
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        session = sessionFactory.openSession();
+        List<Guest> stored = session.createQuery("from Guest order by email", Guest.class).getResultList();
+        assertEquals(5, stored.size());
+        assertEquals("Anne Updated", stored.get(0).getName());
+        assertEquals("Cathy Updated", stored.get(2).getName());
+        assertEquals("Dave", stored.get(3).getName());
+        assertTrue(stored.get(3).getVip());
+        assertEquals("Erin", stored.get(4).getName());
+        session.close();
+    }
+
+    public void testUpsertNeedsAnId() {
+        try {
+            new UCanAccessUpserter(sessionFactory).upsert(Arrays.asList(new Event("no id yet", null)));
+            fail("upserted an entity without an id");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("without an id"));
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Inheritance;
+import javax.persistence.InheritanceType;
+
+/**
+ * 
+ * Venue entity - the root of a JOINED inheritance hierarchy (see Stadium), so
+ * HQL bulk updates and deletes of its subclasses span several tables
+ *
+ */
+@Entity
+@Inheritance(strategy = InheritanceType.JOINED)
+public class Venue {
+    @Id
+    @Column(name = "VENUE_ID")
+    private Integer id;
+    public Integer getId() { return id; }
+    @SuppressWarnings("unused")
+    private void setId(Integer id) { this.id = id; }
+
+    @Column(length = 100)
+    private String name;
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    @Column(length = 100)
+    private String city;
+    public String getCity() { return city; }
+    public void setCity(String city) { this.city = city; }
+
+    public Venue() {
+        // no-argument constructor required by Hibernate
+    }
+
+    public Venue(Integer id, String name, String city) {
+        this.id = id;
+        this.name = name;
+        this.city = city;
+    }
+}
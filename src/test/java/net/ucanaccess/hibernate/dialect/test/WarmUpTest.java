@@ -0,0 +1,151 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessConnectionProvider;
+import net.ucanaccess.hibernate.dialect.UCanAccessMetrics;
+import net.ucanaccess.hibernate.dialect.UCanAccessSettings;
+import net.ucanaccess.hibernate.dialect.UCanAccessWarmUp;
+
+/**
+ * Checks that UCanAccessWarmUp (run by UCanAccessIntegrator) leaves nothing for
+ * UCanAccess to translate when the first entity is saved and the first named
+ * query is run, that it does not prepare statements for a pool without a
+ * translation cache, and that it does not fail when it cannot get a connection.
+ */
+public class WarmUpTest extends TestCase {
+
+    /** a pool that can be told to stop handing out connections */
+    public static class FailingConnectionProvider extends UCanAccessConnectionProvider {
+        private static final long serialVersionUID = 1L;
+        static volatile boolean failing;
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (failing) {
+                throw new SQLException("no connection");
+            }
+            return super.getConnection();
+        }
+    }
+
+    private Metadata metadata;
+    private SessionFactory sessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        buildSessionFactory(true);
+    }
+
+    private void buildSessionFactory(boolean sqlCache) {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+        ssrb.applySetting(UCanAccessSettings.WARMUP_TABLES, "EVENTS");
+        ssrb.applySetting(AvailableSettings.CONNECTION_PROVIDER, FailingConnectionProvider.class.getName());
+        ssrb.applySetting(UCanAccessSettings.SQL_CACHE_SIZE, sqlCache ? "1000" : "0");
+        FailingConnectionProvider.failing = false;
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            metadata = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata();
+            sessionFactory = metadata.buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FailingConnectionProvider.failing = false;
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    public void testFirstRequestsAreTranslationCacheHits() {
+        UCanAccessMetrics metrics = UCanAccessMetrics.getInstance();
+        assertTrue(metrics.getWarmUpStatementCount() > 0);
+        assertEquals(0, metrics.getWarmUpFailureCount());
+
+        metrics.reset();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            Event event = new Event("warm", LocalDateTime.of(2018, 3, 14, 15, 9, 26));
+            event.setDescription("warm-up");
+            session.persist(event);
+            session.getTransaction().commit();
+
+            assertEquals(1, session.getNamedQuery("Event.byTitle").setParameter("title", "warm").list().size());
+        }
+        assertEquals(0, metrics.getSqlCacheMissCount());
+        assertTrue(metrics.getSqlCacheHitCount() >= 2);
+    }
+
+    public void testNoStatementsWithoutTranslationCache() {
+        UCanAccessWarmUp warmUp = new UCanAccessWarmUp(sessionFactory.unwrap(SessionFactoryImplementor.class),
+                metadata, Collections.<String>emptySet());
+        warmUp.run();
+        assertTrue(warmUp.getStatementCount() > 0);
+
+        sessionFactory.close();
+        buildSessionFactory(false);
+        warmUp = new UCanAccessWarmUp(sessionFactory.unwrap(SessionFactoryImplementor.class), metadata,
+                Collections.<String>emptySet());
+        warmUp.run();
+        assertEquals(0, warmUp.getStatementCount());
+        assertEquals(0, warmUp.getFailureCount());
+    }
+
+    public void testMissingConnectionIsCountedNotThrown() {
+        FailingConnectionProvider.failing = true;
+        UCanAccessWarmUp warmUp = new UCanAccessWarmUp(sessionFactory.unwrap(SessionFactoryImplementor.class),
+                metadata, Collections.<String>emptySet());
+        warmUp.run();
+        assertEquals(0, warmUp.getStatementCount());
+        assertEquals(1, warmUp.getFailureCount());
+        assertEquals(1, UCanAccessMetrics.getInstance().getWarmUpFailureCount());
+    }
+
+}
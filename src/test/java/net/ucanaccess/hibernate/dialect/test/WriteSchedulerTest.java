@@ -0,0 +1,216 @@
+/*
+   Copyright 2017 Gordon D. Thompson
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package net.ucanaccess.hibernate.dialect.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+
+import junit.framework.TestCase;
+import net.ucanaccess.hibernate.dialect.UCanAccessMetrics;
+import net.ucanaccess.hibernate.dialect.UCanAccessWriteScheduler;
+
+/**
+ * Checks that UCanAccessWriteScheduler commits queued work together, that a
+ * failing item fails alone, and that closing it leaves no work unfinished.
+ */
+public class WriteSchedulerTest extends TestCase {
+    private SessionFactory sessionFactory;
+    private UCanAccessWriteScheduler writes;
+
+    @Override
+    protected void setUp() throws Exception {
+        Logger myLogger = Logger.getLogger("org.hibernate");
+        myLogger.setLevel(Level.SEVERE);
+
+        StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+
+        // allow tester to specify their own connection URL (via -D JVM argument)
+        String runtimeUrl = System.getProperty("HIBERNATE_CONNECTION_URL");
+        if (runtimeUrl != null) {
+            ssrb.applySetting("hibernate.connection.url", runtimeUrl);
+        }
+        ssrb.applySetting("hibernate.show_sql", "false");
+
+        final StandardServiceRegistry registry = ssrb.build();
+        try {
+            sessionFactory = new MetadataSources(registry).addAnnotatedClass(Event.class)
+                    .addAnnotatedClass(Guest.class).buildMetadata().buildSessionFactory();
+        } catch (Exception e) {
+            myLogger.log(Level.SEVERE, e.getMessage());
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+        writes = new UCanAccessWriteScheduler(sessionFactory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        writes.close();
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private long countEvents() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery("select count(e) from Event e", Long.class).getSingleResult();
+        }
+    }
+
+    /**
+     * Keeps the writer thread busy until the returned latch is released, so
+     * that the work submitted meanwhile queues up
+     */
+    private CountDownLatch blockWriter() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        writes.submit(session -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    public void testGroupCommit() throws Exception {
+        UCanAccessMetrics metrics = UCanAccessMetrics.getInstance();
+        CountDownLatch release = blockWriter();
+        long groups = metrics.getWriteGroupCount();
+
+        List<CompletableFuture<Session>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final String title = "grouped " + i;
+            futures.add(writes.submit(session -> {
+                session.persist(new Event(title, null));
+                return session;
+            }));
+        }
+        assertEquals(5, writes.getQueueDepth());
+        release.countDown();
+
+        Session first = futures.get(0).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<Session> future : futures) {
+            assertSame(first, future.get(10, TimeUnit.SECONDS));
+        }
+        // the blocking item, then the five together
+        assertEquals(groups + 2, metrics.getWriteGroupCount());
+        assertEquals(5, countEvents());
+    }
+
+    public void testFailureIsolation() throws Exception {
+        CountDownLatch release = blockWriter();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final int n = i;
+            futures.add(writes.submit(session -> {
+                if (n == 2) {
+                    throw new IllegalArgumentException("item " + n);
+                }
+                Event event = new Event("item " + n, null);
+                session.persist(event);
+                return event.getId();
+            }));
+        }
+        release.countDown();
+
+        for (int i = 0; i < 5; i++) {
+            if (i == 2) {
+                try {
+                    futures.get(i).get(10, TimeUnit.SECONDS);
+                    fail("item 2 should have failed");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalArgumentException);
+                    assertEquals("item 2", e.getCause().getMessage());
+                }
+            } else {
+                assertNotNull(futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(4, countEvents());
+    }
+
+    public void testWriteFromWriterThread() throws Exception {
+        CompletableFuture<Object> future = writes.submit(session -> writes.write(inner -> null));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("write() should have been refused");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testCloseCompletesAllWork() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch submitting = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                List<CompletableFuture<Integer>> submitted = new ArrayList<>();
+                submitting.countDown();
+                try {
+                    while (true) {
+                        submitted.add(writes.submit(session -> 1));
+                    }
+                } catch (IllegalStateException e) {
+                    // closed
+                }
+                synchronized (futures) {
+                    futures.addAll(submitted);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        assertTrue(submitting.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        writes.close();
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+
+        assertFalse(futures.isEmpty());
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(Integer.valueOf(1), future.getNow(null));
+        }
+        assertEquals(0, writes.getQueueDepth());
+        try {
+            writes.submit(session -> 1);
+            fail("submit() should have been refused");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+}